@@ -0,0 +1,82 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.script.AppendOnlyKeyValueStore;
+
+/**
+ * Lookups and inserts of the {@link AppendOnlyKeyValueStore} with a log of the given number of entries. Both should not depend on the
+ * number of entries. The inserts append to the log file, but do not force it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendOnlyKeyValueStoreBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int entries;
+
+  private Path dir;
+  private AppendOnlyKeyValueStore store;
+  private int nextGet;
+  private int nextPut;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("kv-store");
+    store = AppendOnlyKeyValueStore.of(dir.resolve("mpiToFhirId.log"));
+    for (int i = 0; i < entries; i++) {
+      store.put("MPI" + i, "FHIR" + i);
+    }
+    nextPut = entries;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.close();
+    final List<Path> files;
+    try (Stream<Path> stream = Files.list(dir)) {
+      files = stream.collect(Collectors.toList());
+    }
+    for (final Path file : files) {
+      Files.delete(file);
+    }
+    Files.delete(dir);
+  }
+
+  @Benchmark
+  public String get() {
+    final String key = "MPI" + nextGet;
+    nextGet = nextGet + 1 == entries ? 0 : nextGet + 1;
+    return store.get(key);
+  }
+
+  @Benchmark
+  public void putNew() {
+    final int i = nextPut++;
+    store.put("MPI" + i, "FHIR" + i);
+  }
+}
@@ -0,0 +1,223 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptEngine;
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner;
+import groovy.json.JsonSlurper;
+
+/**
+ * Scenarios of the script benchmarks. Each scenario is an export script of the example project with the JSON context maps of its
+ * export script test, e.g. 'mii/bielefeld/observation'. Paths are resolved against the project directory, which is the parent of
+ * the benchmarks module by default and can be set by the system property {@value #PROJECT_DIR_PROPERTY}. The context maps can be
+ * replaced by the system property {@value #CONTEXT_MAP_DIR_PROPERTY}, e.g. by a directory of NDJSON files, which were written by the
+ * ContextMapGenerator of the tests.
+ */
+final class BenchmarkFixtures {
+
+  static final String PROJECT_DIR_PROPERTY = "benchmark.projectDir";
+  static final String CONTEXT_MAP_DIR_PROPERTY = "benchmark.contextMapDir";
+
+  private static final String SCRIPT_DIR = "src/main/groovy/customexport";
+  private static final String CONTEXT_MAP_DIR = "src/test/resources/customexport";
+  private static final String TEST_SOURCE_DIR = "src/test/groovy";
+  private static final String MAPPING_CONFIG = "ExportResourceMappingConfig.json";
+
+  /**
+   * The script and the context maps of an export script test, e.g.
+   * {@code groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/medicationBundle.groovy",
+   * contextMapsPath = "src/test/resources/customexport/mii/bielefeld/medication"}
+   */
+  private static final Pattern TEST_RESOURCES = Pattern.compile("groovyScriptPath\\s*=\\s*\"([^\"]+)\"\\s*,"
+                                                                + "\\s*contextMapsPath\\s*=\\s*\"([^\"]+)\"");
+
+  /**
+   * Scenario name to the script path relative to the script directory, for scenarios with a script name different from the fixture
+   * directory.
+   */
+  private static final Map<String, String> SCRIPT_BY_SCENARIO = Collections.singletonMap("mii/bielefeld/medication",
+                                                                                         "mii/bielefeld/medicationBundle");
+
+  private BenchmarkFixtures() {/* hide constructor */}
+
+  @Nonnull
+  static Path projectDir() {
+    return Paths.get(System.getProperty(PROJECT_DIR_PROPERTY, "..")).toAbsolutePath().normalize();
+  }
+
+  @Nonnull
+  static Path scriptPath(@Nonnull final String scenario) {
+    return projectDir().resolve(SCRIPT_DIR).resolve(SCRIPT_BY_SCENARIO.getOrDefault(scenario, scenario) + ".groovy");
+  }
+
+  @Nonnull
+  static Path contextMapDir(@Nonnull final String scenario) {
+    final String contextMapDir = System.getProperty(CONTEXT_MAP_DIR_PROPERTY);
+    if (contextMapDir != null) {
+      return Paths.get(contextMapDir).toAbsolutePath().normalize();
+    }
+    return projectDir().resolve(CONTEXT_MAP_DIR).resolve(scenario);
+  }
+
+  /**
+   * @param project the project folder below the script directory, e.g. 'mii/bielefeld'
+   * @return the distinct templates of the ExportResourceMappingConfig.json of the project in the order of the mappings
+   */
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  static List<String> templates(@Nonnull final String project) throws IOException {
+    final Path config = projectDir().resolve(SCRIPT_DIR).resolve(project).resolve(MAPPING_CONFIG);
+    try (Reader reader = Files.newBufferedReader(config, StandardCharsets.UTF_8)) {
+      final Map<String, Object> json = (Map<String, Object>) new JsonSlurper().parse(reader);
+      return ((List<Map<String, Object>>) json.get("mappings")).stream()
+                                                               .map(mapping -> (String) mapping.get("transformByTemplate"))
+                                                               .distinct()
+                                                               .collect(Collectors.toList());
+    }
+  }
+
+  @Nonnull
+  static Path templateScriptPath(@Nonnull final String project, @Nonnull final String template) {
+    return projectDir().resolve(SCRIPT_DIR).resolve(project).resolve(template + ".groovy");
+  }
+
+  /**
+   * Finds the context maps of a template. If the system property {@value #CONTEXT_MAP_DIR_PROPERTY} is set, these are the files in its
+   * subdirectory of the template name. Otherwise, these are the context maps of the export script test of the template, or the
+   * directory of the template name in the context map directory of the project.
+   * @return the directory of the context maps or null, if the template has no context maps
+   */
+  @Nullable
+  static Path templateContextMapDir(@Nonnull final String project, @Nonnull final String template) throws IOException {
+    final String contextMapDir = System.getProperty(CONTEXT_MAP_DIR_PROPERTY);
+    if (contextMapDir != null) {
+      final Path dir = Paths.get(contextMapDir).resolve(template).toAbsolutePath().normalize();
+      return Files.isDirectory(dir) ? dir : null;
+    }
+
+    final Path script = templateScriptPath(project, template);
+    final Path testSources = projectDir().resolve(TEST_SOURCE_DIR);
+    if (Files.isDirectory(testSources)) {
+      final List<Path> tests;
+      try (Stream<Path> stream = Files.walk(testSources)) {
+        tests = stream.filter(path -> path.getFileName().toString().endsWith(".groovy")).sorted().collect(Collectors.toList());
+      }
+
+      for (final Path test : tests) {
+        final Matcher matcher = TEST_RESOURCES.matcher(Files.readString(test, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+          final Path dir = projectDir().resolve(matcher.group(2));
+          if (projectDir().resolve(matcher.group(1)).normalize().equals(script) && Files.isDirectory(dir)) {
+            return dir;
+          }
+        }
+      }
+    }
+
+    final Path dir = projectDir().resolve(CONTEXT_MAP_DIR).resolve(project).resolve(template);
+    return Files.isDirectory(dir) ? dir : null;
+  }
+
+  @Nonnull
+  static String readScript(@Nonnull final String scenario) throws IOException {
+    return Files.readString(scriptPath(scenario), StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  static Fhir4ScriptRunner createRunner(@Nonnull final String scriptSource) throws Exception {
+    try (Reader reader = new StringReader(scriptSource)) {
+      return new Fhir4ScriptEngine().create(reader, "benchmark");
+    }
+  }
+
+  /**
+   * @return the context maps of all JSON files and of all lines of the NDJSON files of the scenario, ordered by file name
+   */
+  @Nonnull
+  static List<Map<String, Object>> loadContextMaps(@Nonnull final String scenario) throws IOException {
+    return loadContextMaps(contextMapDir(scenario));
+  }
+
+  /**
+   * @return the context maps of all JSON files and of all lines of the NDJSON files in the directory, ordered by file name
+   */
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  static List<Map<String, Object>> loadContextMaps(@Nonnull final Path dir) throws IOException {
+    final List<Path> files;
+    try (Stream<Path> stream = Files.list(dir)) {
+      files = stream.filter(path -> path.getFileName().toString().endsWith(".json") || path.getFileName().toString().endsWith(".ndjson"))
+                    .sorted()
+                    .collect(Collectors.toList());
+    }
+
+    if (files.isEmpty()) {
+      throw new IllegalStateException("No context maps found in " + dir);
+    }
+
+    final List<Map<String, Object>> contextMaps = new ArrayList<>(files.size());
+    for (final Path file : files) {
+      if (file.getFileName().toString().endsWith(".ndjson")) {
+        readNdjson(file, contextMaps);
+        continue;
+      }
+
+      try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+        contextMaps.add((Map<String, Object>) copy(new JsonSlurper().parse(reader)));
+      }
+    }
+    return contextMaps;
+  }
+
+  /**
+   * Copies the parsed JSON into plain maps and lists. The lazy maps of the {@link JsonSlurper} are built on the first access, which is
+   * not thread-safe, so the context maps could not be shared by the threads of a benchmark.
+   */
+  @Nullable
+  private static Object copy(@Nullable final Object json) {
+    if (json instanceof Map) {
+      final Map<String, Object> copy = new LinkedHashMap<>();
+      ((Map<?, ?>) json).forEach((key, value) -> copy.put((String) key, copy(value)));
+      return copy;
+    }
+    if (json instanceof List) {
+      final List<Object> copy = new ArrayList<>(((List<?>) json).size());
+      ((List<?>) json).forEach(value -> copy.add(copy(value)));
+      return copy;
+    }
+    return json;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void readNdjson(@Nonnull final Path file, @Nonnull final List<Map<String, Object>> contextMaps) throws IOException {
+    final JsonSlurper slurper = new JsonSlurper();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isBlank()) {
+          contextMaps.add((Map<String, Object>) copy(slurper.parseText(line)));
+        }
+      }
+    }
+  }
+}
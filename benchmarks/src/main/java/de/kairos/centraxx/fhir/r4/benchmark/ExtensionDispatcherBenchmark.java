@@ -0,0 +1,77 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.StringType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.kairos.centraxx.fhir.r4.utils.ExtensionDispatcher;
+import de.kairos.centraxx.fhir.r4.utils.FhirUrls;
+
+/**
+ * Compares repeated getExtensionByUrl lookups in a labor mapping extension tree with a single walk of the {@link ExtensionDispatcher}.
+ * The number of CRF item extensions next to the labor mapping simulates deep CRF trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtensionDispatcherBenchmark {
+
+  @Param({"10", "100"})
+  public int crfItems;
+
+  private Observation observation;
+  private ExtensionDispatcher dispatcher;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setUp(final Blackhole blackhole) {
+    this.blackhole = blackhole;
+    observation = new Observation();
+    for (int i = 0; i < crfItems; i++) {
+      observation.addExtension(FhirUrls.Extension.Crf.CrfItem.VALUE_INDEX, new IntegerType(i));
+    }
+    final Extension laborMapping = observation.addExtension().setUrl(FhirUrls.Extension.LABOR_MAPPING);
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.LABOR_MAPPING_TYPE, new StringType("PATIENT"));
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.PATIENT, new Reference("Patient/1"));
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.ENCOUNTER, new Reference("Encounter/1"));
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.RELATED_REFERENCE, new Reference("Specimen/1"));
+
+    dispatcher = new ExtensionDispatcher()
+        .on(FhirUrls.Extension.LaborMapping.getAllDomains(), (extension, parent) -> this.blackhole.consume(extension.getValue()));
+  }
+
+  @Benchmark
+  public void repeatedLookups() {
+    final Extension laborMapping = observation.getExtensionByUrl(FhirUrls.Extension.LABOR_MAPPING);
+    for (final String url : FhirUrls.Extension.LaborMapping.getAllDomains()) {
+      final Extension extension = laborMapping.getExtensionByUrl(url);
+      if (extension != null) {
+        blackhole.consume(extension.getValue());
+      }
+    }
+  }
+
+  @Benchmark
+  public void dispatch() {
+    dispatcher.dispatch(observation);
+  }
+}
@@ -0,0 +1,84 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.utils.FhirUrlClassification;
+import de.kairos.centraxx.fhir.r4.utils.FhirUrls;
+
+/**
+ * Compares {@link FhirUrls#classify(CharSequence)} with a linear scan over all URL constants of {@link FhirUrls}, as import scripts
+ * did it before. The URL is passed as a String and as a StringBuilder, to show that the lookup works on char sequences as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FhirUrlsClassifyBenchmark {
+
+  @Param({
+      FhirUrls.Extension.LaborMapping.PATIENT,
+      FhirUrls.System.Organ.BASE_URL,
+      "https://fhir.centraxx.de/extension/unknown"
+  })
+  public String url;
+
+  private StringBuilder urlBuffer;
+  private List<String> constants;
+
+  @Setup
+  public void setUp() throws IllegalAccessException {
+    urlBuffer = new StringBuilder(url);
+    constants = new ArrayList<>();
+    collect(FhirUrls.class, constants);
+  }
+
+  @Benchmark
+  public FhirUrlClassification classify() {
+    return FhirUrls.classify(url);
+  }
+
+  @Benchmark
+  public FhirUrlClassification classifyCharSequence() {
+    return FhirUrls.classify(urlBuffer);
+  }
+
+  @Benchmark
+  public String linearScan() {
+    for (final String constant : constants) {
+      if (constant.equals(url)) {
+        return constant;
+      }
+    }
+    return null;
+  }
+
+  private static void collect(final Class<?> domain, final List<String> constants) throws IllegalAccessException {
+    for (final Field field : domain.getDeclaredFields()) {
+      final int modifiers = field.getModifiers();
+      if (field.getType() == String.class && Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers)) {
+        constants.add((String) field.get(null));
+      }
+    }
+    for (final Class<?> nested : domain.getDeclaredClasses()) {
+      collect(nested, constants);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.utils.FhirUrls;
+
+/**
+ * Measures the domain registry of {@link FhirUrls.Extension}. The {@code copyOfAllDomains} benchmark allocates a list per call,
+ * as every call of {@code getAllDomains()} did before the registry was built once at class initialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FhirUrlsDomainBenchmark {
+
+  @Param({
+      FhirUrls.Extension.LaborMapping.PATIENT,
+      FhirUrls.Extension.Counter.DESCRIPTION,
+      "https://fhir.centraxx.de/extension/unknown"
+  })
+  public String url;
+
+  @Benchmark
+  public List<String> allDomains() {
+    return FhirUrls.Extension.getAllDomains();
+  }
+
+  @Benchmark
+  public Collection<String> nestedDomains() {
+    return FhirUrls.Extension.GtdsTherapy.Surgery.getAllDomains();
+  }
+
+  @Benchmark
+  public List<String> copyOfAllDomains() {
+    return new ArrayList<>(FhirUrls.Extension.getAllDomains());
+  }
+
+  @Benchmark
+  public boolean listContains() {
+    return FhirUrls.Extension.getAllDomains().contains(url);
+  }
+
+  @Benchmark
+  public boolean setContains() {
+    return FhirUrls.Extension.isKnownDomain(url);
+  }
+}
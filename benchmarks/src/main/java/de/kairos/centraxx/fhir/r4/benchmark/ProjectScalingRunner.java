@@ -0,0 +1,137 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * Runs the {@link TemplateThroughputBenchmark} for every template of the ExportResourceMappingConfig.json of a project folder on 1, 2,
+ * 4, ... up to the maximum number of threads, which is the number of available processors by default. For each template and thread
+ * count, it reports the records per second, the speedup and the scaling efficiency, which is the throughput divided by the thread
+ * count times the single thread throughput. An efficiency far below 100% shows a script, which does not scale linearly, e.g. because
+ * it synchronizes on or allocates into shared state, and limits the number of export worker threads, which a CentraXX node can use.
+ * <br><br>
+ * Usage from the benchmarks directory: {@code java -cp target/benchmarks.jar de.kairos.centraxx.fhir.r4.benchmark.ProjectScalingRunner
+ * mii/bielefeld [maxThreads]}
+ * <br><br>
+ * Templates without context maps are skipped, see {@link BenchmarkFixtures#templateContextMapDir(String, String)}. The results are
+ * printed and written as CSV to 'target/scaling-&lt;project&gt;.csv'.
+ */
+public final class ProjectScalingRunner {
+
+  private ProjectScalingRunner() {/* hide constructor */}
+
+  public static void main(final String[] args) throws IOException, RunnerException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: ProjectScalingRunner <project folder, e.g. mii/bielefeld> [max threads]");
+      System.exit(1);
+    }
+
+    final String project = args[0];
+    final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    final List<Integer> threadCounts = threadCounts(maxThreads);
+
+    final List<String> rows = new ArrayList<>();
+    rows.add("template,threads,recordsPerSecond,error,speedup,efficiency");
+    System.out.printf(Locale.ROOT, "%-40s %7s %14s %12s %8s %10s%n", "Template", "Threads", "Records/s", "Error", "Speedup", "Efficiency");
+
+    for (final String template : BenchmarkFixtures.templates(project)) {
+      if (BenchmarkFixtures.templateContextMapDir(project, template) == null) {
+        System.out.printf(Locale.ROOT, "%-40s no context maps, skipped%n", template);
+        continue;
+      }
+
+      double singleThread = Double.NaN;
+      for (final int threads : threadCounts) {
+        final Result<?> result = run(project, template, threads);
+        if (result == null) {
+          System.out.printf(Locale.ROOT, "%-40s %7d failed, run TemplateThroughputBenchmark -p project=%s -p template=%s for the error%n",
+                            template, threads, project, template);
+          break;
+        }
+
+        if (threads == 1) {
+          singleThread = result.getScore();
+        }
+        final double speedup = result.getScore() / singleThread;
+        final double efficiency = speedup / threads;
+        System.out.printf(Locale.ROOT, "%-40s %7d %14.1f %12.1f %8.2f %9.0f%%%n", template, threads, result.getScore(),
+                          result.getScoreError(), speedup, efficiency * 100);
+        rows.add(String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%.3f,%.3f", template, threads, result.getScore(), result.getScoreError(),
+                               speedup, efficiency));
+      }
+    }
+
+    final Path report = Paths.get("target", "scaling-" + project.replace('/', '-') + ".csv");
+    Files.createDirectories(report.getParent());
+    Files.write(report, rows, StandardCharsets.UTF_8);
+    System.out.println("Wrote " + report.toAbsolutePath());
+  }
+
+  /**
+   * @return 1, 2, 4, ... and the maximum, e.g. 1, 2, 4, 6 for a maximum of 6
+   */
+  @Nonnull
+  static List<Integer> threadCounts(final int maxThreads) {
+    if (maxThreads < 1) {
+      throw new IllegalArgumentException("The maximum number of threads must be at least 1, but was " + maxThreads);
+    }
+
+    final List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+    return threadCounts;
+  }
+
+  /**
+   * @return the primary result of the benchmark or null, if it failed
+   */
+  @Nullable
+  private static Result<?> run(@Nonnull final String project, @Nonnull final String template, final int threads)
+      throws RunnerException {
+    final Options options = new OptionsBuilder().include(Pattern.quote(TemplateThroughputBenchmark.class.getName()) + ".*")
+                                                .param("project", project)
+                                                .param("template", template)
+                                                .threads(threads)
+                                                .jvmArgsAppend(forwardedProperties())
+                                                .verbosity(VerboseMode.SILENT)
+                                                .build();
+    final Collection<RunResult> results = new Runner(options).run();
+    return results.isEmpty() ? null : results.iterator().next().getPrimaryResult();
+  }
+
+  /**
+   * @return the fixture properties of this JVM for the forked benchmark JVM
+   */
+  @Nonnull
+  private static String[] forwardedProperties() {
+    final List<String> properties = new ArrayList<>();
+    for (final String property : List.of(BenchmarkFixtures.PROJECT_DIR_PROPERTY, BenchmarkFixtures.CONTEXT_MAP_DIR_PROPERTY)) {
+      final String value = System.getProperty(property);
+      if (value != null) {
+        properties.add("-D" + property + "=" + Paths.get(value).toAbsolutePath().normalize());
+      }
+    }
+    return properties.toArray(new String[0]);
+  }
+}
@@ -0,0 +1,77 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import de.kairos.fhir.dsl.r4.context.Context;
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner;
+
+/**
+ * Measures the HAPI JSON encoding of the resources, which an export script creates from the JSON context maps of its export script
+ * test. The resources are transformed once in the setup, and each operation encodes one of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceEncodingBenchmark {
+
+  @Param({
+      "mii/bielefeld/observation",
+      "mii/bielefeld/medication",
+      "mii/bielefeld/patient",
+      "mii/greifswald/specimen"
+  })
+  public String scenario;
+
+  @Param({"false", "true"})
+  public boolean prettyPrint;
+
+  private IParser parser;
+  private List<IBaseResource> resources;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception {
+    parser = FhirContext.forR4().newJsonParser().setPrettyPrint(prettyPrint);
+
+    final Fhir4ScriptRunner runner = BenchmarkFixtures.createRunner(BenchmarkFixtures.readScript(scenario));
+    resources = new ArrayList<>();
+    for (final Map<String, Object> contextMap : BenchmarkFixtures.loadContextMaps(scenario)) {
+      final Object resource = runner.run(new Context(contextMap));
+      if (resource instanceof IBaseResource && !((IBaseResource) resource).isEmpty()) {
+        resources.add((IBaseResource) resource);
+      }
+    }
+
+    if (resources.isEmpty()) {
+      throw new IllegalStateException("Script of scenario " + scenario + " does not create any resource");
+    }
+  }
+
+  @Benchmark
+  public String encode() {
+    final IBaseResource resource = resources.get(next);
+    next = next + 1 == resources.size() ? 0 : next + 1;
+    return parser.encodeResourceToString(resource);
+  }
+}
@@ -0,0 +1,51 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptEngine;
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner;
+
+/**
+ * Measures {@link Fhir4ScriptEngine#create}, i.e. parsing and compiling an export script of the example project. The script source is
+ * read once in the setup, so the benchmark does not include any file IO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptEngineBenchmark {
+
+  @Param({
+      "mii/bielefeld/observation",
+      "mii/bielefeld/medication",
+      "mii/bielefeld/patient",
+      "mii/greifswald/specimen"
+  })
+  public String scenario;
+
+  private String scriptSource;
+
+  @Setup
+  public void setUp() throws Exception {
+    scriptSource = BenchmarkFixtures.readScript(scenario);
+  }
+
+  @Benchmark
+  public Fhir4ScriptRunner create() throws Exception {
+    return BenchmarkFixtures.createRunner(scriptSource);
+  }
+}
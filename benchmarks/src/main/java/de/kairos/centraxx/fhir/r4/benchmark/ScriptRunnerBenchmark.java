@@ -0,0 +1,100 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.utils.PageBatchLoader;
+import de.kairos.centraxx.fhir.r4.utils.ScriptMetrics;
+import de.kairos.fhir.dsl.r4.context.Context;
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner;
+
+/**
+ * Measures {@link Fhir4ScriptRunner#run} of a compiled export script over the JSON context maps of its export script test. Each
+ * operation transforms one context map, cycling through all maps of the scenario, so ops/s is the record throughput of the script
+ * and the allocation rate of {@code -prof gc} is normalized per record. Each pass over all context maps runs in its own
+ * {@link PageBatchLoader.Page}, so a batch loader of the script loads once per pass like once per export page. After the trial, the
+ * funnel of the scenario is printed from one additional pass over all context maps, which is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptRunnerBenchmark {
+
+  @Param({
+      "mii/bielefeld/observation",
+      "mii/bielefeld/medication",
+      "mii/bielefeld/patient",
+      "mii/bielefeld/encounter",
+      "mii/bielefeld/condition",
+      "mii/bielefeld/procedure",
+      "mii/greifswald/specimen"
+  })
+  public String scenario;
+
+  private Fhir4ScriptRunner runner;
+  private List<Map<String, Object>> contextMaps;
+  private List<Context> pageRecords;
+  private PageBatchLoader.Page page;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception {
+    runner = BenchmarkFixtures.createRunner(BenchmarkFixtures.readScript(scenario));
+    contextMaps = BenchmarkFixtures.loadContextMaps(scenario);
+    pageRecords = contextMaps.stream().map(Context::new).collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public Object run() {
+    if (next == 0) {
+      nextPage();
+    }
+    final Map<String, Object> contextMap = contextMaps.get(next);
+    next = next + 1 == contextMaps.size() ? 0 : next + 1;
+    return runner.run(new Context(contextMap));
+  }
+
+  @TearDown
+  public void printFunnel() {
+    // the measured runs counted the filter reasons of the script as well
+    ScriptMetrics.resetAll();
+    final ScriptMetrics metrics = ScriptMetrics.of(scenario);
+    nextPage();
+    for (final Map<String, Object> contextMap : contextMaps) {
+      try {
+        metrics.record(runner.run(new Context(contextMap)));
+      }
+      catch (final RuntimeException e) {
+        metrics.recordFailure(e);
+      }
+    }
+    page.close();
+    page = null;
+    System.out.println("Funnel of " + scenario + ": " + metrics.funnel());
+  }
+
+  private void nextPage() {
+    if (page != null) {
+      page.close();
+    }
+    page = PageBatchLoader.openPage(pageRecords);
+  }
+}
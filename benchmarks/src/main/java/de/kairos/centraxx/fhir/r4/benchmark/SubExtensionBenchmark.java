@@ -0,0 +1,62 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.utils.FhirUrls;
+
+/**
+ * Compares the former per call construction of the sub extension maps by {@code String.split("/")} with the precomputed
+ * {@link de.kairos.centraxx.fhir.r4.utils.SubExtensionMap} and its region lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubExtensionBenchmark {
+
+  private final StringBuilder extensionUrl = new StringBuilder(FhirUrls.Extension.Sprec.SECOND_PROCESSING_DATE);
+
+  @Benchmark
+  public String legacyMapLookup() {
+    final String url = extensionUrl.toString();
+    return legacyExtensionMap(FhirUrls.Extension.Sprec.getAllDomains()).get(url.substring(url.lastIndexOf('/') + 1));
+  }
+
+  @Benchmark
+  public String mapLookup() {
+    final String url = extensionUrl.toString();
+    return FhirUrls.Extension.Sprec.getSubExtensions().get(url.substring(url.lastIndexOf('/') + 1));
+  }
+
+  @Benchmark
+  public String regionLookup() {
+    return FhirUrls.Extension.Sprec.getSubExtensions().resolveLastSegment(extensionUrl);
+  }
+
+  /**
+   * The implementation of FhirUrls.Extension.getExtensionMap before the maps were precomputed.
+   */
+  private static Map<String, String> legacyExtensionMap(final List<String> extensionUrls) {
+    final Map<String, String> subExtensionsMap = new HashMap<>();
+    extensionUrls.forEach(domain -> {
+      final String[] split = domain.split("/");
+      subExtensionsMap.put(split[split.length - 1], domain);
+    });
+    return subExtensionsMap;
+  }
+}
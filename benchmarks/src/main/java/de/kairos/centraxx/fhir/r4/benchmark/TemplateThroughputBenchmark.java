@@ -0,0 +1,94 @@
+package de.kairos.centraxx.fhir.r4.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.kairos.centraxx.fhir.r4.utils.PageBatchLoader;
+import de.kairos.fhir.dsl.r4.context.Context;
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner;
+
+/**
+ * Measures the record throughput of a template of a project folder, e.g. template 'observation' of project 'mii/bielefeld'. All
+ * benchmark threads share one compiled runner of the template, as the export worker threads of CentraXX do, and each thread cycles
+ * through the context maps of the template on its own. Each pass of a thread runs in its own {@link PageBatchLoader.Page}, so a batch
+ * loader of the template loads once per pass like once per export page. The {@link ProjectScalingRunner} runs this benchmark for all templates of a
+ * project on an increasing number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateThroughputBenchmark {
+
+  @Param("mii/bielefeld")
+  public String project;
+
+  @Param("observation")
+  public String template;
+
+  private Fhir4ScriptRunner runner;
+  private List<Map<String, Object>> contextMaps;
+  private List<Context> pageRecords;
+
+  @Setup
+  public void setUp() throws Exception {
+    final Path contextMapDir = BenchmarkFixtures.templateContextMapDir(project, template);
+    if (contextMapDir == null) {
+      throw new IllegalStateException("No context maps found for template " + template + " of project " + project);
+    }
+
+    runner = BenchmarkFixtures.createRunner(Files.readString(BenchmarkFixtures.templateScriptPath(project, template),
+                                                             StandardCharsets.UTF_8));
+    contextMaps = BenchmarkFixtures.loadContextMaps(contextMapDir);
+    pageRecords = contextMaps.stream().map(Context::new).collect(Collectors.toList());
+  }
+
+  /**
+   * The position of a thread in the context maps, so the threads do not contend on a shared index.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    int next;
+    PageBatchLoader.Page page;
+
+    @TearDown
+    public void closePage() {
+      if (page != null) {
+        page.close();
+        page = null;
+      }
+    }
+  }
+
+  @Benchmark
+  public Object run(final Cursor cursor) {
+    if (cursor.next == 0) {
+      cursor.closePage();
+      cursor.page = PageBatchLoader.openPage(pageRecords);
+    }
+    final Map<String, Object> contextMap = contextMaps.get(cursor.next);
+    cursor.next = cursor.next + 1 == contextMaps.size() ? 0 : cursor.next + 1;
+    return runner.run(new Context(contextMap));
+  }
+}
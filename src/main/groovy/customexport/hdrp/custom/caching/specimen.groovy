@@ -1,9 +1,12 @@
 package customexport.hdrp.custom.caching
 
+import de.kairos.centraxx.fhir.r4.script.AppendOnlyKeyValueStore
+import de.kairos.centraxx.fhir.r4.script.CoalescingLoader
 import de.kairos.fhir.centraxx.metamodel.IdContainer
 import de.kairos.fhir.centraxx.metamodel.IdContainerType
-import groovy.json.JsonOutput
-import groovy.json.JsonSlurper
+
+import java.nio.file.Paths
+import java.time.Duration
 
 import static de.kairos.fhir.centraxx.metamodel.AbstractIdContainer.ID_CONTAINER_TYPE
 import static de.kairos.fhir.centraxx.metamodel.RootEntities.sample
@@ -12,6 +15,10 @@ import static de.kairos.fhir.centraxx.metamodel.RootEntities.sample
  * Represented by a HDRP AbstractSample
  * @author Mike Wähnert
  * @since v.1.7.0, HDRP.v.3.17.2
+ *
+ * The AppendOnlyKeyValueStore and the CoalescingLoader are classes of this project, which HDRP does not provide. The script runtime jar of this project
+ * (mvn package, target/kairos-fhir-dsl-mapping-example-<version>-script-runtime.jar) must be added to the class path of the HDRP
+ * server before the script is deployed. Do not add the main jar, its FhirUrls would shadow the FhirUrls of HDRP.
  */
 specimen {
 
@@ -21,30 +28,39 @@ specimen {
     "MPI" == it[ID_CONTAINER_TYPE]?.getAt(IdContainerType.CODE)
   }
 
-  subject {
-    reference = "Patient/" + getPatientId(idContainer[IdContainer.PSN] as String)
+  final String patientId = getPatientId(idContainer?.getAt(IdContainer.PSN) as String)
+  if (patientId != null) {
+    subject {
+      reference = "Patient/" + patientId
+    }
   }
 }
 
+/**
+ * The store is opened once per JVM and appends each new id to its log file, so a lookup neither reads nor rewrites the whole file.
+ * The log is shared with other export threads and JVMs on the same file and survives restarts. Threads, which miss the same MPI at
+ * the same time, wait for one query of the DIZ. The loader does not keep the found ids (TTL zero), because the store keeps them
+ * permanently. Unknown MPIs are not stored, but the loader keeps them for 5 minutes, so they are not queried again per sample.
+ * Samples without MPI have no patient id, the store and the loader do not accept null keys.
+ * The ids of the former mpiToFhirId.json are imported once, when the log is created. The JSON file can be deleted afterwards.
+ */
 static String getPatientId(final String mpi) {
-  final String cacheFilePath = "C:/centraxx-home/groovy-cache/mpiToFhirId.json"
-  final Map<String, String> mpiToFhirId = loadCache(cacheFilePath)
-  final String fhirId = mpiToFhirId.computeIfAbsent(mpi, { final k -> queryFhirIdFromDiz(mpi) })
-  persistCache(cacheFilePath, mpiToFhirId)
-  return fhirId
+  if (mpi == null || mpi.isEmpty()) {
+    return null
+  }
+
+  final AppendOnlyKeyValueStore mpiToFhirId = AppendOnlyKeyValueStore.of(Paths.get("C:/centraxx-home/groovy-cache/mpiToFhirId.log"),
+                                                                           Paths.get("C:/centraxx-home/groovy-cache/mpiToFhirId.json"))
+  final CoalescingLoader<String, String> diz = CoalescingLoader.of("hdrp/custom/caching/diz", Duration.ZERO, Duration.ofMinutes(5)) {
+    final String k -> queryFhirIdFromDiz(k)
+  }
+  return mpiToFhirId.computeIfAbsent(mpi, { final String k -> diz.get(k) })
 }
 
+/**
+ * Local stub of the DIZ service, which takes one second per request and does not know empty MPIs.
+ */
 static String queryFhirIdFromDiz(final String mpi) {
   Thread.sleep(1000) // simulate a long running task
-  return UUID.randomUUID().toString()
+  return mpi == null || mpi.isEmpty() ? null : UUID.nameUUIDFromBytes(mpi.getBytes("UTF-8")).toString()
 }
-
-static Map<String, String> loadCache(final String cacheFilePath) {
-  final File cacheFile = new File(cacheFilePath)
-  return !cacheFile.exists() ? [:] : (new JsonSlurper().parse(cacheFile) as Map<String, String>)
-}
-
-static void persistCache(final String cacheFilePath, final Map<String, String> cacheMap) {
-  final File cacheFile = new File(cacheFilePath)
-  cacheFile.write(JsonOutput.prettyPrint(JsonOutput.toJson(cacheMap)), "UTF-8")
-}
\ No newline at end of file
@@ -1,9 +1,12 @@
 package customexport.hdrp.custom.dbconnection
 
+import de.kairos.centraxx.fhir.r4.script.PooledDataSource
 import de.kairos.fhir.centraxx.metamodel.enums.GenderType
 
 import javax.sql.DataSource
-import java.lang.reflect.Method
+import java.nio.file.Paths
+import java.sql.Connection
+import java.sql.PreparedStatement
 import java.sql.ResultSet
 
 import static de.kairos.fhir.centraxx.metamodel.RootEntities.patientMasterDataAnonymous
@@ -12,6 +15,10 @@ import static de.kairos.fhir.centraxx.metamodel.RootEntities.patientMasterDataAn
  * Represented by a HDRP PatientMasterDataAnonymous
  * @author Mike Wähnert
  * @since v.1.5.0, HDRP.v.3.17.1.5
+ *
+ * The PooledDataSource is a class of this project, which HDRP does not provide. The script runtime jar of this project
+ * (mvn package, target/kairos-fhir-dsl-mapping-example-<version>-script-runtime.jar) must be added to the class path of the HDRP
+ * server before the script is deployed. Do not add the main jar, its FhirUrls would shadow the FhirUrls of HDRP.
  */
 patient {
 
@@ -30,32 +37,22 @@ static String loadGenderFromDb(final String oid) {
   return cxxGender == null ? null : mapToFhirGender(cxxGender as GenderType)
 }
 
-static String queryFromDb(final String OID) {
+static String queryFromDb(final String oid) {
 
-  // path to jdbc driver, e.g. for MSSQL from https://learn.microsoft.com/en-us/sql/connect/jdbc/download-microsoft-jdbc-driver-for-sql-server
-  final def localFile = new File("C:/temp/mssql-jdbc-11.2.1.jre11.jar")
-  final URLClassLoader cl = new URLClassLoader(localFile.toURI().toURL())
-
-  // load data source class
-  final Class beanClass = cl.loadClass("com.microsoft.sqlserver.jdbc.SQLServerDataSource")
-  final DataSource dataSource = beanClass.getDeclaredConstructor().newInstance() as DataSource
-
-  // TODO: Set connection string and credentials. IMPORTANT: Use TLS encrypted connection in production!
-  invoke(dataSource, "setURL", "jdbc:sqlserver://localhost:1433;databaseName=KAIROS_SPRING;encrypt=false")
-  invoke(dataSource, "setUser", "username")
-  invoke(dataSource, "setPassword", "password")
-
-  final ResultSet rs = dataSource.getConnection()
-      .createStatement()
-      .executeQuery("select GENDER_TYPE from CENTRAXX_PATIENTMASTERDATA_ANO  where PATIENTCONTAINER = " + OID)
+  // the pool is created with the first query and configured in the DataSourceConfig.json, which is deployed with this script,
+  // e.g. with the JDBC driver for MSSQL from https://learn.microsoft.com/en-us/sql/connect/jdbc/download-microsoft-jdbc-driver-for-sql-server
+  final DataSource dataSource = PooledDataSource.of(Paths.get("C:/centraxx-home/fhir-custom-mappings/dbconnection/DataSourceConfig.json"), "cxx")
 
+  final Connection connection = dataSource.getConnection()
   try {
-    while (rs.next()) {
-      return rs.getString("GENDER_TYPE")
-    }
+    // closed with the connection, which returns it to the statement cache of the pool
+    final PreparedStatement statement = connection.prepareStatement("select GENDER_TYPE from CENTRAXX_PATIENTMASTERDATA_ANO where PATIENTCONTAINER = ?")
+    statement.setLong(1, Long.parseLong(oid))
+    final ResultSet rs = statement.executeQuery()
+    return rs.next() ? rs.getString("GENDER_TYPE") : null
   }
   finally {
-    rs.close()
+    connection.close()
   }
 }
 
@@ -67,20 +64,3 @@ static def mapToFhirGender(final GenderType genderType) {
     default: return "other"
   }
 }
-
-private static <T> void invoke(final DataSource dataSource, final String methodName, final T value) throws ReflectiveOperationException {
-  Class<?> clazz = dataSource.getClass()
-  while (null != clazz) {
-    try {
-      final Method method = clazz.getDeclaredMethod(methodName, value.getClass())
-      method.invoke(dataSource, value)
-      return
-    }
-    catch (NoSuchMethodException ignored) {
-      clazz = clazz.getSuperclass()
-    }
-  }
-
-  throw new NoSuchMethodException(dataSource.getClass().toString() + "." + methodName + "(" + value.getClass().toString() + ")")
-}
-
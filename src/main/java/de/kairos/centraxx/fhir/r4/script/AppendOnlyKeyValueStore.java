@@ -0,0 +1,528 @@
+package de.kairos.centraxx.fhir.r4.script;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Embedded key-value store of strings in an append-only log file, which survives export runs and can be shared by the export threads
+ * of a JVM and by several JVMs, e.g. the FHIR ids of the patients by their MPI id:
+ * <pre>
+ * {@code
+ *   final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(Paths.get("C:/centraxx-home/groovy-cache/mpiToFhirId.log"))
+ *   final String fhirId = store.computeIfAbsent(mpi) { queryFhirIdFromDiz(it) }
+ *}
+ * </pre>
+ * <ul>
+ *   <li>Each put or remove appends one record, the file is never rewritten per update.</li>
+ *   <li>All entries are held in a {@link ConcurrentHashMap}, so lookups of present keys neither lock nor read the file.</li>
+ *   <li>A lookup of a missing key and each update first read the records, which other JVMs appended since the last read. A present
+ *   key may return a value, which another JVM replaced since then.</li>
+ *   <li>Each record has a CRC32. Opening the store truncates an incomplete or corrupt tail, e.g. of a crash during an append.</li>
+ *   <li>If the obsolete records outnumber the live records, the store is compacted in place. The compacted log is written to a side
+ *   file first and copied afterwards, so a crash during the copy is repeated on the next open.</li>
+ *   <li>Appends, compaction and reading the appends of other JVMs hold an exclusive {@link FileLock} on a region behind the data,
+ *   which does not block reading the data on Windows.</li>
+ * </ul>
+ * The records are not forced to the disk per update, so a crash of the operating system may lose the last updates, but not a crash of
+ * the JVM. {@link #force()} and {@link #close()} force the file.
+ * <p>
+ * A cache, which was written as one JSON object of strings, e.g. the former mpiToFhirId.json, is imported into a new log by
+ * {@link #of(Path, Path)}. The JSON file is not changed and can be deleted after the import.
+ */
+public final class AppendOnlyKeyValueStore implements Closeable {
+
+  private static final ConcurrentMap<Path, AppendOnlyKeyValueStore> BY_FILE = new ConcurrentHashMap<>();
+
+  private static final int MAGIC = 0x4B564C31; // "KVL1"
+  private static final int STATE_READY = 0;
+  private static final int STATE_COPYING = 1;
+  /**
+   * magic, state, generation
+   */
+  private static final int HEADER_SIZE = 16;
+  /**
+   * key length, value length or -1 for a removal, CRC32 of the lengths, the key and the value
+   */
+  private static final int RECORD_HEADER_SIZE = 12;
+  private static final int TOMBSTONE = -1;
+  private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+  private static final int MIN_OBSOLETE_RECORDS_TO_COMPACT = 1000;
+
+  private final Path file;
+  private final Path compactFile;
+  private final FileChannel channel;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final ConcurrentMap<String, String> entries = new ConcurrentHashMap<>();
+  /**
+   * The following fields are guarded by the lock.
+   */
+  private long generation;
+  private long end;
+  private long obsoleteRecords;
+
+  private AppendOnlyKeyValueStore(@Nonnull final Path file, @Nullable final Path importFile) throws IOException {
+    this.file = file;
+    this.compactFile = file.resolveSibling(file.getFileName() + ".compact");
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      final FileLock fileLock = channel.lock(LOCK_POSITION, 1, false);
+      try {
+        final boolean created = initialize();
+        catchUp();
+        if (created && importFile != null && Files.isRegularFile(importFile)) {
+          importJson(importFile);
+        }
+      }
+      finally {
+        fileLock.release();
+      }
+    }
+    catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the store of the file or returns the already opened store of this JVM.
+   * @param file the log file, which is created, if it does not exist
+   * @throws UncheckedIOException if the file cannot be read or is not a log file of this store
+   */
+  @Nonnull
+  public static AppendOnlyKeyValueStore of(@Nonnull final Path file) {
+    return of(file, null);
+  }
+
+  /**
+   * Opens the store of the file or returns the already opened store of this JVM. If the log file does not exist yet, the entries of
+   * the JSON file are imported into the new log once, e.g. of a cache, which a former version of the script wrote as JSON.
+   * @param file the log file, which is created, if it does not exist
+   * @param importFile a JSON object of string values, which is imported, if the log file is created. Entries, which are not strings,
+   * are skipped. The file is ignored, if it does not exist or if the log already exists.
+   * @throws UncheckedIOException if the file cannot be read or is not a log file of this store, or the JSON file cannot be read
+   */
+  @Nonnull
+  public static AppendOnlyKeyValueStore of(@Nonnull final Path file, @Nullable final Path importFile) {
+    return BY_FILE.computeIfAbsent(file.toAbsolutePath().normalize(), f -> {
+      try {
+        return new AppendOnlyKeyValueStore(f, importFile);
+      }
+      catch (final IOException e) {
+        throw new UncheckedIOException("Could not open the key-value store " + f, e);
+      }
+    });
+  }
+
+  /**
+   * Opens a store of the file, which is not shared with the other callers in this JVM, like the store of another JVM. File locks are
+   * held per JVM, so a concurrent access of both stores throws an OverlappingFileLockException instead of waiting. For tests only.
+   */
+  @Nonnull
+  static AppendOnlyKeyValueStore openUnshared(@Nonnull final Path file) throws IOException {
+    return new AppendOnlyKeyValueStore(file.toAbsolutePath().normalize(), null);
+  }
+
+  @Nullable
+  public String get(@Nonnull final String key) {
+    final String value = entries.get(key);
+    if (value != null) {
+      return value;
+    }
+
+    return locked(() -> {
+      catchUp();
+      return entries.get(key);
+    });
+  }
+
+  public void put(@Nonnull final String key, @Nonnull final String value) {
+    locked(() -> {
+      catchUp();
+      append(key, value);
+      return null;
+    });
+  }
+
+  /**
+   * Returns the stored value or loads and stores it. The loader is called without lock, so two threads or JVMs may load the same key
+   * at the same time. The first stored value wins and is returned to both.
+   * @return the value or null, if the loader returned null, which is not stored
+   */
+  @Nullable
+  public String computeIfAbsent(@Nonnull final String key, @Nonnull final Function<String, String> loader) {
+    final String stored = get(key);
+    if (stored != null) {
+      return stored;
+    }
+
+    final String loaded = loader.apply(key);
+    if (loaded == null) {
+      return null;
+    }
+
+    return locked(() -> {
+      catchUp();
+      final String concurrent = entries.get(key);
+      if (concurrent != null) {
+        return concurrent;
+      }
+      append(key, loaded);
+      return loaded;
+    });
+  }
+
+  public void remove(@Nonnull final String key) {
+    locked(() -> {
+      catchUp();
+      if (entries.containsKey(key)) {
+        append(key, null);
+      }
+      return null;
+    });
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Nonnull
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * @return the size of the log file in bytes
+   */
+  public long fileSize() {
+    return locked(() -> end);
+  }
+
+  /**
+   * Rewrites the log with the live records only.
+   */
+  public void compact() {
+    locked(() -> {
+      catchUp();
+      compactLocked();
+      return null;
+    });
+  }
+
+  /**
+   * Forces the appended records to the disk.
+   */
+  public void force() {
+    locked(() -> {
+      channel.force(false);
+      return null;
+    });
+  }
+
+  /**
+   * Forces and closes the file. The store of the file can be opened again by {@link #of(Path)}.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      BY_FILE.remove(file, this);
+      if (channel.isOpen()) {
+        channel.force(true);
+        channel.close();
+      }
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Could not close the key-value store " + file, e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private <T> T locked(@Nonnull final IoSection<T> section) {
+    lock.lock();
+    try {
+      if (!channel.isOpen()) {
+        throw new IllegalStateException("The key-value store " + file + " is closed");
+      }
+      final FileLock fileLock = channel.lock(LOCK_POSITION, 1, false);
+      try {
+        return section.run();
+      }
+      finally {
+        fileLock.release();
+      }
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Could not access the key-value store " + file, e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the header of a new file, or checks the header of an existing file. Requires the file lock.
+   * @return true, if the file was new
+   */
+  private boolean initialize() throws IOException {
+    final boolean created = channel.size() < HEADER_SIZE;
+    if (created) {
+      writeHeader(channel, STATE_READY, 0);
+      channel.truncate(HEADER_SIZE);
+      channel.force(true);
+    }
+
+    final ByteBuffer header = readFully(0, HEADER_SIZE);
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a key-value store file: " + file);
+    }
+    if (header.getInt() != STATE_COPYING) {
+      // the remains of a crash while writing the compacted log
+      Files.deleteIfExists(compactFile);
+    }
+    return created;
+  }
+
+  /**
+   * Appends the string values of the JSON object to the new log. The other JVMs wait for the file lock, so they read the imported
+   * entries, when they open the store. Requires the file lock.
+   */
+  private void importJson(@Nonnull final Path importFile) throws IOException {
+    final JsonNode json = new ObjectMapper().readTree(importFile.toFile());
+    if (json == null) {
+      return;
+    }
+    final Iterator<Map.Entry<String, JsonNode>> fields = json.fields();
+    while (fields.hasNext()) {
+      final Map.Entry<String, JsonNode> field = fields.next();
+      if (field.getValue().isTextual()) {
+        append(field.getKey(), field.getValue().textValue());
+      }
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Reads the records, which were appended since the last read, or all records, if another JVM compacted the log. An incomplete or
+   * corrupt tail is truncated, because appends hold the file lock, so the tail is left by a crash. Requires the lock and the file
+   * lock.
+   */
+  private void catchUp() throws IOException {
+    final long currentGeneration = readGeneration();
+    if (currentGeneration != generation || end == 0) {
+      entries.clear();
+      obsoleteRecords = 0;
+      generation = currentGeneration;
+      end = HEADER_SIZE;
+    }
+
+    final long size = channel.size();
+    if (size > end) {
+      end = scan(channel, end, this::apply);
+      if (end < size) {
+        channel.truncate(end);
+        channel.force(true);
+      }
+    }
+  }
+
+  /**
+   * @return the generation of the log, which is incremented by each compaction, after repeating an interrupted copy of a compaction
+   */
+  private long readGeneration() throws IOException {
+    final ByteBuffer header = readFully(0, HEADER_SIZE);
+    header.getInt();
+    if (header.getInt() != STATE_COPYING) {
+      return header.getLong();
+    }
+
+    // a JVM crashed while copying the compacted log, which is complete, because it was forced before the copy started
+    copyCompacted();
+    Files.delete(compactFile);
+    return readGeneration();
+  }
+
+  private void apply(@Nonnull final String key, @Nullable final String value) {
+    final boolean replaced = value == null ? entries.remove(key) != null : entries.put(key, value) != null;
+    if (replaced || value == null) {
+      obsoleteRecords++;
+    }
+  }
+
+  private void append(@Nonnull final String key, @Nullable final String value) throws IOException {
+    final ByteBuffer record = encode(key, value);
+    while (record.hasRemaining()) {
+      end += channel.write(record, end);
+    }
+    apply(key, value);
+
+    if (obsoleteRecords >= MIN_OBSOLETE_RECORDS_TO_COMPACT && obsoleteRecords > entries.size()) {
+      compactLocked();
+    }
+  }
+
+  private void compactLocked() throws IOException {
+    try (FileChannel compacted = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                  StandardOpenOption.WRITE)) {
+      writeHeader(compacted, STATE_READY, generation + 1);
+      long position = HEADER_SIZE;
+      for (final Map.Entry<String, String> entry : entries.entrySet()) {
+        final ByteBuffer record = encode(entry.getKey(), entry.getValue());
+        while (record.hasRemaining()) {
+          position += compacted.write(record, position);
+        }
+      }
+      compacted.force(true);
+    }
+
+    writeHeader(channel, STATE_COPYING, generation);
+    channel.force(true);
+    copyCompacted();
+    Files.delete(compactFile);
+
+    generation++;
+    end = channel.size();
+    obsoleteRecords = 0;
+  }
+
+  /**
+   * Copies the records and afterwards the header of the compacted log into the log file.
+   */
+  private void copyCompacted() throws IOException {
+    try (FileChannel compacted = FileChannel.open(compactFile, StandardOpenOption.READ)) {
+      long position = HEADER_SIZE;
+      while (position < compacted.size()) {
+        position += compacted.transferTo(position, compacted.size() - position, channel.position(position));
+      }
+      channel.truncate(compacted.size());
+      channel.force(true);
+
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && compacted.read(header, header.position()) >= 0) {
+        // read the complete header
+      }
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Reads the valid records from the position to the first incomplete or corrupt record or the end of the file.
+   * @return the position after the last valid record
+   */
+  private static long scan(@Nonnull final FileChannel channel, final long start, @Nullable final RecordConsumer consumer)
+      throws IOException {
+    final long size = channel.size();
+    final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    long position = start;
+    while (position + RECORD_HEADER_SIZE <= size) {
+      recordHeader.clear();
+      readFully(channel, recordHeader, position);
+      recordHeader.flip();
+      final int keyLength = recordHeader.getInt();
+      final int valueLength = recordHeader.getInt();
+      final int crc = recordHeader.getInt();
+      if (keyLength < 0 || valueLength < TOMBSTONE || position + RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0) > size) {
+        break;
+      }
+
+      final ByteBuffer data = ByteBuffer.allocate(keyLength + Math.max(valueLength, 0));
+      readFully(channel, data, position + RECORD_HEADER_SIZE);
+      if (crc(keyLength, valueLength, data.array()) != crc) {
+        break;
+      }
+
+      if (consumer != null) {
+        final String key = new String(data.array(), 0, keyLength, StandardCharsets.UTF_8);
+        final String value = valueLength == TOMBSTONE ? null : new String(data.array(), keyLength, valueLength, StandardCharsets.UTF_8);
+        consumer.accept(key, value);
+      }
+      position += RECORD_HEADER_SIZE + data.capacity();
+    }
+    return position;
+  }
+
+  @Nonnull
+  private static ByteBuffer encode(@Nonnull final String key, @Nullable final String value) {
+    final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    final byte[] valueBytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    final int valueLength = value == null ? TOMBSTONE : valueBytes.length;
+    final byte[] data = new byte[keyBytes.length + valueBytes.length];
+    System.arraycopy(keyBytes, 0, data, 0, keyBytes.length);
+    System.arraycopy(valueBytes, 0, data, keyBytes.length, valueBytes.length);
+
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+    record.putInt(keyBytes.length).putInt(valueLength).putInt(crc(keyBytes.length, valueLength, data)).put(data);
+    return record.flip();
+  }
+
+  private static int crc(final int keyLength, final int valueLength, @Nonnull final byte[] data) {
+    final CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putInt(keyLength).putInt(valueLength).flip());
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+
+  private static void writeHeader(@Nonnull final FileChannel channel, final int state, final long generation) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(state).putLong(generation).flip();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+  }
+
+  @Nonnull
+  private ByteBuffer readFully(final long position, final int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    readFully(channel, buffer, position);
+    return buffer.flip();
+  }
+
+  private static void readFully(@Nonnull final FileChannel channel, @Nonnull final ByteBuffer buffer, final long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface IoSection<T> {
+
+    T run() throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface RecordConsumer {
+
+    void accept(@Nonnull String key, @Nullable String value);
+  }
+}
@@ -0,0 +1,215 @@
+package de.kairos.centraxx.fhir.r4.script;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * JVM wide loader of values from an expensive external service, e.g. the FHIR id of a patient from the DIZ by the MPI, which coalesces
+ * concurrent requests for the same key. The first thread, which misses a key, calls the loader. Other threads, which request the same
+ * key meanwhile, wait for the {@link CompletableFuture} of this call instead of calling the service again.
+ * <pre>
+ * {@code
+ *   final CoalescingLoader<String, String> diz = CoalescingLoader.of("diz", Duration.ofHours(1), Duration.ofMinutes(5)) {
+ *     queryFhirIdFromDiz(it)
+ *   }
+ *   final String fhirId = diz.get(mpi)
+ *}
+ * </pre>
+ * <ul>
+ *   <li>A loaded value is cached for the TTL. A TTL of zero disables the caching of values, e.g. if the caller stores them anyway,
+ *   and only coalesces the concurrent requests.</li>
+ *   <li>A null value, e.g. of an unknown key, is cached for the negative TTL, so the service is not asked for it per record. A
+ *   negative TTL of zero disables the negative caching.</li>
+ *   <li>A failure of the loader is passed to the waiting threads, but not cached.</li>
+ * </ul>
+ * Expired entries are removed on access and by a sweep after every {@value #SWEEP_INTERVAL} misses.
+ */
+public final class CoalescingLoader<K, V> {
+
+  static final int SWEEP_INTERVAL = 1024;
+
+  private static final ConcurrentMap<String, CoalescingLoader<?, ?>> BY_NAME = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final Function<K, V> loader;
+  private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder negativeHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  private CoalescingLoader(@Nonnull final String name,
+                           @Nonnull final Duration ttl,
+                           @Nonnull final Duration negativeTtl,
+                           @Nonnull final Function<K, V> loader) {
+    if (ttl.isNegative() || negativeTtl.isNegative()) {
+      throw new IllegalArgumentException("The TTLs must not be negative, but were " + ttl + " and " + negativeTtl);
+    }
+    this.name = name;
+    this.ttlNanos = ttl.toNanos();
+    this.negativeTtlNanos = negativeTtl.toNanos();
+    this.loader = loader;
+  }
+
+  /**
+   * @param name the name of the loader, which is shared by all scripts in this JVM
+   * @param ttl the time to live of a loaded value, or zero to load values again on the next request
+   * @param negativeTtl the time to live of a null value, or zero to load null values again on the next request
+   * @param loader the call of the external service. The first request of a name determines the loader and the TTLs for the lifetime
+   * of the JVM.
+   * @return the loader of the name
+   */
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  public static <K, V> CoalescingLoader<K, V> of(@Nonnull final String name,
+                                                 @Nonnull final Duration ttl,
+                                                 @Nonnull final Duration negativeTtl,
+                                                 @Nonnull final Function<K, V> loader) {
+    return (CoalescingLoader<K, V>) BY_NAME.computeIfAbsent(name, n -> new CoalescingLoader<>(n, ttl, negativeTtl, loader));
+  }
+
+  /**
+   * Returns the cached value, waits for the running load of the key or loads the value on the calling thread.
+   * @return the value or null, if the loader returned null
+   * @throws RuntimeException the exception of the loader, also to the threads, which waited for it
+   */
+  @Nullable
+  public V get(@Nonnull final K key) {
+    while (true) {
+      final Entry<V> entry = entries.get(key);
+      if (entry != null) {
+        if (!entry.future.isDone()) {
+          coalesced.increment();
+          return await(entry.future);
+        }
+        if (System.nanoTime() - entry.expiresAt < 0 && !entry.future.isCompletedExceptionally()) {
+          final V value = entry.future.join();
+          (value == null ? negativeHits : hits).increment();
+          return value;
+        }
+        entries.remove(key, entry);
+      }
+
+      final Entry<V> created = new Entry<>();
+      if (entries.putIfAbsent(key, created) == null) {
+        return load(key, created);
+      }
+    }
+  }
+
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of requests, which returned a cached non-null value
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of requests, which returned a cached null value
+   */
+  public long getNegativeHits() {
+    return negativeHits.sum();
+  }
+
+  /**
+   * @return the number of calls of the loader
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the number of requests, which waited for the running load of another thread
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return name + ": hits " + getHits() + ", negative hits " + getNegativeHits() + ", misses " + getMisses() + ", coalesced "
+           + getCoalesced();
+  }
+
+  @Nullable
+  private V load(@Nonnull final K key, @Nonnull final Entry<V> entry) {
+    misses.increment();
+    if (misses.sum() % SWEEP_INTERVAL == 0) {
+      sweep();
+    }
+
+    final V value;
+    try {
+      value = loader.apply(key);
+    }
+    catch (final RuntimeException | Error e) {
+      entries.remove(key, entry);
+      entry.future.completeExceptionally(e);
+      throw e;
+    }
+
+    final long ttl = value == null ? negativeTtlNanos : ttlNanos;
+    if (ttl == 0) {
+      entries.remove(key, entry);
+    }
+    // written before the completion, so the threads, which see the completed future, see the expiry as well
+    entry.expiresAt = System.nanoTime() + ttl;
+    entry.future.complete(value);
+    return value;
+  }
+
+  private void sweep() {
+    final long now = System.nanoTime();
+    entries.forEach((key, entry) -> {
+      if (entry.future.isDone() && now - entry.expiresAt >= 0) {
+        entries.remove(key, entry);
+      }
+    });
+  }
+
+  @Nullable
+  private static <V> V await(@Nonnull final CompletableFuture<V> future) {
+    try {
+      return future.get();
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the running load", e);
+    }
+    catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new CompletionException(e.getCause());
+    }
+  }
+
+  private static final class Entry<V> {
+
+    private final CompletableFuture<V> future = new CompletableFuture<>();
+    private volatile long expiresAt;
+  }
+}
@@ -0,0 +1,701 @@
+package de.kairos.centraxx.fhir.r4.script;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JVM wide pool of connections to an external database by name, which is configured in a {@value #CONFIG_FILE_NAME}, e.g. in the
+ * directory of the scripts in the custom mapping directory. Scripts run once per exported entity, so a script must not load the JDBC
+ * driver or open a connection per run:
+ * <ul>
+ *   <li>The configuration is read, the driver loaded and the first connection opened, when the first connection is requested.</li>
+ *   <li>The class loader of a driver JAR is created once per JVM and shared by all data sources of this JAR.</li>
+ *   <li>A closed connection returns to the pool. An idle connection is validated before it is borrowed again, if it was not used for
+ *   {@link #VALIDATION_INTERVAL}. A connection, which failed with a connection error, is discarded.</li>
+ *   <li>A closed prepared statement is kept in a cache of the connection and returned by the next preparation of the same SQL.</li>
+ *   <li>Closing a connection closes all its statements and their result sets, also the statements of
+ *   {@link Connection#createStatement()}, {@link Connection#prepareCall(String)} and the other variants of
+ *   {@link Connection#prepareStatement(String)}, which are not cached. Statements and result sets return the pooled connection, never
+ *   the connection of the database.</li>
+ * </ul>
+ * <pre>
+ * {@code
+ *   final DataSource cxx = PooledDataSource.of(Paths.get("C:/centraxx-home/fhir-custom-mappings/project1/DataSourceConfig.json"), "cxx")
+ *   try (final Connection connection = cxx.getConnection(); final PreparedStatement statement = connection.prepareStatement(sql)) {
+ *     ...
+ *   }
+ *}
+ * </pre>
+ * The configuration contains the data sources by name:
+ * <pre>
+ * {@code
+ *   "cxx": {
+ *     "driverJar": "C:/temp/mssql-jdbc-11.2.1.jre11.jar",
+ *     "dataSourceClass": "com.microsoft.sqlserver.jdbc.SQLServerDataSource",
+ *     "properties": {"URL": "jdbc:sqlserver://dbhost:1433;databaseName=KAIROS_SPRING;encrypt=true", "user": "username", "password": "password"},
+ *     "maxPoolSize": 4,
+ *     "statementCacheSize": 16,
+ *     "borrowTimeoutSeconds": 30
+ *   }
+ *}
+ * </pre>
+ * The properties are set with the setters of the data source class, e.g. setURL(String). Without a driver JAR the class is loaded
+ * from the class path.
+ */
+public final class PooledDataSource implements DataSource, Closeable {
+
+  private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PooledDataSource.class);
+
+  public static final String CONFIG_FILE_NAME = "DataSourceConfig.json";
+  public static final Duration VALIDATION_INTERVAL = Duration.ofSeconds(30);
+  static final int DEFAULT_MAX_POOL_SIZE = 4;
+  static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+  static final int DEFAULT_BORROW_TIMEOUT_SECONDS = 30;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final ConcurrentMap<String, PooledDataSource> BY_NAME = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Path, ClassLoader> DRIVER_CLASS_LOADERS = new ConcurrentHashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> BY_NAME.values().forEach(PooledDataSource::close),
+                                                    "pooled-data-source-shutdown"));
+  }
+
+  private final String key;
+  private final Path configFile;
+  private final String name;
+  private final BlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+  private final LongAdder borrows = new LongAdder();
+  private final LongAdder connects = new LongAdder();
+  private final LongAdder statementHits = new LongAdder();
+  private final LongAdder statementMisses = new LongAdder();
+  private int statementCacheSize;
+  private long borrowTimeoutNanos;
+  private Semaphore permits;
+  // written last by the initialization, so a thread, which sees the target, sees the other settings as well
+  private volatile DataSource target;
+  private volatile boolean closed;
+
+  private PooledDataSource(@Nonnull final String key, @Nonnull final Path configFile, @Nonnull final String name) {
+    this.key = key;
+    this.configFile = configFile;
+    this.name = name;
+  }
+
+  /**
+   * @param configFile the {@value #CONFIG_FILE_NAME} of the project, which is read with the first requested connection
+   * @param name the name of the data source in the configuration
+   * @return the pool of the data source, which is shared by all scripts in this JVM
+   */
+  @Nonnull
+  public static PooledDataSource of(@Nonnull final Path configFile, @Nonnull final String name) {
+    final Path file = configFile.toAbsolutePath().normalize();
+    return BY_NAME.computeIfAbsent(file + "#" + name, k -> new PooledDataSource(k, file, name));
+  }
+
+  /**
+   * Borrows an idle connection of the pool or opens a new one, if the pool has less than the maximum number of connections. Closing
+   * the returned connection returns it to the pool.
+   * @throws SQLTransientConnectionException if all connections are borrowed for the borrow timeout
+   * @throws SQLException if the data source cannot be created or the connection cannot be opened
+   */
+  @Override
+  @Nonnull
+  public Connection getConnection() throws SQLException {
+    final DataSource dataSource = initialize();
+    if (closed) {
+      throw new SQLException("The data source " + name + " is closed");
+    }
+
+    try {
+      if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw new SQLTransientConnectionException("No connection of the data source " + name + " became available within "
+                                                  + Duration.ofNanos(borrowTimeoutNanos));
+      }
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection of the data source " + name, e);
+    }
+
+    try {
+      final PhysicalConnection connection = borrow(dataSource);
+      borrows.increment();
+      return connection.newHandle();
+    }
+    catch (final SQLException | RuntimeException | Error e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(final String username, final String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("The credentials of the data source " + name + " are configured in " + configFile);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return initialize().getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(final PrintWriter out) throws SQLException {
+    initialize().setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(final int seconds) throws SQLException {
+    initialize().setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return initialize().getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(final Class<T> iface) throws SQLException {
+    return iface.isInstance(this) ? iface.cast(this) : initialize().unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || initialize().isWrapperFor(iface);
+  }
+
+  /**
+   * Closes the idle connections and removes the pool from the JVM, so the next {@link #of(Path, String)} reads the configuration
+   * again. Borrowed connections are closed, when they are returned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    BY_NAME.remove(key, this);
+    PhysicalConnection connection;
+    while ((connection = idle.pollFirst()) != null) {
+      connection.discard();
+    }
+  }
+
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of borrowed connections
+   */
+  public long getBorrows() {
+    return borrows.sum();
+  }
+
+  /**
+   * @return the number of opened physical connections
+   */
+  public long getConnects() {
+    return connects.sum();
+  }
+
+  /**
+   * @return the number of prepared statements, which were taken from the cache of the connection
+   */
+  public long getStatementHits() {
+    return statementHits.sum();
+  }
+
+  /**
+   * @return the number of prepared statements, which were prepared by the database
+   */
+  public long getStatementMisses() {
+    return statementMisses.sum();
+  }
+
+  public int getIdle() {
+    return idle.size();
+  }
+
+  @Override
+  public String toString() {
+    return name + ": borrows " + getBorrows() + ", connects " + getConnects() + ", statement hits " + getStatementHits()
+           + ", statement misses " + getStatementMisses() + ", idle " + getIdle();
+  }
+
+  @Nonnull
+  private DataSource initialize() throws SQLException {
+    final DataSource dataSource = target;
+    if (dataSource != null) {
+      return dataSource;
+    }
+
+    synchronized (this) {
+      if (target == null) {
+        final JsonNode config = readConfig();
+        final int maxPoolSize = config.path("maxPoolSize").asInt(DEFAULT_MAX_POOL_SIZE);
+        if (maxPoolSize < 1) {
+          throw new SQLException("The maxPoolSize of the data source " + name + " must be at least 1, but was " + maxPoolSize);
+        }
+        permits = new Semaphore(maxPoolSize, true);
+        statementCacheSize = Math.max(0, config.path("statementCacheSize").asInt(DEFAULT_STATEMENT_CACHE_SIZE));
+        borrowTimeoutNanos = TimeUnit.SECONDS.toNanos(config.path("borrowTimeoutSeconds").asInt(DEFAULT_BORROW_TIMEOUT_SECONDS));
+        target = createDataSource(config);
+        LOG.info("Created the data source {} of {} with at most {} connections", name, configFile, maxPoolSize);
+      }
+      return target;
+    }
+  }
+
+  @Nonnull
+  private JsonNode readConfig() throws SQLException {
+    final JsonNode config;
+    try {
+      config = new ObjectMapper().readTree(configFile.toFile()).path(name);
+    }
+    catch (final IOException e) {
+      throw new SQLException("Could not read the data source configuration " + configFile, e);
+    }
+    if (!config.isObject()) {
+      throw new SQLException("The data source " + name + " is not configured in " + configFile);
+    }
+    return config;
+  }
+
+  @Nonnull
+  private DataSource createDataSource(@Nonnull final JsonNode config) throws SQLException {
+    final String className = config.path("dataSourceClass").asText(null);
+    if (className == null) {
+      throw new SQLException("The dataSourceClass of the data source " + name + " is missing in " + configFile);
+    }
+
+    try {
+      final Class<?> dataSourceClass = Class.forName(className, true, driverClassLoader(config.path("driverJar").asText(null)));
+      final DataSource dataSource = (DataSource) dataSourceClass.getDeclaredConstructor().newInstance();
+      final Iterator<Map.Entry<String, JsonNode>> properties = config.path("properties").fields();
+      while (properties.hasNext()) {
+        final Map.Entry<String, JsonNode> property = properties.next();
+        setProperty(dataSource, property.getKey(), property.getValue().asText());
+      }
+      return dataSource;
+    }
+    catch (final ReflectiveOperationException | ClassCastException | MalformedURLException e) {
+      throw new SQLException("Could not create the data source " + name + " of " + configFile, e);
+    }
+  }
+
+  /**
+   * @return the class loader of the driver JAR, which is shared by all data sources of the JAR, or the class loader of this class, if
+   * there is no JAR
+   */
+  @Nonnull
+  private static ClassLoader driverClassLoader(@Nullable final String driverJar) throws MalformedURLException {
+    if (driverJar == null) {
+      return PooledDataSource.class.getClassLoader();
+    }
+
+    final Path jar = Paths.get(driverJar).toAbsolutePath().normalize();
+    final URL url = jar.toUri().toURL();
+    return DRIVER_CLASS_LOADERS.computeIfAbsent(jar, j -> new URLClassLoader(new URL[]{url}, PooledDataSource.class.getClassLoader()));
+  }
+
+  /**
+   * Calls the public setter of the property with a String, int or boolean parameter, e.g. setURL(String) for the property 'URL'.
+   */
+  private static void setProperty(@Nonnull final DataSource dataSource, @Nonnull final String property, @Nonnull final String value)
+      throws ReflectiveOperationException {
+    final String setter = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    for (final Method method : dataSource.getClass().getMethods()) {
+      if (!method.getName().equals(setter) || method.getParameterCount() != 1) {
+        continue;
+      }
+
+      final Class<?> type = method.getParameterTypes()[0];
+      if (type == String.class) {
+        method.invoke(dataSource, value);
+        return;
+      }
+      if (type == int.class) {
+        method.invoke(dataSource, Integer.parseInt(value));
+        return;
+      }
+      if (type == boolean.class) {
+        method.invoke(dataSource, Boolean.parseBoolean(value));
+        return;
+      }
+    }
+    throw new NoSuchMethodException(dataSource.getClass().getName() + "." + setter + "(String|int|boolean)");
+  }
+
+  @Nonnull
+  private PhysicalConnection borrow(@Nonnull final DataSource dataSource) throws SQLException {
+    PhysicalConnection connection;
+    while ((connection = idle.pollFirst()) != null) {
+      if (System.nanoTime() - connection.lastUsed < VALIDATION_INTERVAL.toNanos() || connection.isValid()) {
+        return connection;
+      }
+      connection.discard();
+    }
+
+    connects.increment();
+    return new PhysicalConnection(dataSource.getConnection());
+  }
+
+  private void release(@Nonnull final PhysicalConnection connection, final boolean broken) {
+    try {
+      if (broken || closed) {
+        connection.discard();
+      }
+      else {
+        connection.lastUsed = System.nanoTime();
+        // last in, first out, so the connections, which are not needed, expire and are validated
+        idle.offerFirst(connection);
+      }
+    }
+    finally {
+      permits.release();
+    }
+  }
+
+  @Nullable
+  private static Object invoke(@Nonnull final Object target, @Nonnull final Method method, @Nullable final Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    }
+    catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void closeQuietly(@Nonnull final Statement statement) {
+    try {
+      statement.close();
+    }
+    catch (final SQLException e) {
+      LOG.warn("Could not close a statement", e);
+    }
+  }
+
+  /**
+   * @return the result of the methods of {@link Object}, which a proxy passes to its handler, or null for other methods
+   */
+  @Nullable
+  private static Object invokeObjectMethod(@Nonnull final Object proxy, @Nonnull final Method method, @Nullable final Object[] args,
+                                           @Nonnull final String description) {
+    switch (method.getName()) {
+      case "equals":
+        return method.getParameterCount() == 1 ? proxy == args[0] : null;
+      case "hashCode":
+        return method.getParameterCount() == 0 ? System.identityHashCode(proxy) : null;
+      case "toString":
+        return method.getParameterCount() == 0 ? description : null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * A connection of the database, which is borrowed by one thread at a time, and its cache of prepared statements.
+   */
+  private final class PhysicalConnection {
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+        if (size() <= statementCacheSize) {
+          return false;
+        }
+        closeQuietly(eldest.getValue());
+        return true;
+      }
+    };
+    private volatile long lastUsed = System.nanoTime();
+
+    private PhysicalConnection(@Nonnull final Connection connection) {
+      this.connection = connection;
+    }
+
+    @Nonnull
+    private Connection newHandle() {
+      return (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                                                 new ConnectionHandle(this));
+    }
+
+    @Nonnull
+    private PreparedStatement prepare(@Nonnull final String sql) throws SQLException {
+      final PreparedStatement cached = statements.remove(sql);
+      if (cached != null && !cached.isClosed()) {
+        statementHits.increment();
+        return cached;
+      }
+      statementMisses.increment();
+      return connection.prepareStatement(sql);
+    }
+
+    private void putBack(@Nonnull final String sql, @Nonnull final PreparedStatement statement) {
+      if (statementCacheSize == 0) {
+        closeQuietly(statement);
+        return;
+      }
+      // another statement of the same SQL, which was prepared while this one was open
+      final PreparedStatement previous = statements.put(sql, statement);
+      if (previous != null && previous != statement) {
+        closeQuietly(previous);
+      }
+    }
+
+    private boolean isValid() {
+      try {
+        return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }
+      catch (final SQLException e) {
+        return false;
+      }
+    }
+
+    private void discard() {
+      statements.values().forEach(PooledDataSource::closeQuietly);
+      statements.clear();
+      try {
+        connection.close();
+      }
+      catch (final SQLException e) {
+        LOG.warn("Could not close a connection of the data source {}", name, e);
+      }
+    }
+  }
+
+  /**
+   * The connection of one borrower. Closing it closes its open statements and returns the physical connection to the pool.
+   */
+  private final class ConnectionHandle implements InvocationHandler {
+
+    private final PhysicalConnection physical;
+    private final List<StatementHandle> open = new ArrayList<>();
+    private boolean closed;
+    private boolean broken;
+
+    private ConnectionHandle(@Nonnull final PhysicalConnection physical) {
+      this.physical = physical;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      final Object objectResult = invokeObjectMethod(proxy, method, args, "pooled connection of " + name);
+      if (objectResult != null) {
+        return objectResult;
+      }
+      if ("close".equals(method.getName())) {
+        close();
+        return null;
+      }
+      if ("isClosed".equals(method.getName())) {
+        return closed;
+      }
+      if (closed) {
+        throw new SQLException("The connection of the data source " + name + " is closed");
+      }
+
+      try {
+        if (!Statement.class.isAssignableFrom(method.getReturnType())) {
+          return PooledDataSource.invoke(physical.connection, method, args);
+        }
+
+        // only prepareStatement(String) is cached, the other statements are closed with the handle
+        final boolean cached = "prepareStatement".equals(method.getName()) && args.length == 1;
+        final StatementHandle handle = cached
+                                       ? new StatementHandle(this, proxy, (String) args[0], physical.prepare((String) args[0]))
+                                       : new StatementHandle(this, proxy, null,
+                                                             (Statement) PooledDataSource.invoke(physical.connection, method, args));
+        open.add(handle);
+        return Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[]{method.getReturnType()}, handle);
+      }
+      catch (final SQLException e) {
+        failed(e);
+        throw e;
+      }
+    }
+
+    /**
+     * Marks the connection as broken for a connection exception, e.g. a connection closed by the database, which have the SQL state
+     * class 08.
+     */
+    private void failed(@Nonnull final SQLException e) {
+      broken |= e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    private void close() throws SQLException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      try {
+        for (final StatementHandle statement : new ArrayList<>(open)) {
+          statement.close();
+        }
+        if (!broken && !physical.connection.getAutoCommit()) {
+          physical.connection.rollback();
+          physical.connection.setAutoCommit(true);
+        }
+      }
+      catch (final SQLException e) {
+        broken = true;
+        throw e;
+      }
+      finally {
+        release(physical, broken);
+      }
+    }
+  }
+
+  /**
+   * A statement of a borrower. Closing it closes its result sets and puts a prepared statement of the cache back into the cache of the
+   * connection, or closes any other statement.
+   */
+  private static final class StatementHandle implements InvocationHandler {
+
+    private final ConnectionHandle connection;
+    private final Object connectionProxy;
+    private final String cachedSql;
+    private final Statement statement;
+    private final List<ResultSet> resultSets = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param cachedSql the SQL of a prepared statement of the cache, or null for a statement, which is closed with the handle
+     */
+    private StatementHandle(@Nonnull final ConnectionHandle connection,
+                            @Nonnull final Object connectionProxy,
+                            @Nullable final String cachedSql,
+                            @Nonnull final Statement statement) {
+      this.connection = connection;
+      this.connectionProxy = connectionProxy;
+      this.cachedSql = cachedSql;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      final Object objectResult = invokeObjectMethod(proxy, method, args,
+                                                     cachedSql != null ? "pooled statement " + cachedSql : "pooled statement");
+      if (objectResult != null) {
+        return objectResult;
+      }
+      if ("close".equals(method.getName())) {
+        close();
+        return null;
+      }
+      if ("isClosed".equals(method.getName())) {
+        return closed;
+      }
+      if (closed) {
+        throw new SQLException("The statement is closed");
+      }
+      if ("getConnection".equals(method.getName())) {
+        return connectionProxy;
+      }
+
+      try {
+        final Object result = PooledDataSource.invoke(statement, method, args);
+        return result instanceof ResultSet ? wrap(proxy, (ResultSet) result) : result;
+      }
+      catch (final SQLException e) {
+        connection.failed(e);
+        throw e;
+      }
+    }
+
+    /**
+     * @return the result set, which returns the given statement proxy instead of the statement of the database
+     */
+    @Nonnull
+    private ResultSet wrap(@Nonnull final Object statementProxy, @Nonnull final ResultSet resultSet) throws SQLException {
+      // a statement closes its previous result set with the next execution, so only the open result sets are kept
+      final Iterator<ResultSet> iterator = resultSets.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().isClosed()) {
+          iterator.remove();
+        }
+      }
+      resultSets.add(resultSet);
+      return (ResultSet) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (p, m, a) -> {
+        final Object objectResult = invokeObjectMethod(p, m, a, "pooled result set");
+        if (objectResult != null) {
+          return objectResult;
+        }
+        return "getStatement".equals(m.getName()) ? statementProxy : PooledDataSource.invoke(resultSet, m, a);
+      });
+    }
+
+    private void close() throws SQLException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      connection.open.remove(this);
+
+      try {
+        for (final ResultSet resultSet : resultSets) {
+          resultSet.close();
+        }
+        resultSets.clear();
+        if (cachedSql == null) {
+          statement.close();
+          return;
+        }
+        ((PreparedStatement) statement).clearParameters();
+      }
+      catch (final SQLException e) {
+        closeQuietly(statement);
+        throw e;
+      }
+      connection.physical.putBack(cachedSql, (PreparedStatement) statement);
+    }
+  }
+}
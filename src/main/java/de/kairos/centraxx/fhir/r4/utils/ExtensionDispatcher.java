@@ -0,0 +1,105 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Element;
+import org.hl7.fhir.r4.model.Extension;
+
+/**
+ * Walks an extension tree once and routes each extension to the handler registered for its URL, e.g. a {@link FhirUrls} constant.
+ * Scripts, which look up several nested extensions by repeated getExtensionByUrl or find calls, rescan the extension list for
+ * every lookup. The dispatcher visits each extension exactly once, so deep CRF or labor mapping trees cost O(nodes).
+ * <pre>
+ * {@code
+ *   final ExtensionDispatcher dispatcher = new ExtensionDispatcher()
+ *       .on(FhirUrls.Extension.LaborMapping.PATIENT, { ext, parent -> patientRef = ext.getValue() })
+ *       .on(FhirUrls.Extension.LaborMapping.RELATED_REFERENCE, { ext, parent -> relatedRef = ext.getValue() })
+ *   dispatcher.dispatch(sourceObservation)
+ *}
+ * </pre>
+ * The handlers should be registered once, e.g. in a static field of the script. After registration, a dispatcher can be shared
+ * between threads, as long as the handlers themselves are thread-safe.
+ */
+public final class ExtensionDispatcher {
+
+  /**
+   * Callback for an extension of a registered URL.
+   */
+  @FunctionalInterface
+  public interface ExtensionHandler {
+    /**
+     * @param extension the extension with the registered URL
+     * @param parent the enclosing extension or null, if the extension is a direct child of the dispatched element
+     */
+    void handle(@Nonnull Extension extension, @Nullable Extension parent);
+  }
+
+  private final Map<String, ExtensionHandler> handlers = new HashMap<>();
+  private ExtensionHandler unhandled;
+
+  /**
+   * Registers the handler for all extensions with the given URL. A handler registered before for the same URL is replaced.
+   * @return this dispatcher for chaining
+   */
+  @Nonnull
+  public ExtensionDispatcher on(@Nonnull final String url, @Nonnull final ExtensionHandler handler) {
+    handlers.put(url, handler);
+    return this;
+  }
+
+  /**
+   * Registers the same handler for several URLs, e.g. {@code FhirUrls.Extension.LaborMapping.getAllDomains()}.
+   * @return this dispatcher for chaining
+   */
+  @Nonnull
+  public ExtensionDispatcher on(@Nonnull final Iterable<String> urls, @Nonnull final ExtensionHandler handler) {
+    urls.forEach(url -> handlers.put(url, handler));
+    return this;
+  }
+
+  /**
+   * Registers a handler for all extensions without a registered URL, e.g. to log unknown extensions.
+   * @return this dispatcher for chaining
+   */
+  @Nonnull
+  public ExtensionDispatcher otherwise(@Nonnull final ExtensionHandler handler) {
+    this.unhandled = handler;
+    return this;
+  }
+
+  public void dispatch(@Nonnull final DomainResource resource) {
+    dispatch(resource.getExtension(), null);
+  }
+
+  public void dispatch(@Nonnull final Element element) {
+    dispatch(element.getExtension(), null);
+  }
+
+  public void dispatch(@Nonnull final List<Extension> extensions) {
+    dispatch(extensions, null);
+  }
+
+  private void dispatch(@Nonnull final List<Extension> extensions, @Nullable final Extension parent) {
+    // index based loop to avoid an iterator per level
+    for (int i = 0; i < extensions.size(); i++) {
+      final Extension extension = extensions.get(i);
+      final ExtensionHandler handler = extension.getUrl() == null ? null : handlers.get(extension.getUrl());
+      if (handler != null) {
+        handler.handle(extension, parent);
+      }
+      else if (unhandled != null) {
+        unhandled.handle(extension, parent);
+      }
+
+      if (extension.hasExtension()) {
+        dispatch(extension.getExtension(), extension);
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Result of {@link FhirUrls#classify(CharSequence)}. Describes which {@link FhirUrls} domain class declares a URL constant.
+ * Instances are created once per URL constant and shared between all callers.
+ */
+public final class FhirUrlClassification {
+
+  private final Class<?> domain;
+  private final String name;
+  private final String url;
+  private final String baseUrl;
+
+  FhirUrlClassification(@Nonnull final Class<?> domain, @Nonnull final String name, @Nonnull final String url) {
+    this.domain = domain;
+    this.name = name;
+    this.url = url;
+    this.baseUrl = url.substring(0, Math.max(url.lastIndexOf('/'), 0));
+  }
+
+  /**
+   * @return the nested {@link FhirUrls} class, which declares the URL, e.g. {@link FhirUrls.Extension.LaborMapping}
+   */
+  @Nonnull
+  public Class<?> getDomain() {
+    return domain;
+  }
+
+  /**
+   * @return the name of the constant, e.g. 'PATIENT' for {@link FhirUrls.Extension.LaborMapping#PATIENT}
+   */
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the URL value of the constant
+   */
+  @Nonnull
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return the URL without its last path segment, e.g. 'https://fhir.centraxx.de/extension/laborMapping'
+   */
+  @Nonnull
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  @Override
+  public String toString() {
+    return domain.getName().substring(FhirUrls.class.getName().length() + 1).replace('$', '.') + "." + name + " (" + url + ")";
+  }
+}
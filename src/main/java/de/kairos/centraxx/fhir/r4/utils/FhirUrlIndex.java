@@ -0,0 +1,146 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable open addressing hash table over all public URL constants of the {@link FhirUrls} domain classes.
+ * Lookups hash the given {@link CharSequence} in place and compare it char by char, so a hit neither creates substrings nor
+ * allocates a result. The table is built once and can be shared between threads.
+ */
+final class FhirUrlIndex {
+
+  private final String[] keys;
+  private final FhirUrlClassification[] values;
+  private final int mask;
+
+  private FhirUrlIndex(@Nonnull final Map<String, FhirUrlClassification> classifications) {
+    final int capacity = Integer.highestOneBit(Math.max(classifications.size(), 1) * 4 - 1) << 1;
+    this.keys = new String[capacity];
+    this.values = new FhirUrlClassification[capacity];
+    this.mask = capacity - 1;
+    classifications.forEach((url, classification) -> {
+      int slot = spread(url.hashCode()) & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = url;
+      values[slot] = classification;
+    });
+  }
+
+  /**
+   * Collects all public static String constants of the nested classes of the given root class, which contain a URL.
+   * If several constants share the same URL, the constant of the deepest nested class wins, because it is the most specific domain.
+   */
+  @Nonnull
+  static FhirUrlIndex build(@Nonnull final Class<?> root) {
+    final List<FhirUrlClassification> all = new ArrayList<>();
+    collect(root, all);
+    all.sort(Comparator.comparingInt((FhirUrlClassification c) -> -depth(c.getDomain()))
+                       .thenComparing(c -> c.getDomain().getName())
+                       .thenComparing(FhirUrlClassification::getName));
+
+    final Map<String, FhirUrlClassification> byUrl = new LinkedHashMap<>();
+    all.forEach(classification -> byUrl.putIfAbsent(classification.getUrl(), classification));
+    return new FhirUrlIndex(byUrl);
+  }
+
+  private static void collect(@Nonnull final Class<?> domain, @Nonnull final List<FhirUrlClassification> all) {
+    for (final Field field : domain.getDeclaredFields()) {
+      final int modifiers = field.getModifiers();
+      if (field.getType() != String.class || !Modifier.isPublic(modifiers) || !Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)) {
+        continue;
+      }
+
+      final String value = readConstant(field);
+      if (value != null && value.contains("://")) {
+        all.add(new FhirUrlClassification(domain, field.getName(), value));
+      }
+    }
+
+    for (final Class<?> nested : domain.getDeclaredClasses()) {
+      collect(nested, all);
+    }
+  }
+
+  @Nullable
+  private static String readConstant(@Nonnull final Field field) {
+    try {
+      return (String) field.get(null);
+    }
+    catch (final IllegalAccessException e) {
+      throw new IllegalStateException("Could not read URL constant " + field, e);
+    }
+  }
+
+  private static int depth(@Nonnull final Class<?> domain) {
+    int depth = 0;
+    for (Class<?> c = domain; c != null; c = c.getEnclosingClass()) {
+      depth++;
+    }
+    return depth;
+  }
+
+  @Nullable
+  FhirUrlClassification get(@Nullable final CharSequence url) {
+    if (url == null) {
+      return null;
+    }
+
+    int slot = spread(hash(url)) & mask;
+    String key;
+    while ((key = keys[slot]) != null) {
+      if (contentEquals(key, url)) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return null;
+  }
+
+  /**
+   * Same as {@link String#hashCode()}, but without creating a String of the given char sequence.
+   */
+  private static int hash(@Nonnull final CharSequence url) {
+    if (url instanceof String) {
+      return url.hashCode();
+    }
+
+    int h = 0;
+    for (int i = 0; i < url.length(); i++) {
+      h = 31 * h + url.charAt(i);
+    }
+    return h;
+  }
+
+  private static int spread(final int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean contentEquals(@Nonnull final String key, @Nonnull final CharSequence url) {
+    if (url instanceof String) {
+      return key.equals(url);
+    }
+
+    final int length = key.length();
+    if (length != url.length()) {
+      return false;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      // compare from the end, because most URLs share the same prefix
+      if (key.charAt(i) != url.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
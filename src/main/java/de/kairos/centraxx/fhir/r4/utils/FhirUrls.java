@@ -2,14 +2,18 @@ package de.kairos.centraxx.fhir.r4.utils;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Registry class for FHIR URI definitions
@@ -45,78 +49,108 @@ public final class FhirUrls {
 
     private Extension() {/* hide constructor */}
 
+    /**
+     * @return all extension URLs of this registry. The list is built once and shared, it must not be modified.
+     */
+    @Nonnull
     public static List<String> getAllDomains() {
-      final List<String> domains = new ArrayList<>();
-      domains.add(SAMPLE_LOCATION);
-      domains.add(SPREC);
-      domains.add(SAMPLE_CATEGORY);
-      domains.add(LABOR_MAPPING);
-      domains.add(UPDATE_WITH_OVERWRITE);
-      domains.add(CREATE_MASTER_DATA);
-      domains.add(CURRENCY);
-      domains.add(COUNTER);
-      domains.add(CONTACT_ADDRESS);
-      domains.addAll(Patient.getAllDomains());
-      domains.addAll(Sprec.getAllDomains());
-      domains.addAll(Study.getAllDomains());
-      domains.addAll(Survey.getAllDomains());
-      domains.addAll(CrfTemplate.getAllDomains());
-      domains.addAll(LaborValue.getAllDomains());
-      domains.addAll(Hotline.getAllDomains());
-      domains.addAll(Sample.getAllDomains());
-      domains.addAll(Medication.getAllDomains());
-      domains.addAll(Consent.getAllDomains());
-      domains.addAll(Consent.Revocation.getAllDomains());
-      domains.addAll(Consent.Signature.getAllDomains());
-      domains.addAll(Calendar.getAllDomains());
-      domains.addAll(Task.getAllDomains());
-      domains.addAll(Crf.getAllDomains());
-      domains.addAll(StudyVisitItem.getAllDomains());
-      domains.addAll(Document.getAllDomains());
-      domains.addAll(ServiceRequest.getAllDomains());
-      domains.addAll(LaborMapping.getAllDomains());
-      domains.addAll(SampleLocation.getAllDomains());
-      domains.addAll(Translation.getAllDomains());
-      domains.addAll(FlexiFlagItem.getAllDomains());
-      domains.addAll(Tumor.getAllDomains());
-      domains.addAll(Histology.getAllDomains());
-      domains.addAll(Catalogs.getAllDomains());
-      domains.addAll(ContactAddress.getAllDomains());
-      domains.addAll(RadiationTarget.getAllDomains());
-      domains.addAll(PatientTransfer.getAllDomains());
-      domains.addAll(FollowDisease.getAllDomains());
-      domains.addAll(GtdsTherapy.getAllDomains());
-      domains.addAll(GtdsTherapy.Surgery.getAllDomains());
-      domains.addAll(GtdsTherapy.RadiationTherapy.getAllDomains());
-      domains.addAll(GtdsTherapy.SystemTherapy.getAllDomains());
-      domains.addAll(RadiationComponent.getAllDomains());
-      domains.addAll(SurgeryComponent.getAllDomains());
-      domains.addAll(PreexistingIllness.getAllDomains());
-      domains.addAll(DeathCause.getAllDomains());
-      domains.addAll(AdverseEffects.getAllDomains());
-      domains.addAll(StudyMember.getAllDomains());
-      domains.addAll(FhirDefaults.getAllDomains());
-      domains.addAll(PatientInsurance.getAllDomains());
-      domains.addAll(MedProcedure.getAllDomains());
-      domains.addAll(Diagnosis.getAllDomains());
-      domains.addAll(LaborMethod.getAllDomains());
-      domains.addAll(MeasurementSeries.getAllDomains());
-      domains.addAll(Currency.getAllDomains());
-      domains.addAll(Counter.getAllDomains());
-
-      return domains;
+      return Domains.ALL;
+    }
+
+    /**
+     * @return a set view of {@link #getAllDomains()} for constant time lookups.
+     */
+    @Nonnull
+    public static Set<String> getAllDomainSet() {
+      return Domains.ALL_SET;
+    }
+
+    /**
+     * @param url the extension URL to check
+     * @return true, if the given URL is one of the known extension URLs of this registry
+     */
+    public static boolean isKnownDomain(final String url) {
+      return url != null && Domains.ALL_SET.contains(url);
     }
 
     @Nonnull
-    private static Map<String, String> getExtensionMap(@Nonnull final List<String> extensionUrls) {
-      final Map<String, String> subExtensionsMap = new HashMap<>();
-      extensionUrls.forEach(domain -> subExtensionsMap.put(getLastSplit(domain.split("/")), domain));
-      return subExtensionsMap;
+    private static List<String> domains(@Nonnull final String... urls) {
+      return union(asList(urls));
     }
 
     @Nonnull
-    private static String getLastSplit(@Nonnull final String[] array) {
-      return array[array.length - 1];
+    private static SubExtensionMap subExtensions(@Nonnull final Collection<String> extensionUrls) {
+      return new SubExtensionMap(extensionUrls);
+    }
+
+    @SafeVarargs
+    @Nonnull
+    private static List<String> union(@Nonnull final Collection<String>... domainLists) {
+      final Set<String> domains = new LinkedHashSet<>();
+      for (final Collection<String> domainList : domainLists) {
+        domains.addAll(domainList);
+      }
+      return unmodifiableList(new ArrayList<>(domains));
+    }
+
+    /**
+     * Holder of the aggregated registry. It is initialized on first access and not together with {@link Extension},
+     * because the nested domain classes use the helpers of {@link Extension} in their own static initializers.
+     */
+    private static final class Domains {
+      private static final List<String> ALL = union(domains(SAMPLE_LOCATION, SPREC, SAMPLE_CATEGORY, LABOR_MAPPING, UPDATE_WITH_OVERWRITE,
+                                                            CREATE_MASTER_DATA, CURRENCY, COUNTER, CONTACT_ADDRESS),
+                                                    Patient.getAllDomains(),
+                                                    Sprec.getAllDomains(),
+                                                    Study.getAllDomains(),
+                                                    Survey.getAllDomains(),
+                                                    CrfTemplate.getAllDomains(),
+                                                    LaborValue.getAllDomains(),
+                                                    Hotline.getAllDomains(),
+                                                    Sample.getAllDomains(),
+                                                    Medication.getAllDomains(),
+                                                    Consent.getAllDomains(),
+                                                    Consent.Revocation.getAllDomains(),
+                                                    Consent.Signature.getAllDomains(),
+                                                    Calendar.getAllDomains(),
+                                                    Task.getAllDomains(),
+                                                    Crf.getAllDomains(),
+                                                    StudyVisitItem.getAllDomains(),
+                                                    Document.getAllDomains(),
+                                                    ServiceRequest.getAllDomains(),
+                                                    LaborMapping.getAllDomains(),
+                                                    SampleLocation.getAllDomains(),
+                                                    Translation.getAllDomains(),
+                                                    FlexiFlagItem.getAllDomains(),
+                                                    Tumor.getAllDomains(),
+                                                    Histology.getAllDomains(),
+                                                    Catalogs.getAllDomains(),
+                                                    ContactAddress.getAllDomains(),
+                                                    RadiationTarget.getAllDomains(),
+                                                    PatientTransfer.getAllDomains(),
+                                                    FollowDisease.getAllDomains(),
+                                                    GtdsTherapy.getAllDomains(),
+                                                    GtdsTherapy.Surgery.getAllDomains(),
+                                                    GtdsTherapy.RadiationTherapy.getAllDomains(),
+                                                    GtdsTherapy.SystemTherapy.getAllDomains(),
+                                                    RadiationComponent.getAllDomains(),
+                                                    SurgeryComponent.getAllDomains(),
+                                                    PreexistingIllness.getAllDomains(),
+                                                    DeathCause.getAllDomains(),
+                                                    AdverseEffects.getAllDomains(),
+                                                    StudyMember.getAllDomains(),
+                                                    FhirDefaults.getAllDomains(),
+                                                    PatientInsurance.getAllDomains(),
+                                                    MedProcedure.getAllDomains(),
+                                                    Diagnosis.getAllDomains(),
+                                                    LaborMethod.getAllDomains(),
+                                                    MeasurementSeries.getAllDomains(),
+                                                    Currency.getAllDomains(),
+                                                    Counter.getAllDomains());
+
+      private static final Set<String> ALL_SET = unmodifiableSet(new HashSet<>(ALL));
+
+      private Domains() {/* hide constructor */}
     }
 
     public static final class MeasurementSeries {
@@ -124,11 +158,11 @@ public final class FhirUrls {
 
       public static final String DEFINITION = BASE_URL + "/definition";
 
-      public static List<String> getAllDomains() {
-        final ArrayList<String> domains = new ArrayList<>(MeasurementSeriesDefinition.getAllDomains());
-        domains.add(DEFINITION);
+      private static final List<String> ALL_DOMAINS = union(MeasurementSeriesDefinition.getAllDomains(), domains(DEFINITION));
 
-        return domains;
+      @Nonnull
+      public static List<String> getAllDomains() {
+        return ALL_DOMAINS;
       }
 
       private MeasurementSeries() {/* hide constructor */}
@@ -139,9 +173,11 @@ public final class FhirUrls {
 
         private MeasurementSeriesDefinition() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(LABOR_VALUE);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return singletonList(LABOR_VALUE);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -162,15 +198,13 @@ public final class FhirUrls {
 
       private Sample() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(DERIVAL_DATE, REPOSITION_DATE, SAMPLE_LOCATION, SAMPLE_LOCATION_PATH,
+                                                                    X_POSITION, Y_POSITION, ORGANIZATION_UNIT, CONCENTRATION, EPISODE, PROJECT),
+                                                            Project.getAllDomains());
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> all = new ArrayList<>();
-
-        all.addAll(asList(DERIVAL_DATE, REPOSITION_DATE, SAMPLE_LOCATION, SAMPLE_LOCATION_PATH,
-                          X_POSITION, Y_POSITION, ORGANIZATION_UNIT, CONCENTRATION, EPISODE, PROJECT));
-
-        all.addAll(Project.getAllDomains());
-        return all;
+        return ALL_DOMAINS;
       }
 
       public static final class Project {
@@ -186,17 +220,19 @@ public final class FhirUrls {
 
         private Project() {}
 
+        private static final List<String> ALL_DOMAINS = domains(NAME,
+                                                                ACCREDITATION_DATE,
+                                                                PROJECT_MANAGER,
+                                                                SYNOPSIS,
+                                                                START_DATE,
+                                                                END_DATE,
+                                                                STATE,
+                                                                CODE,
+                                                                IS_SPECIAL_SAMPLEHANDLING);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(NAME,
-                        ACCREDITATION_DATE,
-                        PROJECT_MANAGER,
-                        SYNOPSIS,
-                        START_DATE,
-                        END_DATE,
-                        STATE,
-                        CODE,
-                        IS_SPECIAL_SAMPLEHANDLING);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -208,9 +244,11 @@ public final class FhirUrls {
       private LaborMethod() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(PARENT);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(PARENT);
+        return ALL_DOMAINS;
       }
     }
 
@@ -221,9 +259,11 @@ public final class FhirUrls {
       private MedProcedure() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(PROCEDURE_STATUS_PLANNED);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(PROCEDURE_STATUS_PLANNED);
+        return ALL_DOMAINS;
       }
     }
 
@@ -237,9 +277,11 @@ public final class FhirUrls {
 
       private Diagnosis() {}
 
+      private static final List<String> ALL_DOMAINS = domains(ATTESTATION_DATE, DIAGNOSIS_CERTAINTY);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(ATTESTATION_DATE, DIAGNOSIS_CERTAINTY);
+        return ALL_DOMAINS;
       }
     }
 
@@ -268,13 +310,13 @@ public final class FhirUrls {
       private ContactAddress() {
       }
 
+      private static final List<String> ALL_DOMAINS = union(domains(
+        TITLE, INSTITUTE, DEPARTMENT, POSITION, CXX_CONTACT_ID, ADDRESS, CONTACT_DETAIL, CONTACT_PERSON_NAME,
+        WEBSITE, BUILDING, FLOOR, ROOM, ADDITIONAL_DATA, LINE_TYPE, CONTACT_ADDRESS_MULTILINGUALS, CONTACT_POINTS), ContactPoints.getAllDomains());
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        final List<String> all = new ArrayList<>(asList(
-          TITLE, INSTITUTE, DEPARTMENT, POSITION, CXX_CONTACT_ID, ADDRESS, CONTACT_DETAIL, CONTACT_PERSON_NAME,
-          WEBSITE, BUILDING, FLOOR, ROOM, ADDITIONAL_DATA, LINE_TYPE, CONTACT_ADDRESS_MULTILINGUALS, CONTACT_POINTS));
-        all.addAll(ContactPoints.getAllDomains());
-        return all;
+        return ALL_DOMAINS;
       }
 
       public static final class ContactPoints {
@@ -289,9 +331,11 @@ public final class FhirUrls {
         public static final String FAX = BASE_URL + "/fax";
         public static final String EMAIL = BASE_URL + "/email";
 
+        private static final List<String> ALL_DOMAINS = domains(PHONE1, PHONE2, MOBILE, FAX, EMAIL);
+
         @Nonnull
         public static Collection<String> getAllDomains() {
-          return asList(PHONE1, PHONE2, MOBILE, FAX, EMAIL);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -306,9 +350,11 @@ public final class FhirUrls {
       private PatientInsurance() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(POLICE_NUMBER, GROUP_NUMBER, INSURED, RANK);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(POLICE_NUMBER, GROUP_NUMBER, INSURED, RANK);
+        return ALL_DOMAINS;
       }
     }
 
@@ -320,9 +366,11 @@ public final class FhirUrls {
       private FlexiFlagItem() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(COMMENTS, FLAG_PRIVATE);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(COMMENTS, FLAG_PRIVATE);
+        return ALL_DOMAINS;
       }
     }
 
@@ -333,9 +381,11 @@ public final class FhirUrls {
       private RadiationTarget() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(RADIATION_COMPONENT);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return singletonList(RADIATION_COMPONENT);
+        return ALL_DOMAINS;
       }
     }
 
@@ -350,9 +400,11 @@ public final class FhirUrls {
       private AdverseEffects() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(RELATED, KIND, COMMENTS, GRADE, VERSION);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(RELATED, KIND, COMMENTS, GRADE, VERSION);
+        return ALL_DOMAINS;
       }
     }
 
@@ -360,8 +412,11 @@ public final class FhirUrls {
       private static final String BASE_URL = Extension.BASE_URL + "/histology";
       public static final String SOURCEDICT = BASE_URL + "/sourceDict";
 
+      private static final List<String> ALL_DOMAINS = domains(SOURCEDICT);
+
+      @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(SOURCEDICT);
+        return ALL_DOMAINS;
       }
 
       private Histology() {
@@ -384,19 +439,20 @@ public final class FhirUrls {
       private Tumor() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(SOURCEDICT,
+                                                              CAPTURECAUSEDICT,
+                                                              PATIENTENLIGHTENSTATUS_DICT,
+                                                              ENLIGHTEN_DATETIME,
+                                                              THERAPYCAUSE_DICT,
+                                                              POSTCARE_AGREEMENT,
+                                                              POSTCARE_AGREEMENT_DATETIME,
+                                                              POSTCARE_STARTDATETIME,
+                                                              POSTCARE_SCHEMA,
+                                                              VISITCAUSE_DICT);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(SOURCEDICT,
-                      CAPTURECAUSEDICT,
-                      PATIENTENLIGHTENSTATUS_DICT,
-                      ENLIGHTEN_DATETIME,
-                      THERAPYCAUSE_DICT,
-                      POSTCARE_AGREEMENT,
-                      POSTCARE_AGREEMENT_DATETIME,
-                      POSTCARE_STARTDATETIME,
-                      POSTCARE_SCHEMA,
-                      VISITCAUSE_DICT
-        );
+        return ALL_DOMAINS;
       }
     }
 
@@ -409,13 +465,15 @@ public final class FhirUrls {
       private FollowDisease() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(
+        VERSION,
+        GRADE,
+        FOLLOWDISEASEKINDDICT
+      );
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(
-          VERSION,
-          GRADE,
-          FOLLOWDISEASEKINDDICT
-        );
+        return ALL_DOMAINS;
       }
     }
 
@@ -423,11 +481,11 @@ public final class FhirUrls {
       private static final String BASE_URL = Extension.BASE_URL + "/gtdsTherapy";
       public static final String TUMOR = BASE_URL + "/tumor";
 
+      private static final List<String> ALL_DOMAINS = domains(TUMOR);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(
-          TUMOR
-        );
+        return ALL_DOMAINS;
       }
 
       private GtdsTherapy() {
@@ -479,50 +537,52 @@ public final class FhirUrls {
         private Surgery() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(
+          INTENTIONDICT,
+          CONCEPTID,
+          THERAPYSTEP,
+          DATEACCURACYDICT,
+          ACCOMPLISHEDBYTEXT,
+          CAPTUREFINISHSTATEDICT,
+          OPDESCRIPTION,
+          OPTEXT,
+          RCLASSIFICATIONDICT,
+          LYMPHNODESEXAMINATED,
+          LYMPHNODESINFESTED,
+          LYMPHNODE_1_EXAMINATED,
+          LYMPHNODE_1_INFESTED,
+          LYMPHNODE_2_EXAMINATED,
+          LYMPHNODE_2_INFESTED,
+          LYMPHNODE_3_EXAMINATED,
+          LYMPHNODE_3_INFESTED,
+          LYMPHNODE_4_EXAMINATED,
+          LYMPHNODE_4_INFESTED,
+          SENTINELSEXAMINATED,
+          SENTINELSINFESTED,
+          BUILDINGDATE,
+          COMPLICATIONSDICT,
+          TARGETPRIMARYTUMOURDICT,
+          TARGETLYMPHNODEDICT,
+          TARGETMETASTASISDICT,
+          RESECTIONDICT,
+          TARGETCOMPLICATIONDICT,
+          TARGETOTHERDICT,
+          RESIDUALLOCALISATIONDICT,
+          RCLASSIFICATIONSUFFIX,
+          RCLASSIFICATIONLOCALDICT,
+          URGENCYDICT,
+          SUCCESSDICT,
+          LARGESTDIAMETER,
+          DISTANCERESECTION,
+          OPERATEUR1TEXT,
+          OPERATEUR2TEXT,
+          ASASCORE,
+          SURGICALACCESS
+        );
+
         @Nonnull
         public static Collection<String> getAllDomains() {
-          return asList(
-            INTENTIONDICT,
-            CONCEPTID,
-            THERAPYSTEP,
-            DATEACCURACYDICT,
-            ACCOMPLISHEDBYTEXT,
-            CAPTUREFINISHSTATEDICT,
-            OPDESCRIPTION,
-            OPTEXT,
-            RCLASSIFICATIONDICT,
-            LYMPHNODESEXAMINATED,
-            LYMPHNODESINFESTED,
-            LYMPHNODE_1_EXAMINATED,
-            LYMPHNODE_1_INFESTED,
-            LYMPHNODE_2_EXAMINATED,
-            LYMPHNODE_2_INFESTED,
-            LYMPHNODE_3_EXAMINATED,
-            LYMPHNODE_3_INFESTED,
-            LYMPHNODE_4_EXAMINATED,
-            LYMPHNODE_4_INFESTED,
-            SENTINELSEXAMINATED,
-            SENTINELSINFESTED,
-            BUILDINGDATE,
-            COMPLICATIONSDICT,
-            TARGETPRIMARYTUMOURDICT,
-            TARGETLYMPHNODEDICT,
-            TARGETMETASTASISDICT,
-            RESECTIONDICT,
-            TARGETCOMPLICATIONDICT,
-            TARGETOTHERDICT,
-            RESIDUALLOCALISATIONDICT,
-            RCLASSIFICATIONSUFFIX,
-            RCLASSIFICATIONLOCALDICT,
-            URGENCYDICT,
-            SUCCESSDICT,
-            LARGESTDIAMETER,
-            DISTANCERESECTION,
-            OPERATEUR1TEXT,
-            OPERATEUR2TEXT,
-            ASASCORE,
-            SURGICALACCESS
-          );
+          return ALL_DOMAINS;
         }
       }
 
@@ -549,27 +609,29 @@ public final class FhirUrls {
         private RadiationTherapy() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(
+          INTENTIONDICT,
+          CONCEPTID,
+          THERAPYSTEP,
+          DATEACCURACYDICT,
+          ACCOMPLISHEDBYTEXT,
+          CAPTUREFINISHSTATEDICT,
+          COMMENTS,
+          FINALSTATEDICT,
+          ASSESSMENT,
+          ADVERSEEFFECTSDICT,
+          RADIATIONPATTERNID,
+          THERAPYKINDDICT,
+          RADIOCHEMODICT,
+          TARGETPRIMARYTUMOURDICT,
+          TARGETLYMPHNODEDICT,
+          TARGETMETASTASISDICT,
+          TARGETOTHERDICT
+        );
+
         @Nonnull
         public static Collection<String> getAllDomains() {
-          return asList(
-            INTENTIONDICT,
-            CONCEPTID,
-            THERAPYSTEP,
-            DATEACCURACYDICT,
-            ACCOMPLISHEDBYTEXT,
-            CAPTUREFINISHSTATEDICT,
-            COMMENTS,
-            FINALSTATEDICT,
-            ASSESSMENT,
-            ADVERSEEFFECTSDICT,
-            RADIATIONPATTERNID,
-            THERAPYKINDDICT,
-            RADIOCHEMODICT,
-            TARGETPRIMARYTUMOURDICT,
-            TARGETLYMPHNODEDICT,
-            TARGETMETASTASISDICT,
-            TARGETOTHERDICT
-          );
+          return ALL_DOMAINS;
         }
       }
 
@@ -597,28 +659,30 @@ public final class FhirUrls {
         private SystemTherapy() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(
+          INTENTIONDICT,
+          CONCEPTID,
+          THERAPYSTEP,
+          DATEACCURACYDICT,
+          ACCOMPLISHEDBYTEXT,
+          CAPTUREFINISHSTATEDICT,
+          ASSESSMENT,
+          PROTOCOLTYPEDICT,
+          PROTOCOLID,
+          FINALSTATEDICT,
+          PLANNEDDURATION,
+          THERAPYKINDDICT,
+          THERAPYTYPEDICT,
+          ADVERSEEFFECTSDICT,
+          RADIOCHEMODICT,
+          CYCLECOUNT,
+          COMMENTS,
+          DESCRIPTION
+        );
+
         @Nonnull
         public static Collection<String> getAllDomains() {
-          return asList(
-            INTENTIONDICT,
-            CONCEPTID,
-            THERAPYSTEP,
-            DATEACCURACYDICT,
-            ACCOMPLISHEDBYTEXT,
-            CAPTUREFINISHSTATEDICT,
-            ASSESSMENT,
-            PROTOCOLTYPEDICT,
-            PROTOCOLID,
-            FINALSTATEDICT,
-            PLANNEDDURATION,
-            THERAPYKINDDICT,
-            THERAPYTYPEDICT,
-            ADVERSEEFFECTSDICT,
-            RADIOCHEMODICT,
-            CYCLECOUNT,
-            COMMENTS,
-            DESCRIPTION
-          );
+          return ALL_DOMAINS;
         }
       }
     }
@@ -654,35 +718,37 @@ public final class FhirUrls {
       private RadiationComponent() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(
+        DATEACCURACYDICT,
+        COMMENTS,
+        ASSESSMENT,
+        IRRADIATIONDAYS,
+        FRACTIONS,
+        APPLICATIONKINDDICT,
+        APPLICATIONTECH,
+        APPLICATIONTECHTEXT,
+        SINGLEDOSE,
+        COMPLETEDOSE,
+        UNITDICT,
+        ICRUREFDICT,
+        VOLTAGE,
+        VOLTAGEDIMENSION,
+        VOLTAGETEXT,
+        REFERENCE,
+        REFERENCEDIMENSION,
+        REFERENCETEXT,
+        MODIFICATIONDATE,
+        MODIFICATIONREASON,
+        INTERRUPTDICT,
+        INTERRUPTREASONDICT,
+        INTERRUPTDURATION,
+        FINALSTATEDICT,
+        RADIATIONKINDDICT
+      );
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return asList(
-          DATEACCURACYDICT,
-          COMMENTS,
-          ASSESSMENT,
-          IRRADIATIONDAYS,
-          FRACTIONS,
-          APPLICATIONKINDDICT,
-          APPLICATIONTECH,
-          APPLICATIONTECHTEXT,
-          SINGLEDOSE,
-          COMPLETEDOSE,
-          UNITDICT,
-          ICRUREFDICT,
-          VOLTAGE,
-          VOLTAGEDIMENSION,
-          VOLTAGETEXT,
-          REFERENCE,
-          REFERENCEDIMENSION,
-          REFERENCETEXT,
-          MODIFICATIONDATE,
-          MODIFICATIONREASON,
-          INTERRUPTDICT,
-          INTERRUPTREASONDICT,
-          INTERRUPTDURATION,
-          FINALSTATEDICT,
-          RADIATIONKINDDICT
-        );
+        return ALL_DOMAINS;
       }
     }
 
@@ -693,11 +759,11 @@ public final class FhirUrls {
       private SurgeryComponent() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(COMPLICATIONS);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(
-          COMPLICATIONS
-        );
+        return ALL_DOMAINS;
       }
     }
 
@@ -708,9 +774,11 @@ public final class FhirUrls {
       private PreexistingIllness() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(VERSION);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(VERSION);
+        return ALL_DOMAINS;
       }
     }
 
@@ -721,9 +789,11 @@ public final class FhirUrls {
       private DeathCause() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(QUALIFICATOR);
+
       @Nonnull
       public static Collection<String> getAllDomains() {
-        return singletonList(QUALIFICATOR);
+        return ALL_DOMAINS;
       }
     }
 
@@ -733,14 +803,14 @@ public final class FhirUrls {
 
       private Patient() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(ETHNICITIES),
+                                                            Ethnicities.getAllDomains(),
+                                                            Name.getAllDomains(),
+                                                            PatientAddress.getAllDomains());
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.add(ETHNICITIES);
-        domains.addAll(Ethnicities.getAllDomains());
-        domains.addAll(Name.getAllDomains());
-        domains.addAll(PatientAddress.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class PatientAddress {
@@ -749,9 +819,11 @@ public final class FhirUrls {
         public static final String ADDRESS_INDEX = BASE_URL + "/addressIndex";
         public static final String ADDRESS_ID = BASE_URL + "/addressId";
 
+        private static final List<String> ALL_DOMAINS = domains(ADDRESS_INDEX, ADDRESS_ID);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(ADDRESS_INDEX, ADDRESS_ID);
+          return ALL_DOMAINS;
         }
       }
 
@@ -762,14 +834,18 @@ public final class FhirUrls {
         private Ethnicities() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(ETHNICITY, ETHNICITY_OVERRIDE);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(ETHNICITY, ETHNICITY_OVERRIDE);
+          return ALL_DOMAINS;
         }
 
+        private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(ALL_DOMAINS);
+
         @Nonnull
-        public static Map<String, String> getSubExtensions() {
-          return getExtensionMap(getAllDomains());
+        public static SubExtensionMap getSubExtensions() {
+          return SUB_EXTENSIONS;
         }
       }
 
@@ -781,9 +857,11 @@ public final class FhirUrls {
         private Name() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(AFFIX, TITLE);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(AFFIX, TITLE);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -800,11 +878,12 @@ public final class FhirUrls {
 
       private PatientTransfer() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(CURRENT_LOCATION, PRIOR_LOCATION, EPISODE, TRANSFER_DATE, ATTENDING_DOCTOR),
+                                                            Location.getAllDomains());
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.addAll(asList(CURRENT_LOCATION, PRIOR_LOCATION, EPISODE, TRANSFER_DATE, ATTENDING_DOCTOR));
-        domains.addAll(Location.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class Location {
@@ -818,8 +897,11 @@ public final class FhirUrls {
 
         private Location() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(HABITATION, MED_DEPARTMENT, ROOM, BED, FLOOR);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(HABITATION, MED_DEPARTMENT, ROOM, BED, FLOOR);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -839,9 +921,12 @@ public final class FhirUrls {
 
       private Medication() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(DOSE_VALUE, PRESCRIBER, TRANSCRIPTIONIST, TYPE, ORDINANCE_RELEASE_METHOD, IS_PRESCRIPTION, FON, PON, RESULTDATE,
+                                                              Identifier.FON, Identifier.MEDICATION_CODE);
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        return asList(DOSE_VALUE, PRESCRIBER, TRANSCRIPTIONIST, TYPE, ORDINANCE_RELEASE_METHOD, IS_PRESCRIPTION, FON, PON, RESULTDATE,
-                      Identifier.FON, Identifier.MEDICATION_CODE);
+        return ALL_DOMAINS;
       }
 
       public static final class Identifier {
@@ -856,8 +941,11 @@ public final class FhirUrls {
       public static final String IS_DEFAULT_CURRENCY = CURRENCY + "/isDefaultCurrency";
       public static final String SYMBOL = CURRENCY + "/symbol";
 
+      private static final List<String> ALL_DOMAINS = domains(NAME, CODE, IS_DEFAULT_CURRENCY, SYMBOL);
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        return asList(NAME, CODE, IS_DEFAULT_CURRENCY, SYMBOL);
+        return ALL_DOMAINS;
       }
     }
 
@@ -870,8 +958,11 @@ public final class FhirUrls {
       public static final String LENGTH = COUNTER + "/length";
       public static final String DESCRIPTION = COUNTER + "/description";
 
+      private static final List<String> ALL_DOMAINS = domains(NAME, USAGE, VALUE, PREFIX, SUFFIX, LENGTH, DESCRIPTION);
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        return asList(NAME, USAGE, VALUE, PREFIX, SUFFIX, LENGTH, DESCRIPTION);
+        return ALL_DOMAINS;
       }
     }
 
@@ -889,15 +980,16 @@ public final class FhirUrls {
 
       private Study() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(PHASES, VISITS, STATUS, STUDY_REGISTER_STATUS, STUDY_BUDGETS, STUDY_BUDGET, STUDY_CHAPTER),
+                                                            Visits.getAllDomains(),
+                                                            Phases.getAllDomains(),
+                                                            Schedule.getAllDomains(),
+                                                            StudyChapter.getAllDomains(),
+                                                            StudyBudget.getAllDomains());
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.addAll(asList(PHASES, VISITS, STATUS, STUDY_REGISTER_STATUS, STUDY_BUDGETS, STUDY_BUDGET, STUDY_CHAPTER));
-        domains.addAll(Visits.getAllDomains());
-        domains.addAll(Phases.getAllDomains());
-        domains.addAll(Schedule.getAllDomains());
-        domains.addAll(StudyChapter.getAllDomains());
-        domains.addAll(StudyBudget.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class StudyBudget {
@@ -908,8 +1000,11 @@ public final class FhirUrls {
 
         private StudyBudget() {}
 
+        private static final List<String> ALL_DOMAINS = domains(BUDGET_NAME, STUDY_CHAPTER, BUDGET_VALUE, INVOICE_NUMBER_PREFIX);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(BUDGET_NAME, STUDY_CHAPTER, BUDGET_VALUE, INVOICE_NUMBER_PREFIX);
+          return ALL_DOMAINS;
         }
       }
 
@@ -921,8 +1016,11 @@ public final class FhirUrls {
         private StudyChapter() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(NAME, CODE);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(NAME, CODE);
+          return ALL_DOMAINS;
         }
       }
 
@@ -932,8 +1030,11 @@ public final class FhirUrls {
         private Visits() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(VISIT, Visit.VISIT_NAME, Visit.VISIT_COPYVISITS);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(VISIT, Visit.VISIT_NAME, Visit.VISIT_COPYVISITS);
+          return ALL_DOMAINS;
         }
 
         public static final class Visit {
@@ -951,8 +1052,11 @@ public final class FhirUrls {
         private Phases() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(PHASE, Phase.PHASE_NAME, Phase.PHASE_DESCRIPTION);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(PHASE, Phase.PHASE_NAME, Phase.PHASE_DESCRIPTION);
+          return ALL_DOMAINS;
         }
       }
 
@@ -970,12 +1074,18 @@ public final class FhirUrls {
         public static final String MAX = SCHEDULE_BASE_URL + "/max";
         public static final String UNDEFINED = SCHEDULE_BASE_URL + "/undefined";
 
+        private static final List<String> ALL_DOMAINS = domains(SCHEDULE_BASE_URL, MIN, MAX, UNDEFINED);
+
+        @Nonnull
         public static List<String> getAllDomains() {
-          return asList(SCHEDULE_BASE_URL, MIN, MAX, UNDEFINED);
+          return ALL_DOMAINS;
         }
 
-        public static Map<String, String> getSubExtensions() {
-          return getExtensionMap(getAllDomains());
+        private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(ALL_DOMAINS);
+
+        @Nonnull
+        public static SubExtensionMap getSubExtensions() {
+          return SUB_EXTENSIONS;
         }
 
         private Schedule() {
@@ -998,8 +1108,11 @@ public final class FhirUrls {
 
       private Survey() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(CYCLES, CYCLE, CYCLE_NAME, CYCLE_DESCRIPTION, FORMS, FORM, FORM_NAME, DUE_DATE);
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        return asList(CYCLES, CYCLE, CYCLE_NAME, CYCLE_DESCRIPTION, FORMS, FORM, FORM_NAME, DUE_DATE);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1009,8 +1122,11 @@ public final class FhirUrls {
 
       private StudyVisitItem() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(APPROVAL_STATE);
+
+      @Nonnull
       public static List<String> getAllDomains() {
-        return singletonList(APPROVAL_STATE);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1037,31 +1153,36 @@ public final class FhirUrls {
 
       private Sprec() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(USE_SPREC,
+                                                              SPREC_CODE,
+                                                              SPREC_TISSUE_COLLECTION_TYPE,
+                                                              WARM_ISCH_TIME,
+                                                              WARM_ISCH_TIME_DATE,
+                                                              COLD_ISCH_TIME,
+                                                              COLD_ISCH_TIME_DATE,
+                                                              STOCK_TYPE,
+                                                              SPREC_FIXATION_TIME,
+                                                              SPREC_FIXATION_TIME_DATE,
+                                                              SPREC_PRIMARY_SAMPLE_CONTAINER,
+                                                              SPREC_PRE_CENTRIFUGATION_DELAY,
+                                                              SPREC_PRE_CENTRIFUGATION_DELAY_DATE,
+                                                              SPREC_POST_CENTRIFUGATION_DELAY,
+                                                              SPREC_POST_CENTRIFUGATION_DELAY_DATE,
+                                                              STOCK_PROCESSING,
+                                                              STOCK_PROCESSING_DATE,
+                                                              SECOND_PROCESSING,
+                                                              SECOND_PROCESSING_DATE);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(USE_SPREC,
-                      SPREC_CODE,
-                      SPREC_TISSUE_COLLECTION_TYPE,
-                      WARM_ISCH_TIME,
-                      WARM_ISCH_TIME_DATE,
-                      COLD_ISCH_TIME,
-                      COLD_ISCH_TIME_DATE,
-                      STOCK_TYPE,
-                      SPREC_FIXATION_TIME,
-                      SPREC_FIXATION_TIME_DATE,
-                      SPREC_PRIMARY_SAMPLE_CONTAINER,
-                      SPREC_PRE_CENTRIFUGATION_DELAY,
-                      SPREC_PRE_CENTRIFUGATION_DELAY_DATE,
-                      SPREC_POST_CENTRIFUGATION_DELAY,
-                      SPREC_POST_CENTRIFUGATION_DELAY_DATE,
-                      STOCK_PROCESSING,
-                      STOCK_PROCESSING_DATE,
-                      SECOND_PROCESSING,
-                      SECOND_PROCESSING_DATE);
-      }
-
-      public static Map<String, String> getSubExtensions() {
-        return getExtensionMap(getAllDomains());
+        return ALL_DOMAINS;
+      }
+
+      private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(ALL_DOMAINS);
+
+      @Nonnull
+      public static SubExtensionMap getSubExtensions() {
+        return SUB_EXTENSIONS;
       }
     }
 
@@ -1071,12 +1192,11 @@ public final class FhirUrls {
 
       private CrfTemplate() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(MULTIPLE_USE_URL), Section.getAllDomains());
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.add(MULTIPLE_USE_URL);
-        domains.addAll(Section.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class Section {
@@ -1090,12 +1210,12 @@ public final class FhirUrls {
 
         private Section() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = union(domains(INDEX, TYPE, ALIGNMENT, ROW, LOWER_COLUMN, UPPER_COLUMN),
+                                                              Field.getAllDomains());
+
         @Nonnull
         public static List<String> getAllDomains() {
-          final List<String> domains = new ArrayList<>();
-          domains.addAll(asList(INDEX, TYPE, ALIGNMENT, ROW, LOWER_COLUMN, UPPER_COLUMN));
-          domains.addAll(Field.getAllDomains());
-          return domains;
+          return ALL_DOMAINS;
         }
 
         public static final class Field {
@@ -1113,9 +1233,11 @@ public final class FhirUrls {
 
           private Field() {/* hide constructor */}
 
+          private static final List<String> ALL_DOMAINS = domains(CRFFIELDTYPE, TOOLTIP, ROW, LOWER_COLUMN, UPPER_COLUMN, DIRECTION, LENGTH, GRADUATIONS, MIN_VALUE_DESC, MAX_VALUE_DESC);
+
           @Nonnull
           public static List<String> getAllDomains() {
-            return asList(CRFFIELDTYPE, TOOLTIP, ROW, LOWER_COLUMN, UPPER_COLUMN, DIRECTION, LENGTH, GRADUATIONS, MIN_VALUE_DESC, MAX_VALUE_DESC);
+            return ALL_DOMAINS;
           }
         }
       }
@@ -1127,11 +1249,11 @@ public final class FhirUrls {
 
       private Crf() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(CREATION_DATE), CrfItem.getAllDomains());
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>(singletonList(CREATION_DATE));
-        domains.addAll(CrfItem.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class CrfItem {
@@ -1140,9 +1262,11 @@ public final class FhirUrls {
 
         private CrfItem() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(VALUE_INDEX);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return singletonList(VALUE_INDEX);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -1167,13 +1291,14 @@ public final class FhirUrls {
 
       private LaborValue() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(
+        domains(LABORVALUETYPE, MIN, MAX, DATE_PRECISION, OBSERVATION_METHOD, OBSERVATION_METHODS, IS_DEVIANT_VALUE, CHOICE_TYPE, UPPER_VALUE,
+                LOWER_VALUE, UPPER_PRECISION, LOWER_PRECISION, UNIT, FILE_VALUE, VALUE_INDEX),
+        Slider.getAllDomains());
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>(
-          asList(LABORVALUETYPE, MIN, MAX, DATE_PRECISION, OBSERVATION_METHOD, OBSERVATION_METHODS, IS_DEVIANT_VALUE, CHOICE_TYPE, UPPER_VALUE,
-                 LOWER_VALUE, UPPER_PRECISION, LOWER_PRECISION, UNIT, FILE_VALUE, VALUE_INDEX));
-        domains.addAll(Slider.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class Slider {
@@ -1182,9 +1307,11 @@ public final class FhirUrls {
 
         private Slider() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(ALIGNMENT);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return singletonList(ALIGNMENT);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -1195,9 +1322,11 @@ public final class FhirUrls {
 
       private Hotline() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(IS_APP);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return singletonList(IS_APP);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1214,9 +1343,11 @@ public final class FhirUrls {
 
       private Consent() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(USER_INFO_FILE, NOTES, FILE, REVOCATION, SIGN_STATUS, SIGNATURE);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(USER_INFO_FILE, NOTES, FILE, REVOCATION, SIGN_STATUS, SIGNATURE);
+        return ALL_DOMAINS;
       }
 
       public static final class Revocation {
@@ -1227,9 +1358,11 @@ public final class FhirUrls {
 
         private Revocation() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(REVOCATION_PARTLY, REVOCATION_FILE, REVOCATION_DATE, REVOCATION_NOTES);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(REVOCATION_PARTLY, REVOCATION_FILE, REVOCATION_DATE, REVOCATION_NOTES);
+          return ALL_DOMAINS;
         }
       }
 
@@ -1240,9 +1373,11 @@ public final class FhirUrls {
 
         private Signature() {/* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(SIGNED_DOCUMENT, SIGNED_DOCUMENT_RECEIVED_ON);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(SIGNED_DOCUMENT, SIGNED_DOCUMENT_RECEIVED_ON);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -1258,9 +1393,11 @@ public final class FhirUrls {
 
       private Document() {/* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(DESCRIPTION, KEYWORDS, PRODUCER_ORDER_NUMBER, STATUS, PATIENT_VISIBILITY);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(DESCRIPTION, KEYWORDS, PRODUCER_ORDER_NUMBER, STATUS, PATIENT_VISIBILITY);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1283,14 +1420,14 @@ public final class FhirUrls {
       private Calendar() { /* hide constructor */}
 
       @Nonnull
+      private static final List<String> ALL_DOMAINS = union(domains(ATTACHMENT, ALL_DAY,
+                                                                    DEPARTMENT, DRG, STAY_TYPE, LOCATION, RESOURCE, VISIBLE,
+                                                                    STUDY_CENTER, STUDY_VISIT_TEMPLATE, INVITATION_STATUS, VC_LINK_AUTHOR, VC_LINK_PARTICIPANT),
+                                                            Attachment.getAllDomains(),
+                                                            Recurrence.getAllDomains());
+
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.addAll(asList(ATTACHMENT, ALL_DAY,
-                              DEPARTMENT, DRG, STAY_TYPE, LOCATION, RESOURCE, VISIBLE,
-                              STUDY_CENTER, STUDY_VISIT_TEMPLATE, INVITATION_STATUS, VC_LINK_AUTHOR, VC_LINK_PARTICIPANT));
-        domains.addAll(Attachment.getAllDomains());
-        domains.addAll(Recurrence.getAllDomains());
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class Attachment {
@@ -1302,10 +1439,12 @@ public final class FhirUrls {
 
         private Attachment() { /* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(ATTACHMENT_PATIENT, ATTACHMENT_CRF, ATTACHMENT_SAMPLE,
+                                                                ATTACHMENT_STUDY, ATTACHMENT_STUDYMEMBER);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(ATTACHMENT_PATIENT, ATTACHMENT_CRF, ATTACHMENT_SAMPLE,
-                        ATTACHMENT_STUDY, ATTACHMENT_STUDYMEMBER);
+          return ALL_DOMAINS;
         }
       }
 
@@ -1317,9 +1456,11 @@ public final class FhirUrls {
 
         private Recurrence() { /* hide constructor */}
 
+        private static final List<String> ALL_DOMAINS = domains(BASE, RECURRENCE_EXPRESSION, RECURRENCE_ENDDATE, RECURRENCE_COUNT);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(BASE, RECURRENCE_EXPRESSION, RECURRENCE_ENDDATE, RECURRENCE_COUNT);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -1333,9 +1474,11 @@ public final class FhirUrls {
 
       private Task() { /* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(DESCRIPTION, CAL_EVENT, NOTIFY_ON_RESOLVE, ASSIGNEE_GROUP);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(DESCRIPTION, CAL_EVENT, NOTIFY_ON_RESOLVE, ASSIGNEE_GROUP);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1347,9 +1490,11 @@ public final class FhirUrls {
 
       private ServiceRequest() { /* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(LABOR_MAPPINGS, LaborMappings.LABOR_MAPPING, STATUS, Status.CURRENT_STATUS, Status.LAST_STATUS_TRANSITION, REQUESTER);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(LABOR_MAPPINGS, LaborMappings.LABOR_MAPPING, STATUS, Status.CURRENT_STATUS, Status.LAST_STATUS_TRANSITION, REQUESTER);
+        return ALL_DOMAINS;
       }
 
       public static final class LaborMappings {
@@ -1358,9 +1503,11 @@ public final class FhirUrls {
         private LaborMappings() {
         }
 
+        private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(singletonList(LABOR_MAPPING));
+
         @Nonnull
-        public static Map<String, String> getSubExtensions() {
-          return getExtensionMap(singletonList(LABOR_MAPPING));
+        public static SubExtensionMap getSubExtensions() {
+          return SUB_EXTENSIONS;
         }
       }
 
@@ -1371,9 +1518,11 @@ public final class FhirUrls {
         private Status() {
         }
 
+        private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(asList(CURRENT_STATUS, LAST_STATUS_TRANSITION));
+
         @Nonnull
-        public static Map<String, String> getSubExtensions() {
-          return getExtensionMap(asList(CURRENT_STATUS, LAST_STATUS_TRANSITION));
+        public static SubExtensionMap getSubExtensions() {
+          return SUB_EXTENSIONS;
         }
       }
     }
@@ -1388,9 +1537,11 @@ public final class FhirUrls {
 
       private LaborMapping() { /* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = domains(LABOR_MAPPING_TYPE, RELATED_REFERENCE, PATIENT, ENCOUNTER, CREATE_PROFILE, INCREMENT_LABORMETHOD_VERSION);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(LABOR_MAPPING_TYPE, RELATED_REFERENCE, PATIENT, ENCOUNTER, CREATE_PROFILE, INCREMENT_LABORMETHOD_VERSION);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1406,20 +1557,15 @@ public final class FhirUrls {
 
       private SampleLocation() { /* hide constructor */}
 
+      private static final List<String> ALL_DOMAINS = union(domains(PATH, SCHEMA, FILL_COUNT),
+                                                            Schema.getAllDomains(),
+                                                            domains(TEMPERATURE),
+                                                            Temperature.getAllDomains(),
+                                                            domains(RELOCATIONDATE, ASSIGNEDORGANISATIONUITS, ASSIGNEDORGANISATIONUIT, CONTACT_ADDRESS));
+
       @Nonnull
       public static List<String> getAllDomains() {
-        final List<String> domains = new ArrayList<>();
-        domains.add(PATH);
-        domains.add(SCHEMA);
-        domains.add(FILL_COUNT);
-        domains.addAll(Schema.getAllDomains());
-        domains.add(TEMPERATURE);
-        domains.addAll(Temperature.getAllDomains());
-        domains.add(RELOCATIONDATE);
-        domains.add(ASSIGNEDORGANISATIONUITS);
-        domains.add(ASSIGNEDORGANISATIONUIT);
-        domains.add(CONTACT_ADDRESS);
-        return domains;
+        return ALL_DOMAINS;
       }
 
       public static final class Schema {
@@ -1432,14 +1578,18 @@ public final class FhirUrls {
         private Schema() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(MAX_SIZE, HEIGHT, WIDTH, UNLIMITED, STORABLE);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(MAX_SIZE, HEIGHT, WIDTH, UNLIMITED, STORABLE);
+          return ALL_DOMAINS;
         }
 
+        private static final SubExtensionMap SUB_EXTENSIONS = subExtensions(ALL_DOMAINS);
+
         @Nonnull
-        public static Map<String, String> getSubExtensions() {
-          return getExtensionMap(getAllDomains());
+        public static SubExtensionMap getSubExtensions() {
+          return SUB_EXTENSIONS;
         }
       }
 
@@ -1450,9 +1600,11 @@ public final class FhirUrls {
         private Temperature() {
         }
 
+        private static final List<String> ALL_DOMAINS = domains(VALUE, INHERIT_TEMPERATURE);
+
         @Nonnull
         public static List<String> getAllDomains() {
-          return asList(VALUE, INHERIT_TEMPERATURE);
+          return ALL_DOMAINS;
         }
       }
     }
@@ -1468,9 +1620,11 @@ public final class FhirUrls {
       private Translation() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(BASE_URL, LANG, CONTENT);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(BASE_URL, LANG, CONTENT);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1482,9 +1636,11 @@ public final class FhirUrls {
       private Catalogs() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(CATALOG_USAGE, MASTER_DATA_CATALOG_TYPE);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return asList(CATALOG_USAGE, MASTER_DATA_CATALOG_TYPE);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1495,9 +1651,11 @@ public final class FhirUrls {
       private StudyMember() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(STUDY_CENTER);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return singletonList(STUDY_CENTER);
+        return ALL_DOMAINS;
       }
     }
 
@@ -1511,9 +1669,11 @@ public final class FhirUrls {
       private FhirDefaults() {
       }
 
+      private static final List<String> ALL_DOMAINS = domains(DATA_ABSENT_REASON);
+
       @Nonnull
       public static List<String> getAllDomains() {
-        return singletonList(DATA_ABSENT_REASON);
+        return ALL_DOMAINS;
       }
     }
   }
@@ -3442,5 +3602,22 @@ public final class FhirUrls {
     }
   }
 
+  /**
+   * Finds the domain class and constant name of a known URL constant of this registry, e.g. for an extension URL or a coding system of
+   * an imported resource. The lookup is thread-safe and does not allocate on hits.
+   * @param url the URL to classify. It is not converted to a String, so a region of a larger buffer can be passed as well.
+   * @return the classification of the URL or null, if the URL is not a constant of this registry
+   */
+  @Nullable
+  public static FhirUrlClassification classify(@Nullable final CharSequence url) {
+    return UrlIndex.INDEX.get(url);
+  }
+
+  private static final class UrlIndex {
+    private static final FhirUrlIndex INDEX = FhirUrlIndex.build(FhirUrls.class);
+
+    private UrlIndex() {/* hide constructor */}
+  }
+
   private FhirUrls() {/* hide constructor */}
 }
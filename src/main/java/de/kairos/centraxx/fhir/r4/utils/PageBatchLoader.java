@@ -0,0 +1,253 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import de.kairos.fhir.dsl.r4.context.Context;
+
+/**
+ * JVM wide loader of values from an external database per record, which loads the values of all records of a page with one batch
+ * query, e.g. {@code select ... where PATIENTCONTAINER in (?, ?, ...)}, instead of one query per record. The script registers the key
+ * of a record and the batch query, and requests the value of its record.
+ * <pre>
+ * {@code
+ *   final PageBatchLoader<String, String> genders = PageBatchLoader.of("genders", { it.source[...] as String }) {
+ *     queryGendersFromDb(it)
+ *   }
+ *   final String gender = genders.load(oid)
+ *}
+ * </pre>
+ * The first request of a loader in a page collects the keys of all records of the page and calls the batch query once for them in
+ * chunks of at most {@value #MAX_BATCH_SIZE} keys, which keeps the query below the parameter limit of the database (2100 for MSSQL).
+ * Records, which are transformed concurrently, wait for the running batch. The values are dropped with the page.
+ * <p>
+ * The batching only happens, if the caller of the script opens the pages with {@link #openPage(Collection)}. The export script tests
+ * and the benchmarks of this project open them, e.g. with the page size of the ProjectConfig.json. The HDRP export does not, so a
+ * script in HDRP would still run one query per record: a key outside of an open page is loaded with a batch of one key. Therefore no
+ * script of this project uses the loader, the batching is shown by the PageBatchLoaderTest and measured by the benchmarks.
+ */
+public final class PageBatchLoader<K, V> {
+
+  static final int MAX_BATCH_SIZE = 1000;
+
+  private static final ConcurrentMap<String, PageBatchLoader<?, ?>> BY_NAME = new ConcurrentHashMap<>();
+  private static final List<Page> OPEN_PAGES = new CopyOnWriteArrayList<>();
+
+  private final String name;
+  private final Function<Context, K> keyOfRecord;
+  private final Function<Set<K>, Map<K, V>> batch;
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder batchedKeys = new LongAdder();
+
+  private PageBatchLoader(@Nonnull final String name,
+                          @Nonnull final Function<Context, K> keyOfRecord,
+                          @Nonnull final Function<Set<K>, Map<K, V>> batch) {
+    this.name = name;
+    this.keyOfRecord = keyOfRecord;
+    this.batch = batch;
+  }
+
+  /**
+   * @param name the name of the loader, which is shared by all scripts in this JVM
+   * @param keyOfRecord the key of a record of the page, or null, if the record has no value
+   * @param batch the query of the values of the given keys. Missing keys have no value. The first request of a name determines the
+   * functions for the lifetime of the JVM.
+   * @return the loader of the name
+   */
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  public static <K, V> PageBatchLoader<K, V> of(@Nonnull final String name,
+                                                @Nonnull final Function<Context, K> keyOfRecord,
+                                                @Nonnull final Function<Set<K>, Map<K, V>> batch) {
+    return (PageBatchLoader<K, V>) BY_NAME.computeIfAbsent(name, n -> new PageBatchLoader<>(n, keyOfRecord, batch));
+  }
+
+  /**
+   * Opens a page of records, which are transformed next. The page must be closed after the transformation of its records.
+   * <pre>
+   * {@code
+   *   try (final PageBatchLoader.Page page = PageBatchLoader.openPage(contexts)) {
+   *     contexts.each { runner.run(it) }
+   *   }
+   *}
+   * </pre>
+   * @param records the contexts, which are passed to the script
+   * @return the open page
+   */
+  @Nonnull
+  public static Page openPage(@Nonnull final Collection<Context> records) {
+    final Page page = new Page(records);
+    OPEN_PAGES.add(page);
+    return page;
+  }
+
+  /**
+   * Returns the value of the key from the batch of the open page, which contains the key, or loads it with a batch of one key.
+   * @return the value or null, if the batch query returned no value for the key
+   * @throws RuntimeException the exception of the batch query, also to the records of the page, which waited for it
+   */
+  @Nullable
+  public V load(@Nonnull final K key) {
+    loads.increment();
+    for (final Page page : OPEN_PAGES) {
+      final Set<K> keys = page.keys(this);
+      if (keys.contains(key)) {
+        return page.values(this, keys).get(key);
+      }
+    }
+    return loadAll(Collections.singleton(key)).get(key);
+  }
+
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of values requested by the records
+   */
+  public long getLoads() {
+    return loads.sum();
+  }
+
+  /**
+   * @return the number of calls of the batch query
+   */
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  /**
+   * @return the number of keys passed to the batch query
+   */
+  public long getBatchedKeys() {
+    return batchedKeys.sum();
+  }
+
+  @Override
+  public String toString() {
+    return name + ": loads " + getLoads() + ", batches " + getBatches() + ", batched keys " + getBatchedKeys();
+  }
+
+  @Nonnull
+  private Map<K, V> loadAll(@Nonnull final Set<K> keys) {
+    final Map<K, V> values = new HashMap<>();
+    final List<K> pending = new ArrayList<>(keys);
+    for (int from = 0; from < pending.size(); from += MAX_BATCH_SIZE) {
+      final Set<K> chunk = new LinkedHashSet<>(pending.subList(from, Math.min(from + MAX_BATCH_SIZE, pending.size())));
+      batches.increment();
+      batchedKeys.add(chunk.size());
+      final Map<K, V> loaded = batch.apply(Collections.unmodifiableSet(chunk));
+      if (loaded != null) {
+        values.putAll(loaded);
+      }
+    }
+    return values;
+  }
+
+  @Nullable
+  private K keyOf(@Nonnull final Context record) {
+    return keyOfRecord.apply(record);
+  }
+
+  /**
+   * The records of a page and the values of the loaders, which were requested by one of the records.
+   */
+  public static final class Page implements AutoCloseable {
+
+    private final List<Context> records;
+    private final ConcurrentMap<PageBatchLoader<?, ?>, Set<?>> keysByLoader = new ConcurrentHashMap<>();
+    private final ConcurrentMap<PageBatchLoader<?, ?>, CompletableFuture<Map<?, ?>>> valuesByLoader = new ConcurrentHashMap<>();
+
+    private Page(@Nonnull final Collection<Context> records) {
+      this.records = List.copyOf(records);
+    }
+
+    public int size() {
+      return records.size();
+    }
+
+    @Override
+    public void close() {
+      OPEN_PAGES.remove(this);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private <K> Set<K> keys(@Nonnull final PageBatchLoader<K, ?> loader) {
+      return (Set<K>) keysByLoader.computeIfAbsent(loader, l -> {
+        final Set<K> keys = new LinkedHashSet<>();
+        for (final Context record : records) {
+          final K key = loader.keyOf(record);
+          if (key != null) {
+            keys.add(key);
+          }
+        }
+        return keys;
+      });
+    }
+
+    /**
+     * @return the values of the keys, loaded by the first record, which requests them, while the other records wait for it.
+     * A failed batch is not kept, so the next record tries again.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private <K, V> Map<K, V> values(@Nonnull final PageBatchLoader<K, V> loader, @Nonnull final Set<K> keys) {
+      final CompletableFuture<Map<?, ?>> created = new CompletableFuture<>();
+      final CompletableFuture<Map<?, ?>> running = valuesByLoader.putIfAbsent(loader, created);
+      if (running != null) {
+        return (Map<K, V>) await(running);
+      }
+
+      try {
+        final Map<K, V> values = loader.loadAll(keys);
+        created.complete(values);
+        return values;
+      }
+      catch (final RuntimeException | Error e) {
+        valuesByLoader.remove(loader, created);
+        created.completeExceptionally(e);
+        throw e;
+      }
+    }
+
+    @Nonnull
+    private static Map<?, ?> await(@Nonnull final CompletableFuture<Map<?, ?>> future) {
+      try {
+        return future.get();
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the running batch", e);
+      }
+      catch (final ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new CompletionException(e.getCause());
+      }
+    }
+  }
+}
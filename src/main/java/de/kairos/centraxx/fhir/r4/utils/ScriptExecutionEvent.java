@@ -0,0 +1,147 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of one script execution for one entity. The event records the template name of the
+ * ExportResourceMappingConfig.json (transformByTemplate), the OID of the exported entity, the outcome, the emitted resource type
+ * and the duration. A recording of a long export shows, which templates and which entities take the time, e.g. with
+ * {@code jcmd <pid> JFR.start name=export settings=profile} and the event browser of JDK Mission Control.
+ * <br><br>
+ * The test harness records the events around each run of a script. In a script, the event is started before the builder and ended
+ * on every exit of the builder:
+ * <pre>
+ * {@code
+ *   final ScriptExecutionEvent event = ScriptExecutionEvent.start("observation", context.source[laborFindingLaborValue().id()])
+ *   observation {
+ *     if (!isExportable(context)) {
+ *       event.filtered()
+ *       return
+ *     }
+ *     ...
+ *     event.emitted("Observation")
+ *   }
+ *}
+ * </pre>
+ * If the event is disabled in the recording settings or no recording runs, starting and ending an event costs almost nothing.
+ */
+@Name("de.kairos.centraxx.fhir.ScriptExecution")
+@Label("Script Execution")
+@Category({"kairos FHIR", "Export"})
+@Description("Execution of an export script for one entity")
+@StackTrace(false)
+public final class ScriptExecutionEvent extends Event {
+
+  public static final String EMITTED = "EMITTED";
+  public static final String FILTERED = "FILTERED";
+  public static final String FAILED = "FAILED";
+
+  @Label("Template")
+  @Description("Name of the transformation template in the ExportResourceMappingConfig.json")
+  String template;
+
+  @Label("Entity OID")
+  String entityOid;
+
+  @Label("Outcome")
+  @Description("EMITTED, FILTERED or FAILED")
+  String outcome;
+
+  @Label("Resource Type")
+  String resourceType;
+
+  @Label("Failure")
+  @Description("Class of the exception of a failed execution")
+  String failure;
+
+  /**
+   * Starts the timing of a script execution.
+   * @param template the name of the transformation template, e.g. 'observation'
+   * @param entityOid the OID of the exported entity, e.g. {@code context.source[sample().id()]}
+   * @return the started event, which must be ended by {@link #emitted}, {@link #filtered} or {@link #failed}
+   */
+  @Nonnull
+  public static ScriptExecutionEvent start(@Nonnull final String template, @Nullable final Object entityOid) {
+    final ScriptExecutionEvent event = new ScriptExecutionEvent();
+    if (event.isEnabled()) {
+      event.template = template;
+      event.entityOid = entityOid == null ? null : String.valueOf(entityOid);
+      event.begin();
+    }
+    return event;
+  }
+
+  /**
+   * Runs the script execution and records its outcome by the returned resource, see {@link #isEmitted(Resource)}.
+   * @return the result of the execution
+   */
+  @Nullable
+  public static <R extends Resource> R record(@Nonnull final String template,
+                                              @Nullable final Object entityOid,
+                                              @Nonnull final Supplier<R> execution) {
+    final ScriptExecutionEvent event = start(template, entityOid);
+    final R resource;
+    try {
+      resource = execution.get();
+    }
+    catch (final RuntimeException | Error e) {
+      event.failed(e);
+      throw e;
+    }
+
+    if (isEmitted(resource)) {
+      event.emitted(resource.fhirType());
+    }
+    else {
+      event.filtered();
+    }
+    return resource;
+  }
+
+  /**
+   * @return true, if the script emitted the resource. A resource without id, e.g. of a script, which returned before setting the id,
+   * and a bundle without entries are not emitted.
+   */
+  public static boolean isEmitted(@Nullable final Resource resource) {
+    return resource != null && (resource instanceof Bundle ? ((Bundle) resource).hasEntry() : resource.hasId());
+  }
+
+  public void emitted(@Nonnull final String resourceType) {
+    complete(EMITTED, resourceType, null);
+  }
+
+  public void filtered() {
+    complete(FILTERED, null, null);
+  }
+
+  public void failed(@Nonnull final Throwable cause) {
+    complete(FAILED, null, cause.getClass().getName());
+  }
+
+  private void complete(@Nonnull final String outcome, @Nullable final String resourceType, @Nullable final String failure) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    end();
+    if (shouldCommit()) {
+      this.outcome = outcome;
+      this.resourceType = resourceType;
+      this.failure = failure;
+      commit();
+    }
+  }
+}
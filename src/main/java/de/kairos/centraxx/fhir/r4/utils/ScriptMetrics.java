@@ -0,0 +1,335 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Lock-free metrics of an export script: the funnel of records in, emitted, filtered and failed, the reasons of the filters, and
+ * custom counters and timers. All values are {@link LongAdder}s, so scripts running on many threads do not contend.
+ * <br><br>
+ * The runner of the script, e.g. the test harness, records the outcome of each run by {@link #record(Resource)} or
+ * {@link #recordFailure(Throwable)}. The script names the reason of an early return, so the funnel shows which filter drops how many
+ * records:
+ * <pre>
+ * {@code
+ *   final ScriptMetrics metrics = ScriptMetrics.of("patientfinder/hull/observation")
+ *   observation {
+ *     if (context.source[laborMapping().laborFinding().laborMethod().category()] as LaborMethodCategory != LaborMethodCategory.VITALSIGN) {
+ *       metrics.filteredBy("no vital sign")
+ *       return
+ *     }
+ *     ...
+ *   }
+ *}
+ * </pre>
+ * The name of a script is its path below 'customexport' without extension, as it is used by the test harness.
+ * This class is not on the class path of HDRP, so the scripts of this project do not call it. It is meant for local runs of a script
+ * in the tests or benchmarks of this project.
+ * The metrics of all scripts can be exported in the Prometheus text format by {@link #toPrometheus()} or as JSON by {@link #toJson()}.
+ */
+public final class ScriptMetrics {
+
+  private static final ConcurrentMap<String, ScriptMetrics> BY_SCRIPT = new ConcurrentHashMap<>();
+
+  private final String script;
+  private final Counter in = new Counter();
+  private final Counter emitted = new Counter();
+  private final Counter filtered = new Counter();
+  private final Counter failed = new Counter();
+  private final ConcurrentMap<String, Counter> filterReasons = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+  private ScriptMetrics(@Nonnull final String script) {
+    this.script = script;
+  }
+
+  /**
+   * @param script the name of the script, e.g. 'patientfinder/hull/observation'
+   * @return the metrics of the script, which are shared by all callers in this JVM
+   */
+  @Nonnull
+  public static ScriptMetrics of(@Nonnull final String script) {
+    return BY_SCRIPT.computeIfAbsent(script, ScriptMetrics::new);
+  }
+
+  /**
+   * @return the metrics of all scripts ordered by name
+   */
+  @Nonnull
+  public static Collection<ScriptMetrics> all() {
+    return new TreeMap<>(BY_SCRIPT).values();
+  }
+
+  /**
+   * Removes the metrics of all scripts, e.g. between two benchmark trials.
+   */
+  public static void resetAll() {
+    BY_SCRIPT.clear();
+  }
+
+  @Nonnull
+  public String getScript() {
+    return script;
+  }
+
+  /**
+   * Records a run of the script, which returned the given resource. Resources without id and bundles without entry are counted as
+   * filtered, see {@link ScriptExecutionEvent#isEmitted(Resource)}.
+   */
+  public void record(@Nullable final Resource resource) {
+    in.increment();
+    (ScriptExecutionEvent.isEmitted(resource) ? emitted : filtered).increment();
+  }
+
+  public void recordFailure(@Nonnull final Throwable cause) {
+    in.increment();
+    failed.increment();
+  }
+
+  /**
+   * Counts an early return of the script for the given reason. The filtered record itself is counted by {@link #record(Resource)}.
+   * @param reason a short, constant description of the filter, e.g. 'no vital sign'. Must not contain record specific values,
+   * because each reason is kept as a separate counter.
+   */
+  public void filteredBy(@Nonnull final String reason) {
+    filterReasons.computeIfAbsent(reason, r -> new Counter()).increment();
+  }
+
+  @Nonnull
+  public Counter counter(@Nonnull final String name) {
+    return counters.computeIfAbsent(name, n -> new Counter());
+  }
+
+  @Nonnull
+  public Timer timer(@Nonnull final String name) {
+    return timers.computeIfAbsent(name, n -> new Timer());
+  }
+
+  public long getIn() {
+    return in.sum();
+  }
+
+  public long getEmitted() {
+    return emitted.sum();
+  }
+
+  public long getFiltered() {
+    return filtered.sum();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /**
+   * @return the count of each filter reason ordered by reason
+   */
+  @Nonnull
+  public Map<String, Long> getFilterReasons() {
+    return sums(filterReasons);
+  }
+
+  /**
+   * @return the funnel in one line, e.g. 'in 100, emitted 20, filtered 80 (no vital sign 70, unattributed 10), failed 0'
+   */
+  @Nonnull
+  public String funnel() {
+    final Map<String, Long> reasons = getFilterReasons();
+    final long unattributed = getFiltered() - reasons.values().stream().mapToLong(Long::longValue).sum();
+    final List<String> parts = new ArrayList<>();
+    reasons.forEach((reason, count) -> parts.add(reason + " " + count));
+    if (unattributed > 0 || !reasons.isEmpty()) {
+      parts.add("unattributed " + unattributed);
+    }
+
+    return "in " + getIn() + ", emitted " + getEmitted() + ", filtered " + getFiltered()
+           + (reasons.isEmpty() ? "" : " (" + String.join(", ", parts) + ")") + ", failed " + getFailed();
+  }
+
+  /**
+   * @return the metrics of all scripts in the Prometheus text exposition format
+   */
+  @Nonnull
+  public static String toPrometheus() {
+    final StringBuilder text = new StringBuilder();
+    text.append("# TYPE script_records_total counter\n");
+    all().forEach(m -> {
+      appendSample(text, "script_records_total", m.script, "outcome", "in", m.getIn());
+      appendSample(text, "script_records_total", m.script, "outcome", "emitted", m.getEmitted());
+      appendSample(text, "script_records_total", m.script, "outcome", "filtered", m.getFiltered());
+      appendSample(text, "script_records_total", m.script, "outcome", "failed", m.getFailed());
+    });
+    text.append("# TYPE script_filtered_total counter\n");
+    all().forEach(m -> m.getFilterReasons().forEach((reason, count) -> appendSample(text, "script_filtered_total", m.script, "reason",
+                                                                                    reason, count)));
+    text.append("# TYPE script_counter_total counter\n");
+    all().forEach(m -> sums(m.counters).forEach((name, count) -> appendSample(text, "script_counter_total", m.script, "name", name,
+                                                                              count)));
+    text.append("# TYPE script_timer_seconds summary\n");
+    all().forEach(m -> new TreeMap<>(m.timers).forEach((name, timer) -> {
+      appendSample(text, "script_timer_seconds_count", m.script, "name", name, timer.getCount());
+      appendSample(text, "script_timer_seconds_sum", m.script, "name", name, timer.getTotalNanos() / 1e9d);
+    }));
+    text.append("# TYPE script_timer_max_seconds gauge\n");
+    all().forEach(m -> new TreeMap<>(m.timers).forEach((name, timer) -> appendSample(text, "script_timer_max_seconds", m.script, "name",
+                                                                                     name, timer.getMaxNanos() / 1e9d)));
+    return text.toString();
+  }
+
+  private static void appendSample(@Nonnull final StringBuilder text,
+                                   @Nonnull final String metric,
+                                   @Nonnull final String script,
+                                   @Nonnull final String label,
+                                   @Nonnull final String value,
+                                   @Nonnull final Number sample) {
+    text.append(metric).append("{script=\"").append(escapePrometheus(script)).append("\",").append(label).append("=\"")
+        .append(escapePrometheus(value)).append("\"} ").append(sample).append('\n');
+  }
+
+  @Nonnull
+  private static String escapePrometheus(@Nonnull final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /**
+   * @return the metrics of all scripts as JSON object by script name
+   */
+  @Nonnull
+  public static String toJson() {
+    final StringBuilder json = new StringBuilder("{");
+    String separator = "\n";
+    for (final ScriptMetrics m : all()) {
+      json.append(separator).append("  ").append(quote(m.script)).append(": {")
+          .append("\"in\": ").append(m.getIn())
+          .append(", \"emitted\": ").append(m.getEmitted())
+          .append(", \"filtered\": ").append(m.getFiltered())
+          .append(", \"failed\": ").append(m.getFailed())
+          .append(", \"filterReasons\": ").append(jsonObject(m.getFilterReasons()))
+          .append(", \"counters\": ").append(jsonObject(sums(m.counters)))
+          .append(", \"timers\": {");
+      String timerSeparator = "";
+      for (final Map.Entry<String, Timer> timer : new TreeMap<>(m.timers).entrySet()) {
+        json.append(timerSeparator).append(quote(timer.getKey()))
+            .append(": {\"count\": ").append(timer.getValue().getCount())
+            .append(", \"totalNanos\": ").append(timer.getValue().getTotalNanos())
+            .append(", \"maxNanos\": ").append(timer.getValue().getMaxNanos()).append('}');
+        timerSeparator = ", ";
+      }
+      json.append("}}");
+      separator = ",\n";
+    }
+    return json.append(separator.equals("\n") ? "}" : "\n}").toString();
+  }
+
+  @Nonnull
+  private static String jsonObject(@Nonnull final Map<String, Long> values) {
+    final List<String> members = new ArrayList<>();
+    values.forEach((name, value) -> members.add(quote(name) + ": " + value));
+    return "{" + String.join(", ", members) + "}";
+  }
+
+  @Nonnull
+  private static String quote(@Nonnull final String value) {
+    final StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  @Nonnull
+  private static Map<String, Long> sums(@Nonnull final Map<String, Counter> counters) {
+    final Map<String, Long> sums = new TreeMap<>();
+    counters.forEach((name, counter) -> sums.put(name, counter.sum()));
+    return sums;
+  }
+
+  /**
+   * Monotonic counter of a script.
+   */
+  public static final class Counter {
+
+    private final LongAdder adder = new LongAdder();
+
+    private Counter() {/* created by the metrics */}
+
+    public void increment() {
+      adder.increment();
+    }
+
+    public void add(final long value) {
+      adder.add(value);
+    }
+
+    public long sum() {
+      return adder.sum();
+    }
+  }
+
+  /**
+   * Count, total and maximum duration of a code section of a script, e.g. a database lookup.
+   */
+  public static final class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    private Timer() {/* created by the metrics */}
+
+    public void record(final long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Runs the section and records its duration, also if it fails.
+     * @return the result of the section
+     */
+    public <T> T time(@Nonnull final Supplier<T> section) {
+      final long start = System.nanoTime();
+      try {
+        return section.get();
+      }
+      finally {
+        record(System.nanoTime() - start);
+      }
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package de.kairos.centraxx.fhir.r4.utils;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Unmodifiable map of the last path segment of sub extension URLs to the URL, e.g. 'override' to
+ * {@link FhirUrls.Extension.Patient.Ethnicities#ETHNICITY_OVERRIDE}. The maps are built once by the {@link FhirUrls} domain classes.
+ * In addition to the map methods, a sub extension can be resolved from a region of a char sequence without creating a substring.
+ */
+public final class SubExtensionMap extends AbstractMap<String, String> {
+
+  private final Map<String, String> urlBySuffix;
+  private final String[] suffixes;
+  private final String[] urls;
+
+  SubExtensionMap(@Nonnull final Collection<String> extensionUrls) {
+    final Map<String, String> map = new LinkedHashMap<>();
+    extensionUrls.forEach(url -> map.put(url.substring(url.lastIndexOf('/') + 1), url));
+    this.urlBySuffix = unmodifiableMap(map);
+    this.suffixes = map.keySet().toArray(new String[0]);
+    this.urls = map.values().toArray(new String[0]);
+  }
+
+  @Nonnull
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return urlBySuffix.entrySet();
+  }
+
+  @Override
+  public String get(final Object suffix) {
+    return urlBySuffix.get(suffix);
+  }
+
+  @Override
+  public boolean containsKey(final Object suffix) {
+    return urlBySuffix.containsKey(suffix);
+  }
+
+  @Override
+  public int size() {
+    return suffixes.length;
+  }
+
+  /**
+   * @param suffix the last path segment of a sub extension URL
+   * @return the sub extension URL or null, if the suffix is unknown
+   */
+  @Nullable
+  public String resolve(@Nonnull final CharSequence suffix) {
+    return resolve(suffix, 0, suffix.length());
+  }
+
+  /**
+   * Resolves the sub extension, whose last path segment equals the chars of the given region.
+   * @param source a char sequence containing the suffix, e.g. a complete extension URL or a parser buffer
+   * @param start the start index of the suffix, inclusive
+   * @param end the end index of the suffix, exclusive
+   * @return the sub extension URL or null, if the suffix is unknown
+   */
+  @Nullable
+  public String resolve(@Nonnull final CharSequence source, final int start, final int end) {
+    final int length = end - start;
+    for (int i = 0; i < suffixes.length; i++) {
+      if (suffixes[i].length() == length && regionEquals(suffixes[i], source, start)) {
+        return urls[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Resolves the sub extension by the last path segment of the given URL, e.g. to map an extension URL of a foreign system.
+   * @param url a URL ending with the suffix of a sub extension
+   * @return the sub extension URL or null, if the suffix is unknown
+   */
+  @Nullable
+  public String resolveLastSegment(@Nonnull final CharSequence url) {
+    int start = url.length();
+    while (start > 0 && url.charAt(start - 1) != '/') {
+      start--;
+    }
+    return resolve(url, start, url.length());
+  }
+
+  private static boolean regionEquals(@Nonnull final String suffix, @Nonnull final CharSequence source, final int start) {
+    for (int i = 0; i < suffix.length(); i++) {
+      if (suffix.charAt(i) != source.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
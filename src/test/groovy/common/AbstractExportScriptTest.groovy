@@ -1,12 +1,16 @@
 package common
 
+import de.kairos.centraxx.fhir.r4.utils.PageBatchLoader
+import de.kairos.centraxx.fhir.r4.utils.ScriptExecutionEvent
+import de.kairos.centraxx.fhir.r4.utils.ScriptMetrics
 import de.kairos.fhir.dsl.r4.context.Context
-import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptEngine
 import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner
 import groovy.json.JsonSlurper
+import org.hl7.fhir.r4.model.Bundle
 import org.hl7.fhir.r4.model.DomainResource
 import org.hl7.fhir.r4.model.Resource
 import org.hl7.fhir.r4.model.ResourceType
+import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Named
 import org.junit.jupiter.api.TestInstance
@@ -15,7 +19,12 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import javax.annotation.Nonnull
-import java.nio.charset.StandardCharsets
+import javax.annotation.Nullable
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.stream.Stream
 
 /**
@@ -25,15 +34,31 @@ import java.util.stream.Stream
  * Classes extending this abstract class must be annotated with the {@link TestResources} annotation,
  * which specifies the path to the Groovy script under test and the JSON files containing the entity maps used as test inputs.
  * <br><br>
+ * The entity maps are read from JSON files with a single entity map or an array of entity maps and from NDJSON files,
+ * see {@link ContextMapReader}.
  * For each entity map in the specified directory, this class creates a {@link Context} and initializes a Groovy
  * Transformation engine for the provided script. The script transforms each context into a HAPI FHIR resource.
+ * The compiled script is cached by the {@link ScriptRunnerCache} and reused by other test classes of the same script.
+ * <br><br>
+ * If {@link TestResources#parallelism} is greater than one, the entity maps are transformed on a fixed thread pool with one
+ * script runner per worker thread. The results keep the order of the file names in both modes.
+ * With {@link TestResources#checkThreadSafety}, the entity maps are additionally transformed concurrently by one shared runner,
+ * which fails the setup, if a result differs from the result of the regular transformation.
  * <br><br>
  * The transformed contexts and their resulting FHIR resources are provided by {@link AbstractExportScriptTest#getTestData}.
+ * In the {@link TestResources#streaming} mode, the entity maps are read and transformed lazily, while the tests consume them.
+ * With the system property {@value ScriptProfiler#ENABLED_PROPERTY}, every script run is profiled by the {@link ScriptProfiler}.
+ * With the system property {@value ScriptPerformanceGate#ENABLED_PROPERTY}, the setup fails on a performance regression or a missing
+ * baseline of the script, see {@link ScriptPerformanceGate}. The gate does not run in the streaming mode.
+ * The outcome of every run is counted in the {@link ScriptMetrics} of the script, whose funnel is logged after all tests of the class.
  * Test methods annotated with {@link ExportScriptTest} and accepting two parameters of type {@link Context} and E
  * are executed for each pair of context and resulting resource.
  * <br><br>
- * The {@link AbstractExportScriptTest#getValidator} method can be used to lazily initialize a {@link FhirResourceValidator},
+ * The {@link AbstractExportScriptTest#getValidator} method provides the {@link FhirResourceValidator} of a package path,
  * which can be utilized to validate the resulting resources against structure definitions in the provided FHIR packages.
+ * The validators are shared by all test classes. If {@link TestResources#fhirPackagePath} is given, the validator is loaded in the
+ * background while the entity maps are transformed. With {@link TestResources#prevalidate}, all resulting resources are validated
+ * in parallel at the end of the setup.
  *
  * @param <E>   The type parameter representing the FHIR resource.
  */
@@ -41,9 +66,12 @@ import java.util.stream.Stream
 abstract class AbstractExportScriptTest<E extends Resource> {
   private static final Logger LOG = LoggerFactory.getLogger(AbstractExportScriptTest.name)
   public static final String METHOD_SOURCE = "getTestData"
+  static final int DEFAULT_PAGE_SIZE = 10
   private List<Arguments> mappingResults
-
-  private FhirResourceValidator validator
+  private TestResources streamingResources
+  private ScriptProfiler profiler
+  private String template
+  private String scriptName
 
   @BeforeAll
   void setUp() {
@@ -61,33 +89,72 @@ abstract class AbstractExportScriptTest<E extends Resource> {
       throw new IllegalArgumentException("The TestResourcesAnnotation parameters must be given.")
     }
 
-    loadAndTransform(groovyPath, contextMapsPath)
+    if (resources.prevalidate() && resources.fhirPackagePath().isEmpty()) {
+      throw new IllegalArgumentException("The fhirPackagePath must be given to prevalidate the resources.")
+    }
+
+    if (resources.parallelism() < 1) {
+      throw new IllegalArgumentException("The parallelism must be at least 1, but was ${resources.parallelism()}.")
+    }
+
+    if (resources.streaming() && (resources.parallelism() > 1 || resources.checkThreadSafety() || resources.prevalidate())) {
+      throw new IllegalArgumentException("The streaming mode cannot be combined with parallelism, checkThreadSafety or prevalidate.")
+    }
+
+    template = templateName(groovyPath)
+    scriptName = scriptName(groovyPath)
+
+    if (ScriptProfiler.isEnabled()) {
+      profiler = ScriptProfiler.forScript(groovyPath)
+    }
+
+    if (!resources.fhirPackagePath().isEmpty()) {
+      FhirResourceValidatorRegistry.warmUp(resources.fhirPackagePath())
+    }
+
+    if (resources.streaming()) {
+      streamingResources = resources
+      return
+    }
+
+    loadAndTransform(groovyPath, contextMapsPath, resources.parallelism(), resources.checkThreadSafety())
+
+    if (resources.prevalidate()) {
+      prevalidate(resources.fhirPackagePath())
+    }
   }
 
   /**
-   * @param path
-   * @return
+   * @param path path to the FHIR packages relative to 'src/test/resources', e.g. 'fhirpackages/mii'
+   * @return the validator of the packages, which is shared by all test classes
    */
   @Nonnull
   protected FhirResourceValidator getValidator(@Nonnull final String path) {
-    if (validator == null) {
-      validator = new FhirResourceValidator(path)
-    }
-    return validator
+    return FhirResourceValidatorRegistry.getValidator(path)
   }
 
   private void loadAndTransform(@Nonnull final String groovyPath,
-                                @Nonnull final String contextMapsPath) throws FileNotFoundException {
+                                @Nonnull final String contextMapsPath,
+                                final int parallelism,
+                                final boolean checkThreadSafety) throws FileNotFoundException {
 
     final Map<String, Map<String, Object>> contextMaps = createTestData(contextMapsPath)
 
-    final Fhir4ScriptRunner runner = createRunner(groovyPath)
+    final long start = System.currentTimeMillis()
+    final List<ArgumentContainer<E>> transformed = parallelism > 1
+        ? transformParallel(groovyPath, contextMaps, parallelism, pageSize(groovyPath))
+        : transformSequential(createRunner(groovyPath), contextMaps, pageSize(groovyPath))
+    LOG.info("Transformed ${transformed.size()} context maps with parallelism $parallelism in ${System.currentTimeMillis() - start} ms.")
+
+    if (checkThreadSafety) {
+      verifyThreadSafety(groovyPath, contextMaps, transformed, Math.max(parallelism, 2))
+    }
+
+    if (ScriptPerformanceGate.isEnabled()) {
+      ScriptPerformanceGate.check(groovyPath, ScriptRunnerCache.compile(groovyPath), contextMaps)
+    }
 
-    final List<ArgumentContainer<E>> arguments = contextMaps.collect { final fileName, final contextMap ->
-      final Context context = new Context(contextMap)
-      final E resource = (E) runner.run(context)
-      return new ArgumentContainer(fileName, context, resource)
-    }.findAll {
+    final List<ArgumentContainer<E>> arguments = transformed.findAll {
       it.resource.getResourceType() == ResourceType.Bundle || it.resource.hasId()
     }
 
@@ -99,49 +166,283 @@ abstract class AbstractExportScriptTest<E extends Resource> {
 
   }
 
+  /**
+   * Validates all resulting resources in parallel. Bundles are not validated themselves, but their entry resources, as the
+   * tests do it.
+   */
+  private void prevalidate(@Nonnull final String packagePath) {
+    final List<Resource> resources = mappingResults.collectMany {
+      final Resource resource = it.get()[1] as Resource
+      return resource instanceof Bundle ? ((Bundle) resource).getEntry()*.getResource().findAll { it != null } : [resource]
+    }
+
+    final long start = System.currentTimeMillis()
+    final Map<Resource, List<String>> errorsByResource = getValidator(packagePath).validateAll(resources)
+    LOG.info("Pre-validated ${resources.size()} resources in ${System.currentTimeMillis() - start} ms, " +
+        "${errorsByResource.size()} resources have errors.")
+  }
+
+  /**
+   * Transforms the context maps in pages of the given size like the export, so a {@link PageBatchLoader} of the script loads the
+   * values of a page with one batch.
+   */
   @Nonnull
-  static Map<String, Map<String, Object>> createTestData(@Nonnull final String contextMapsPath) throws FileNotFoundException {
-    LOG.info("Loading test data from $contextMapsPath")
+  private List<ArgumentContainer<E>> transformSequential(@Nonnull final Fhir4ScriptRunner runner,
+                                                         @Nonnull final Map<String, Map<String, Object>> contextMaps,
+                                                         final int pageSize) {
+    return contextMaps.entrySet().collate(pageSize).collectMany { final List<Map.Entry<String, Map<String, Object>>> entries ->
+      final Map<String, Context> contexts = entries.collectEntries { [(it.key): new Context(it.value)] }
+      final PageBatchLoader.Page page = PageBatchLoader.openPage(contexts.values())
+      try {
+        return contexts.collect { final fileName, final context -> transform(runner, fileName, context) }
+      }
+      finally {
+        page.close()
+      }
+    }
+  }
 
-    final File contextMapDir = new File(contextMapsPath)
+  /**
+   * Transforms the context maps on a fixed thread pool. Each worker thread compiles its own runner, because a runner must not be
+   * shared between threads, unless the script is thread-safe. The pages are transformed one after the other like in
+   * {@link #transformSequential}, the records of a page concurrently.
+   */
+  @Nonnull
+  private List<ArgumentContainer<E>> transformParallel(@Nonnull final String groovyPath,
+                                                       @Nonnull final Map<String, Map<String, Object>> contextMaps,
+                                                       final int parallelism,
+                                                       final int pageSize) {
+    final ThreadLocal<Fhir4ScriptRunner> runners = ThreadLocal.withInitial { ScriptRunnerCache.compile(groovyPath) }
+    final ExecutorService executor = Executors.newFixedThreadPool(parallelism)
+    try {
+      // a loop instead of a closure, because a closure would not find the private invokeAll on a subclass
+      final List<ArgumentContainer<E>> transformed = []
+      for (final List<Map.Entry<String, Map<String, Object>>> entries : contextMaps.entrySet().collate(pageSize)) {
+        final Map<String, Context> contexts = entries.collectEntries { [(it.key): new Context(it.value)] }
+        final PageBatchLoader.Page page = PageBatchLoader.openPage(contexts.values())
+        try {
+          transformed.addAll(invokeAll(executor, contexts.collect { final fileName, final context ->
+            return { transform(runners.get(), fileName, context) } as Callable<ArgumentContainer<E>>
+          }))
+        }
+        finally {
+          page.close()
+        }
+      }
+      return transformed
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
 
-    if (!contextMapDir.exists()) {
-      throw new IllegalStateException("The given contextMapPath does not exist. Path: ${contextMapDir.path}")
+  /**
+   * Transforms every context map several times concurrently with one shared runner and compares the results with the given
+   * expected results. Scripts with mutable state in fields or in static variables usually produce mixed up or failing results.
+   * Scripts creating random values, e.g. UUIDs or timestamps, cannot be checked this way.
+   */
+  private void verifyThreadSafety(@Nonnull final String groovyPath,
+                                  @Nonnull final Map<String, Map<String, Object>> contextMaps,
+                                  @Nonnull final List<ArgumentContainer<E>> expected,
+                                  final int parallelism) {
+    final Map<String, E> expectedByFile = expected.collectEntries { [(it.fileName): it.resource] }
+    final Fhir4ScriptRunner sharedRunner = createRunner(groovyPath)
+    final List<Callable<String>> tasks = []
+    parallelism.times {
+      contextMaps.each { final fileName, final contextMap ->
+        tasks.add({
+          try {
+            final E expectedResource = expectedByFile.get(fileName)
+            // not profiled, because the concurrent runs of one runner would distort the measurements
+            final E resource = (E) sharedRunner.run(new Context(contextMap))
+            return (expectedResource == null ? resource == null : expectedResource.equalsDeep(resource)) ? null : fileName
+          }
+          catch (final Exception e) {
+            return "$fileName (${e})".toString()
+          }
+        } as Callable<String>)
+      }
     }
 
-    final Map<String, Map<String, Object>> contextMapByFile = new HashMap<>()
+    final Set<String> failedFiles = new TreeSet<>(invokeAll(parallelism, tasks).findAll { it != null })
+    if (!failedFiles.isEmpty()) {
+      throw new IllegalStateException("The script $groovyPath is not thread-safe. A shared runner produced different results or " +
+          "failed for the context maps: $failedFiles")
+    }
+    LOG.info("Verified thread-safety of $groovyPath with ${tasks.size()} concurrent transformations.")
+  }
+
+  /**
+   * Logs the funnel of the script and exports the metrics of all scripts of this JVM to 'target/script-metrics.prom' in the Prometheus
+   * text format and to 'target/script-metrics.json'.
+   */
+  @AfterAll
+  void logScriptMetrics() {
+    if (scriptName == null) {
+      return
+    }
+
+    LOG.info("Funnel of $scriptName: ${ScriptMetrics.of(scriptName).funnel()}")
+    final File dir = new File("target")
+    dir.mkdirs()
+    new File(dir, "script-metrics.prom").setText(ScriptMetrics.toPrometheus(), "UTF-8")
+    new File(dir, "script-metrics.json").setText(ScriptMetrics.toJson(), "UTF-8")
+  }
+
+  /**
+   * @return the name of the script for the {@link ScriptMetrics}, which is the path below 'customexport' without extension, e.g.
+   * 'patientfinder/hull/observation'
+   */
+  @Nonnull
+  static String scriptName(@Nonnull final String groovyPath) {
+    final String path = groovyPath.replace('\\', '/')
+    final int customExport = path.lastIndexOf("customexport/")
+    final String name = customExport < 0 ? path : path.substring(customExport + "customexport/".length())
+    return name.endsWith(".groovy") ? name.substring(0, name.length() - ".groovy".length()) : name
+  }
+
+  /**
+   * @return the name of the transformation template of the script in the ExportResourceMappingConfig.json, which is the file name
+   * without extension
+   */
+  @Nonnull
+  static String templateName(@Nonnull final String groovyPath) {
+    final String fileName = new File(groovyPath).name
+    return fileName.endsWith(".groovy") ? fileName.substring(0, fileName.length() - ".groovy".length()) : fileName
+  }
+
+  /**
+   * Runs the script for a context map and records a {@link ScriptExecutionEvent}.
+   * Not private, because the method is called in closures, which would not find a private method of this class on a subclass.
+   */
+  @Nonnull
+  protected ArgumentContainer<E> transform(@Nonnull final Fhir4ScriptRunner runner,
+                                         @Nonnull final String fileName,
+                                         @Nonnull final Map<String, Object> contextMap) {
+    return transform(runner, fileName, new Context(contextMap))
+  }
 
-    contextMapDir.eachFileMatch(~/.*\.json/) {
-      final def json = new JsonSlurper().parse(it)
+  @Nonnull
+  protected ArgumentContainer<E> transform(@Nonnull final Fhir4ScriptRunner runner,
+                                         @Nonnull final String fileName,
+                                         @Nonnull final Context context) {
+    final E resource = (E) ScriptExecutionEvent.record(template, context.source["id"]) { runAndCount(runner, fileName, context) }
+    return new ArgumentContainer(fileName, context, resource)
+  }
+
+  /**
+   * Runs the script, profiled if enabled, and counts the outcome in the {@link ScriptMetrics} of the script.
+   * Not private, because the method is called in a closure.
+   */
+  @Nullable
+  protected Resource runAndCount(@Nonnull final Fhir4ScriptRunner runner,
+                                 @Nonnull final String fileName,
+                                 @Nonnull final Context context) {
+    // looked up per run, because the metrics of all scripts can be reset
+    final ScriptMetrics metrics = ScriptMetrics.of(scriptName)
+    try {
+      final Resource resource = profiler != null ? profiler.run(runner, fileName, context) : runner.run(context)
+      metrics.record(resource)
+      return resource
+    }
+    catch (final Exception e) {
+      metrics.recordFailure(e)
+      throw e
+    }
+  }
 
-      if (json instanceof List) {
-        throw new IllegalStateException("The given context map JSON file must contain a representation of a single entity," +
-            " not an array of entity maps.")
+  /**
+   * Runs the tasks on a fixed thread pool and returns their results in the order of the tasks.
+   */
+  @Nonnull
+  private static <T> List<T> invokeAll(final int parallelism, @Nonnull final List<Callable<T>> tasks) {
+    final ExecutorService executor = Executors.newFixedThreadPool(parallelism)
+    try {
+      return invokeAll(executor, tasks)
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
+
+  /**
+   * Runs the tasks on the executor and returns their results in the order of the tasks.
+   */
+  @Nonnull
+  private static <T> List<T> invokeAll(@Nonnull final ExecutorService executor, @Nonnull final List<Callable<T>> tasks) {
+    // invokeAll instead of submit, because a closure is a Runnable as well and submit would return a null result
+    return executor.invokeAll(tasks).collect { final Future<T> future ->
+      try {
+        return future.get()
       }
+      catch (final ExecutionException e) {
+        throw e.cause
+      }
+    }
+  }
 
-      contextMapByFile.put(it.name, json as Map<String, Object>)
+  /**
+   * @return the context maps of all JSON and NDJSON files of the directory by name, see {@link ContextMapReader}
+   */
+  @Nonnull
+  static Map<String, Map<String, Object>> createTestData(@Nonnull final String contextMapsPath) throws FileNotFoundException {
+    LOG.info("Loading test data from $contextMapsPath")
+
+    // in the order of the file names, so the order of the test cases is the same in every run and in the parallel mode
+    final Map<String, Map<String, Object>> contextMapByName = new LinkedHashMap<>()
+    final Stream<Map.Entry<String, Map<String, Object>>> contextMaps = ContextMapReader.read(new File(contextMapsPath))
+    try {
+      contextMaps.forEach { contextMapByName.put(it.key, it.value) }
+    }
+    finally {
+      contextMaps.close()
     }
+    return contextMapByName
+  }
 
-    return contextMapByFile
+  /**
+   * @return the page size of the ProjectConfig.json in the directory of the script or in one of its parent directories, or
+   * {@value #DEFAULT_PAGE_SIZE}, if there is none
+   */
+  static int pageSize(@Nonnull final String groovyPath) {
+    for (File dir = new File(groovyPath).getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+      final File projectConfig = new File(dir, "ProjectConfig.json")
+      if (projectConfig.isFile()) {
+        final def pageSize = (new JsonSlurper().parse(projectConfig) as Map)["pageSize"]?.getAt("value")
+        return pageSize == null ? DEFAULT_PAGE_SIZE : pageSize as int
+      }
+    }
+    return DEFAULT_PAGE_SIZE
   }
 
+  /**
+   * @return the compiled script of the given path, which is shared with other test classes by the {@link ScriptRunnerCache}
+   */
   @Nonnull
   static Fhir4ScriptRunner createRunner(@Nonnull final String groovyPath) {
-    final FileInputStream is = new FileInputStream(groovyPath)
-    return getFhir4ScriptRunner(is, "test")
+    return ScriptRunnerCache.getOrCompile(groovyPath)
   }
 
+  /**
+   * @return the test cases, which are transformed during the setup, or in the streaming mode while the returned stream is consumed.
+   */
   @Nonnull
-  private static Fhir4ScriptRunner getFhir4ScriptRunner(@Nonnull final InputStream is,
-                                                        @Nonnull final String className) throws UnsupportedEncodingException {
-    final InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)
-    final Fhir4ScriptEngine engine = new Fhir4ScriptEngine()
-    return engine.create(reader, className)
+  protected Stream<Arguments> getTestData() {
+    return streamingResources != null ? streamTestData(streamingResources) : mappingResults.stream()
   }
 
+  /**
+   * Reads and transforms the context maps lazily. Every call reads and transforms all context maps again, so only one context map and
+   * its resource are kept in memory at a time.
+   */
   @Nonnull
-  protected Stream<Arguments> getTestData() {
-    return mappingResults.stream()
+  private Stream<Arguments> streamTestData(@Nonnull final TestResources resources) {
+    LOG.info("Streaming test data from ${resources.contextMapsPath()}")
+    final Fhir4ScriptRunner runner = createRunner(resources.groovyScriptPath())
+    return ContextMapReader.read(new File(resources.contextMapsPath()))
+        .map { transform(runner, it.key, it.value) }
+        .filter { it.resource.getResourceType() == ResourceType.Bundle || it.resource.hasId() }
+        .map { Arguments.of(new NamedArg(it.fileName, it.context), it.resource) }
   }
 
   class ArgumentContainer<R extends Resource> {
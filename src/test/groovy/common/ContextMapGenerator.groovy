@@ -0,0 +1,483 @@
+package common
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SequenceWriter
+import de.kairos.fhir.centraxx.metamodel.AbstractCode
+import de.kairos.fhir.centraxx.metamodel.AbstractCustomCatalog
+import de.kairos.fhir.centraxx.metamodel.AbstractEntity
+import de.kairos.fhir.centraxx.metamodel.AbstractSample
+import de.kairos.fhir.centraxx.metamodel.CatalogEntry
+import de.kairos.fhir.centraxx.metamodel.CrfTemplateField
+import de.kairos.fhir.centraxx.metamodel.IdContainer
+import de.kairos.fhir.centraxx.metamodel.IdContainerType
+import de.kairos.fhir.centraxx.metamodel.LaborFinding
+import de.kairos.fhir.centraxx.metamodel.LaborFindingLaborValue
+import de.kairos.fhir.centraxx.metamodel.LaborMapping
+import de.kairos.fhir.centraxx.metamodel.LaborMethod
+import de.kairos.fhir.centraxx.metamodel.LaborValue
+import de.kairos.fhir.centraxx.metamodel.LaborValueNumeric
+import de.kairos.fhir.centraxx.metamodel.OrganisationUnit
+import de.kairos.fhir.centraxx.metamodel.PatientContainer
+import de.kairos.fhir.centraxx.metamodel.PatientMaster
+import de.kairos.fhir.centraxx.metamodel.PrecisionDate
+import de.kairos.fhir.centraxx.metamodel.Sample
+import de.kairos.fhir.centraxx.metamodel.SampleIdContainer
+import de.kairos.fhir.centraxx.metamodel.Unity
+import de.kairos.fhir.centraxx.metamodel.enums.CatalogCategory
+import de.kairos.fhir.centraxx.metamodel.enums.LaborFindingValueStatus
+import de.kairos.fhir.centraxx.metamodel.enums.LaborValueDType
+import de.kairos.fhir.centraxx.metamodel.enums.SampleCategory
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import javax.annotation.Nullable
+import java.math.RoundingMode
+import java.time.Instant
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.format.DateTimeFormatter
+import java.util.stream.IntStream
+import java.util.stream.Stream
+
+/**
+ * Generates seeded, randomized context maps for load tests of export scripts, e.g. 'mii/bielefeld/observation.groovy' or
+ * 'hdrp/napkon/ibdw/specimen.groovy'. The maps contain the paths of the root entities, which the scripts read:
+ * <ul>
+ *   <li>{@link #laborFindingLaborValues} for RootEntities.laborFindingLaborValue() with the labor value, its IdContainers,
+ *   the labor finding, the labor method and the patient of the labor mapping</li>
+ *   <li>{@link #samples} for RootEntities.sample() with the IdContainers, the parent chain of aliquot groups and derived samples,
+ *   the patient container, the organisation unit and the precision dates</li>
+ * </ul>
+ * The same seed, settings and index always result in the same context map, so the maps are created lazily and never kept in memory.
+ * The generated streams can be written to NDJSON files, which are read by the {@link ContextMapReader} and by the benchmarks.
+ * <pre>
+ * {@code
+ *   ContextMapGenerator.writeNdjson(new ContextMapGenerator(42).patients(1000).samples(1_000_000), new File("target/samples.ndjson"))
+ *}
+ * </pre>
+ * From the command line: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=common.ContextMapGenerator
+ * -Dexec.args="sample 1000000 target/samples.ndjson 42"}
+ */
+final class ContextMapGenerator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ContextMapGenerator.name)
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
+  private static final ZoneId ZONE = ZoneId.of("Europe/Berlin")
+
+  private static final List<String> SAMPLE_TYPES = ["URINE", "BLDCELLS", "EDTAPLASMA", "SERUM", "CITRATE", "BFFYCOAT", "PAXGEN", "SALIVA"]
+  private static final List<String> ORGANISATION_UNITS = ["napPOP", "napSUP", "CentraXX"]
+  private static final List<String> UNITS = ["MG_DL", "MMOL_L", "CENTI_METRE", "KILO_GRAM", "PERCENT"]
+
+  // keys, which the scripts of this project only read by the RootEntities paths, e.g. sample().sampleType().code()
+  static final String STATUS = "status"
+  static final String RECORDED_ON = "recordedOn"
+  static final String LABOR_FINDING = "laborFinding"
+  static final String LABOR_FINDING_ID = "laborFindingId"
+  static final String FINDING_DATE = "findingDate"
+  static final String LABOR_MAPPINGS = "laborMappings"
+  static final String SAMPLE_TYPE = "sampleType"
+  static final String REST_AMOUNT = "restAmount"
+  static final String AMOUNT = "amount"
+  static final String UNIT = "unit"
+  static final String LOCATION_ID = "locationId"
+  static final String SAMPLING_DATE = "samplingDate"
+  static final String RECEIPT_DATE = "receiptDate"
+  static final String FIRST_REPOSITION_DATE = "firstRepositionDate"
+  static final String ROOT_SAMPLE = "rootSample"
+
+  private final long seed
+  private int patients = 100
+  private int laborValues = 50
+  private double missingRate = 0.1d
+  private Map<LaborValueDType, Integer> laborValueTypes = [
+      (LaborValueDType.DECIMAL): 5, (LaborValueDType.INTEGER): 2, (LaborValueDType.CATALOG): 2,
+      (LaborValueDType.STRING) : 1, (LaborValueDType.BOOLEAN): 1, (LaborValueDType.DATE): 1]
+  private Map<String, Integer> laborMethods = ["MP_DiagnosticReportLab": 4, "MP_ObservationVitalstatus": 1]
+  private Map<SampleCategory, Integer> sampleCategories = [
+      (SampleCategory.MASTER): 2, (SampleCategory.ALIQUOTGROUP): 1, (SampleCategory.DERIVED): 4]
+  private Map<LaborFindingValueStatus, Integer> statuses = [
+      (LaborFindingValueStatus.F): 8, (LaborFindingValueStatus.P): 1, (LaborFindingValueStatus.C): 1]
+  private Map<String, Integer> precisions = ["EXACT": 8, "DAY": 1, "MONTH": 1]
+  private long fromEpochSecond = OffsetDateTime.parse("2020-01-01T00:00:00+01:00").toEpochSecond()
+  private long toEpochSecond = OffsetDateTime.parse("2025-01-01T00:00:00+01:00").toEpochSecond()
+
+  ContextMapGenerator(final long seed) {
+    this.seed = seed
+  }
+
+  /**
+   * @param count the number of distinct patients, to which the entities are assigned uniformly
+   */
+  @Nonnull
+  ContextMapGenerator patients(final int count) {
+    this.patients = requirePositive(count, "patients")
+    return this
+  }
+
+  /**
+   * @param count the number of distinct labor values, which are shared by the labor finding labor values like in a real system
+   */
+  @Nonnull
+  ContextMapGenerator laborValues(final int count) {
+    this.laborValues = requirePositive(count, "laborValues")
+    return this
+  }
+
+  /**
+   * @param rate the probability, that an optional value like an IdContainer, a date or a unit is missing
+   */
+  @Nonnull
+  ContextMapGenerator missingRate(final double rate) {
+    if (rate < 0d || rate > 1d) {
+      throw new IllegalArgumentException("The missingRate must be between 0 and 1, but was $rate.")
+    }
+    this.missingRate = rate
+    return this
+  }
+
+  @Nonnull
+  ContextMapGenerator laborValueTypes(@Nonnull final Map<LaborValueDType, Integer> weights) {
+    this.laborValueTypes = requireWeights(weights, "laborValueTypes")
+    return this
+  }
+
+  /**
+   * @param weights the weight of each labor method code, e.g. to control how many values an export script filters out
+   */
+  @Nonnull
+  ContextMapGenerator laborMethods(@Nonnull final Map<String, Integer> weights) {
+    this.laborMethods = requireWeights(weights, "laborMethods")
+    return this
+  }
+
+  @Nonnull
+  ContextMapGenerator sampleCategories(@Nonnull final Map<SampleCategory, Integer> weights) {
+    this.sampleCategories = requireWeights(weights, "sampleCategories")
+    return this
+  }
+
+  @Nonnull
+  ContextMapGenerator statuses(@Nonnull final Map<LaborFindingValueStatus, Integer> weights) {
+    this.statuses = requireWeights(weights, "statuses")
+    return this
+  }
+
+  /**
+   * @param weights the weight of each precision of the precision dates, e.g. 'EXACT', 'DAY' or 'MONTH'
+   */
+  @Nonnull
+  ContextMapGenerator precisions(@Nonnull final Map<String, Integer> weights) {
+    this.precisions = requireWeights(weights, "precisions")
+    return this
+  }
+
+  /**
+   * @param from the earliest date of the precision dates, inclusive
+   * @param to the latest date of the precision dates, exclusive
+   */
+  @Nonnull
+  ContextMapGenerator dates(@Nonnull final OffsetDateTime from, @Nonnull final OffsetDateTime to) {
+    if (!from.isBefore(to)) {
+      throw new IllegalArgumentException("The date range must not be empty, but was $from to $to.")
+    }
+    this.fromEpochSecond = from.toEpochSecond()
+    this.toEpochSecond = to.toEpochSecond()
+    return this
+  }
+
+  /**
+   * @return a lazy stream of the given number of RootEntities.laborFindingLaborValue() context maps
+   */
+  @Nonnull
+  Stream<Map<String, Object>> laborFindingLaborValues(final int count) {
+    return IntStream.range(0, count).mapToObj { laborFindingLaborValue(it) }
+  }
+
+  /**
+   * @return a lazy stream of the given number of RootEntities.sample() context maps
+   */
+  @Nonnull
+  Stream<Map<String, Object>> samples(final int count) {
+    return IntStream.range(0, count).mapToObj { sample(it) }
+  }
+
+  @Nonnull
+  Map<String, Object> laborFindingLaborValue(final int index) {
+    final Random random = random(1, index)
+    final long id = index + 1L
+    final Map<String, Object> laborValue = laborValue(random.nextInt(laborValues))
+    final LaborValueDType dType = LaborValueDType.valueOf(laborValue[LaborValue.D_TYPE] as String)
+
+    final Map<String, Object> lflv = [
+        (LaborFindingLaborValue.ID)                : id,
+        (STATUS)                                   : pick(random, statuses).name(),
+        (RECORDED_ON)                              : precisionDate(random),
+        (LaborFindingLaborValue.CRF_TEMPLATE_FIELD): [(AbstractEntity.ID)         : laborValue[LaborValue.ID],
+                                                      (CrfTemplateField.LABOR_VALUE): laborValue],
+        (LABOR_FINDING)                            : [
+            (AbstractEntity.ID)        : id,
+            (LABOR_FINDING_ID)         : "LF_$id".toString(),
+            (LaborFinding.LABOR_METHOD): [(LaborMethod.CODE): pick(random, laborMethods)],
+            (FINDING_DATE)             : precisionDate(random),
+            (LABOR_MAPPINGS)           : [[
+                                              (LaborMapping.ID)             : id,
+                                              (LaborMapping.MAPPING_TYPE)   : "PATIENT",
+                                              (LaborMapping.RELATED_PATIENT): [(PatientMaster.ID): patientId(random)]
+                                          ]]
+        ],
+        (LaborFindingLaborValue.NUMERIC_VALUE)      : null,
+        (LaborFindingLaborValue.STRING_VALUE)       : null,
+        (LaborFindingLaborValue.BOOLEAN_VALUE)      : null,
+        (LaborFindingLaborValue.DATE_VALUE)         : null,
+        (LaborFindingLaborValue.CATALOG_ENTRY_VALUE): [],
+        (LaborFindingLaborValue.MULTI_VALUE)        : []
+    ]
+
+    switch (dType) {
+      case LaborValueDType.DECIMAL:
+        lflv[LaborFindingLaborValue.NUMERIC_VALUE] = BigDecimal.valueOf(random.nextDouble() * 1000).setScale(2, RoundingMode.HALF_UP)
+        break
+      case LaborValueDType.INTEGER:
+        lflv[LaborFindingLaborValue.NUMERIC_VALUE] = BigDecimal.valueOf(random.nextInt(1000))
+        break
+      case LaborValueDType.STRING:
+        lflv[LaborFindingLaborValue.STRING_VALUE] = "value ${random.nextInt(10_000)}".toString()
+        break
+      case LaborValueDType.BOOLEAN:
+        lflv[LaborFindingLaborValue.BOOLEAN_VALUE] = random.nextBoolean()
+        break
+      case LaborValueDType.DATE:
+        lflv[LaborFindingLaborValue.DATE_VALUE] = precisionDate(random)
+        break
+      default:
+        lflv[LaborFindingLaborValue.CATALOG_ENTRY_VALUE] = [catalogEntry(random, laborValue[LaborValue.CODE] as String)]
+    }
+
+    return lflv
+  }
+
+  @Nonnull
+  Map<String, Object> sample(final int index) {
+    final Random random = random(2, index)
+    final long id = index + 1L
+    final SampleCategory category = pick(random, sampleCategories)
+    final Map<String, Object> patientContainer = patientContainer(patientId(random))
+    final String organisationUnit = ORGANISATION_UNITS[random.nextInt(ORGANISATION_UNITS.size())]
+    final String sampleType = SAMPLE_TYPES[random.nextInt(SAMPLE_TYPES.size())]
+
+    // the parent chain of a derived sample is aliquot group and master, the ids are unique by the index and the level
+    final Map<String, Object> master = sampleEntity(random, id * 3, SampleCategory.MASTER, sampleType, organisationUnit,
+                                                    patientContainer, null)
+    if (category == SampleCategory.MASTER) {
+      return master
+    }
+
+    final Map<String, Object> aliquotGroup = sampleEntity(random, id * 3 + 1, SampleCategory.ALIQUOTGROUP, sampleType,
+                                                          organisationUnit, patientContainer, master)
+    return category == SampleCategory.ALIQUOTGROUP
+        ? aliquotGroup
+        : sampleEntity(random, id * 3 + 2, category, sampleType, organisationUnit, patientContainer, aliquotGroup)
+  }
+
+  @Nonnull
+  private Map<String, Object> sampleEntity(@Nonnull final Random random,
+                                           final long id,
+                                           @Nonnull final SampleCategory category,
+                                           @Nonnull final String sampleType,
+                                           @Nonnull final String organisationUnit,
+                                           @Nonnull final Map<String, Object> patientContainer,
+                                           @Nullable final Map<String, Object> parent) {
+    final List<Map<String, Object>> idContainers = [sampleIdContainer(id * 2, "SAMPLEID", "S$id")]
+    if (category == SampleCategory.MASTER && !missing(random)) {
+      idContainers.add(sampleIdContainer(id * 2 + 1, "NAPKONSMP", "NAPKON$id"))
+    }
+
+    final Map<String, Object> sample = [
+        (AbstractSample.ID)               : id,
+        (AbstractSample.SAMPLE_CATEGORY)  : category.name(),
+        (SAMPLE_TYPE)                     : [(AbstractCode.CODE): sampleType],
+        (AbstractSample.ID_CONTAINER)     : idContainers,
+        (AbstractSample.PATIENTCONTAINER) : patientContainer,
+        (AbstractSample.ORGANISATION_UNIT): [(OrganisationUnit.ID)  : ORGANISATION_UNITS.indexOf(organisationUnit) + 1L,
+                                             (OrganisationUnit.CODE): organisationUnit],
+        (Sample.SAMPLE_LOCATION)          : [(LOCATION_ID): missing(random) ? "swisslabProben" : "FREEZER_${random.nextInt(20)}".toString()],
+        (REST_AMOUNT)                     : [(AMOUNT): missing(random) ? 0 : random.nextInt(500) + 1, (UNIT): "ML"],
+        (SAMPLING_DATE)                   : precisionDate(random),
+        (RECEIPT_DATE)                    : optionalPrecisionDate(random),
+        (FIRST_REPOSITION_DATE)           : optionalPrecisionDate(random),
+        (Sample.REPOSITION_DATE)          : optionalPrecisionDate(random),
+        (Sample.DERIVAL_DATE)             : category == SampleCategory.MASTER ? null : optionalPrecisionDate(random),
+        (AbstractSample.PARENT)           : parent,
+        (ROOT_SAMPLE)                     : parent == null ? null : (parent[ROOT_SAMPLE] ?: parent)
+    ]
+    return sample
+  }
+
+  /**
+   * The labor values are created by their index and the seed only, so all labor finding labor values of the same labor value share
+   * its code, type, unit and IdContainers.
+   */
+  @Nonnull
+  private Map<String, Object> laborValue(final int index) {
+    final Random random = random(3, index)
+    final LaborValueDType dType = pick(random, laborValueTypes)
+    final boolean numeric = dType == LaborValueDType.DECIMAL || dType == LaborValueDType.INTEGER
+    final List<Map<String, Object>> idContainers = missing(random) ? [] : [[
+        (AbstractEntity.ID)            : index + 1L,
+        (IdContainer.PSN)              : "${1000 + index}-${random.nextInt(10)}".toString(),
+        (IdContainer.ID_CONTAINER_TYPE): [(IdContainerType.CODE): "LOINC", (IdContainerType.NAME): "LOINC", (IdContainerType.DECISIVE): false]
+    ]]
+
+    return [
+        (LaborValue.ID)          : index + 1L,
+        (LaborValue.CODE)        : "LV_$index".toString(),
+        (LaborValue.D_TYPE)      : dType.name(),
+        (LaborValue.IDCONTAINERS): idContainers,
+        (LaborValueNumeric.UNIT) : numeric && !missing(random) ? [(Unity.CODE): UNITS[random.nextInt(UNITS.size())]] : null
+    ]
+  }
+
+  @Nonnull
+  private static Map<String, Object> catalogEntry(@Nonnull final Random random, @Nonnull final String catalogCode) {
+    return [
+        (CatalogEntry.CODE)   : "ENTRY_${random.nextInt(5)}".toString(),
+        (CatalogEntry.CATALOG): [(AbstractCustomCatalog.CODE): catalogCode,
+                                 (AbstractCustomCatalog.CATALOG_CATEGORY): CatalogCategory.CUSTOM.name()]
+    ]
+  }
+
+  @Nonnull
+  private static Map<String, Object> patientContainer(final long patientId) {
+    return [
+        (PatientContainer.ID)          : patientId,
+        (PatientContainer.ID_CONTAINER): [[
+                                              (AbstractEntity.ID)            : patientId,
+                                              (IdContainer.PSN)              : "NAPKON_$patientId".toString(),
+                                              (IdContainer.ID_CONTAINER_TYPE): [(IdContainerType.CODE): "NAPKON", (IdContainerType.DECISIVE): true]
+                                          ]]
+    ]
+  }
+
+  @Nonnull
+  private static Map<String, Object> sampleIdContainer(final long id, @Nonnull final String type, @Nonnull final String psn) {
+    return [
+        (AbstractEntity.ID)                  : id,
+        (SampleIdContainer.PSN)              : psn,
+        (SampleIdContainer.ID_CONTAINER_TYPE): [(IdContainerType.CODE): type]
+    ]
+  }
+
+  @Nonnull
+  private Map<String, Object> precisionDate(@Nonnull final Random random) {
+    final long epochSecond = fromEpochSecond + (long) (random.nextDouble() * (toEpochSecond - fromEpochSecond))
+    final String date = DATE_FORMAT.format(Instant.ofEpochSecond(epochSecond).atZone(ZONE))
+    return [(PrecisionDate.DATE): date, (PrecisionDate.PRECISION): pick(random, precisions)]
+  }
+
+  @Nullable
+  private Map<String, Object> optionalPrecisionDate(@Nonnull final Random random) {
+    return missing(random) ? null : precisionDate(random)
+  }
+
+  private long patientId(@Nonnull final Random random) {
+    return random.nextInt(patients) + 1L
+  }
+
+  private boolean missing(@Nonnull final Random random) {
+    return random.nextDouble() < missingRate
+  }
+
+  /**
+   * @return an independent random of the given entity kind and index, so each context map can be created without its predecessors
+   */
+  @Nonnull
+  private Random random(final int kind, final int index) {
+    return new Random(seed * 0x9E3779B97F4A7C15L + kind * 0x100000000L + index)
+  }
+
+  @Nonnull
+  private static <T> T pick(@Nonnull final Random random, @Nonnull final Map<T, Integer> weights) {
+    int remaining = random.nextInt(weights.values().sum() as int)
+    for (final Map.Entry<T, Integer> entry : weights.entrySet()) {
+      remaining -= entry.value
+      if (remaining < 0) {
+        return entry.key
+      }
+    }
+    throw new IllegalStateException("unreachable")
+  }
+
+  private static int requirePositive(final int count, @Nonnull final String name) {
+    if (count < 1) {
+      throw new IllegalArgumentException("The number of $name must be at least 1, but was $count.")
+    }
+    return count
+  }
+
+  @Nonnull
+  private static <T> Map<T, Integer> requireWeights(@Nonnull final Map<T, Integer> weights, @Nonnull final String name) {
+    if (weights.isEmpty() || weights.values().any { it == null || it < 0 } || weights.values().sum() == 0) {
+      throw new IllegalArgumentException("The weights of $name must not be empty or negative, but were $weights.")
+    }
+    return new LinkedHashMap<>(weights)
+  }
+
+  /**
+   * Writes the context maps as NDJSON, one context map per line, and closes the stream.
+   * @return the number of written context maps
+   */
+  static long writeNdjson(@Nonnull final Stream<Map<String, Object>> contextMaps, @Nonnull final File file) {
+    if (file.parentFile != null) {
+      file.parentFile.mkdirs()
+    }
+
+    long count = 0
+    final SequenceWriter writer = MAPPER.writer().withRootValueSeparator("\n").writeValues(file)
+    try {
+      for (final Iterator<Map<String, Object>> it = contextMaps.iterator(); it.hasNext();) {
+        writer.write(it.next())
+        count++
+      }
+      writer.flush()
+    }
+    finally {
+      writer.close()
+      contextMaps.close()
+    }
+    return count
+  }
+
+  /**
+   * @param entity the root entity, 'laborFindingLaborValue' or 'sample'
+   * @return a lazy stream of the given number of context maps of the root entity
+   */
+  @Nonnull
+  Stream<Map<String, Object>> generate(@Nonnull final String entity, final int count) {
+    switch (entity) {
+      case "laborFindingLaborValue":
+        return laborFindingLaborValues(count)
+      case "sample":
+        return samples(count)
+      default:
+        throw new IllegalArgumentException("Unknown entity $entity, expected laborFindingLaborValue or sample.")
+    }
+  }
+
+  /**
+   * @param args the entity 'laborFindingLaborValue' or 'sample', the number of context maps, the NDJSON file and optionally the seed
+   */
+  static void main(final String[] args) {
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Usage: ContextMapGenerator <laborFindingLaborValue|sample> <count> <file> [seed]")
+    }
+
+    final ContextMapGenerator generator = new ContextMapGenerator(args.length > 3 ? Long.parseLong(args[3]) : 0L)
+    final Stream<Map<String, Object>> contextMaps = generator.generate(args[0], Integer.parseInt(args[1]))
+    final long start = System.currentTimeMillis()
+    final long written = writeNdjson(contextMaps, new File(args[2]))
+    LOG.info("Wrote $written ${args[0]} context maps to ${args[2]} in ${System.currentTimeMillis() - start} ms.")
+  }
+}
@@ -0,0 +1,48 @@
+package common
+
+import de.kairos.fhir.dsl.r4.context.Context
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner
+import org.hl7.fhir.r4.model.Resource
+import org.hl7.fhir.r4.model.Specimen
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.stream.Collectors
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertNotEquals
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class ContextMapGeneratorTest {
+
+  @TempDir
+  File tempDir
+
+  @Test
+  void testThatSameSeedGeneratesSameMaps() {
+    final List<Map<String, Object>> first = new ContextMapGenerator(42).samples(100).collect(Collectors.toList())
+    final List<Map<String, Object>> second = new ContextMapGenerator(42).samples(100).collect(Collectors.toList())
+    final List<Map<String, Object>> other = new ContextMapGenerator(43).samples(100).collect(Collectors.toList())
+
+    assertEquals(first, second)
+    assertNotEquals(first, other)
+    assertEquals(new ContextMapGenerator(42).laborFindingLaborValue(7), new ContextMapGenerator(42).laborFindingLaborValue(7))
+  }
+
+  @Test
+  void testThatGeneratedSamplesAreTransformedBySpecimenScript() {
+    final File ndjson = new File(tempDir, "samples.ndjson")
+    assertEquals(200, ContextMapGenerator.writeNdjson(new ContextMapGenerator(42).patients(20).samples(200), ndjson))
+
+    final Fhir4ScriptRunner runner = ScriptRunnerCache.getOrCompile("src/main/groovy/customexport/hdrp/napkon/ibdw/specimen.groovy")
+    final List<Map.Entry<String, Map<String, Object>>> contextMaps = ContextMapReader.read(tempDir).collect(Collectors.toList())
+    assertEquals(200, contextMaps.size())
+
+    final List<Resource> specimens = contextMaps.collect { runner.run(new Context(it.value)) as Resource }.findAll { it?.hasId() }
+
+    // the script filters by the category, the NAPKON id, the rest amount, the reposition date and the organisation unit
+    assertTrue(specimens.size() > 0, "no specimens")
+    specimens.each { assertTrue(it instanceof Specimen, it.class.name) }
+    assertEquals(contextMaps.collect { "Specimen/" + it.value["id"] }.findAll { it in specimens*.id }, specimens*.id)
+  }
+}
@@ -0,0 +1,98 @@
+package common
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.MappingIterator
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import javax.annotation.Nonnull
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
+
+/**
+ * Reads the context maps of a directory as a lazy stream, ordered by file name. Supported files are:
+ * <ul>
+ *   <li>'*.json' with a single context map, named by the file name</li>
+ *   <li>'*.json' with an array of context maps, named by the file name and the index, e.g. 'patients.json[3]'</li>
+ *   <li>'*.ndjson' with one context map per line, named by the file name and the index, e.g. 'patients.ndjson[3]'</li>
+ * </ul>
+ * The files are read with a streaming parser, so only the current context map is kept in memory. A file is closed, when the stream
+ * has read all its context maps and continues with the next file, or when the returned stream is closed.
+ */
+final class ContextMapReader {
+
+  /**
+   * Reads decimals as BigDecimal, as the JsonSlurper does it.
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+
+  private ContextMapReader() {/* hide constructor */}
+
+  /**
+   * @param contextMapDir directory containing the JSON and NDJSON files
+   * @return the context maps by name in the order of the file names and of the entries in a file
+   */
+  @Nonnull
+  static Stream<Map.Entry<String, Map<String, Object>>> read(@Nonnull final File contextMapDir) {
+    if (!contextMapDir.isDirectory()) {
+      throw new IllegalStateException("The given contextMapPath does not exist. Path: ${contextMapDir.path}")
+    }
+
+    final List<File> files = contextMapDir.listFiles()
+        .findAll { it.name.endsWith(".json") || it.name.endsWith(".ndjson") }
+        .sort { it.name }
+
+    return files.stream().flatMap { readFile(it) }
+  }
+
+  @Nonnull
+  private static Stream<Map.Entry<String, Map<String, Object>>> readFile(@Nonnull final File file) {
+    final JsonParser parser = MAPPER.getFactory().createParser(file)
+    try {
+      return readValues(file, parser)
+    }
+    catch (final IOException | RuntimeException e) {
+      parser.close()
+      throw e
+    }
+  }
+
+  /**
+   * @return the context maps of the file, whose parser is closed with the returned stream. The MappingIterator does not own the
+   * given parser, so closing the iterator does not close the file.
+   */
+  @Nonnull
+  private static Stream<Map.Entry<String, Map<String, Object>>> readValues(@Nonnull final File file, @Nonnull final JsonParser parser) {
+    boolean array = false
+
+    if (!file.name.endsWith(".ndjson") && parser.nextToken() == JsonToken.START_ARRAY) {
+      // the iterator must start at the first entry of a wrapped sequence
+      parser.nextToken()
+      array = true
+    }
+
+    final MappingIterator<Map<String, Object>> values = MAPPER.readerFor(Map).readValues(parser)
+    final boolean indexed = array || file.name.endsWith(".ndjson")
+    final Iterator<Map.Entry<String, Map<String, Object>>> entries = new Iterator<Map.Entry<String, Map<String, Object>>>() {
+      private int index = 0
+
+      @Override
+      boolean hasNext() {
+        return values.hasNext()
+      }
+
+      @Override
+      Map.Entry<String, Map<String, Object>> next() {
+        final String name = indexed ? "${file.name}[${index++}]" : file.name
+        return new AbstractMap.SimpleImmutableEntry<>(name, values.next())
+      }
+    }
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED), false)
+        .onClose {
+          values.close()
+          parser.close()
+        }
+  }
+}
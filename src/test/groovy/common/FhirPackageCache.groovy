@@ -0,0 +1,111 @@
+package common
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.hl7.fhir.utilities.npm.NpmPackage
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * On-disk cache of unpacked FHIR packages. Each package tarball is unpacked once into a directory named by the package file name and
+ * the SHA-256 hash of its content, so a changed package gets a new directory. The directory contains the conformance resources
+ * as single JSON files and an index of their resource types, canonical URLs and versions, which is read without parsing the
+ * resources.
+ * <br><br>
+ * The cache directory is 'target/fhir-package-cache' and can be changed by the system property {@value #CACHE_DIR_PROPERTY}.
+ */
+final class FhirPackageCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FhirPackageCache.name)
+
+  public static final String CACHE_DIR_PROPERTY = "fhir.package.cache.dir"
+
+  /**
+   * The resource types, which are loaded by the validation support of the packages.
+   */
+  static final Set<String> RESOURCE_TYPES = Collections.unmodifiableSet(["StructureDefinition", "CodeSystem", "ValueSet"] as Set)
+
+  private static final String INDEX_FILE = "index.json"
+
+  private FhirPackageCache() {/* hide constructor */}
+
+  /**
+   * @param packageFile a FHIR package tarball, e.g. 'de.basisprofil.r4-1.5.4.tgz'
+   * @return the index entries with the keys 'resourceType', 'url', 'version' and 'file', which is the absolute path of the
+   * resource JSON file.
+   */
+  @Nonnull
+  static List<Map<String, String>> getIndex(@Nonnull final File packageFile) {
+    final File packageDir = getPackageDir(packageFile)
+    final File indexFile = new File(packageDir, INDEX_FILE)
+
+    if (!indexFile.exists()) {
+      unpack(packageFile, packageDir)
+    }
+
+    final List<Map<String, String>> index = new JsonSlurper().parse(indexFile) as List<Map<String, String>>
+    return index.collect { final entry ->
+      [resourceType: entry.resourceType, url: entry.url, version: entry.version, file: new File(packageDir, entry.file).path]
+    }
+  }
+
+  /**
+   * @return the hex encoded SHA-256 hash of the package content
+   */
+  @Nonnull
+  static String hash(@Nonnull final File packageFile) {
+    return MessageDigest.getInstance("SHA-256").digest(packageFile.bytes).encodeHex().toString()
+  }
+
+  @Nonnull
+  private static File getPackageDir(@Nonnull final File packageFile) {
+    final File cacheDir = new File(System.getProperty(CACHE_DIR_PROPERTY, "target/fhir-package-cache"))
+    return new File(cacheDir, "${packageFile.name}-${hash(packageFile).substring(0, 16)}")
+  }
+
+  /**
+   * Unpacks into a temporary directory, which is moved at the end, so an interrupted or concurrent run does not leave a
+   * partial package directory.
+   */
+  private static void unpack(@Nonnull final File packageFile, @Nonnull final File packageDir) {
+    final long start = System.currentTimeMillis()
+    packageDir.parentFile.mkdirs()
+    final File tempDir = Files.createTempDirectory(packageDir.parentFile.toPath(), packageDir.name).toFile()
+
+    final NpmPackage npmPackage = packageFile.withInputStream { NpmPackage.fromPackage(it) }
+    final NpmPackage.NpmPackageFolder folder = npmPackage.getFolders().get("package")
+    final List<Map<String, String>> index = []
+
+    if (folder != null) {
+      RESOURCE_TYPES.each { final resourceType ->
+        folder.getTypes().getOrDefault(resourceType, []).each { final fileName ->
+          final byte[] content = folder.fetchFile(fileName)
+          final Map<String, Object> json = new JsonSlurper().parse(content) as Map<String, Object>
+          if (json.url != null) {
+            new File(tempDir, fileName).bytes = content
+            index.add([resourceType: resourceType, url: json.url as String, version: json.version as String, file: fileName])
+          }
+        }
+      }
+    }
+
+    new File(tempDir, INDEX_FILE).text = JsonOutput.toJson(index)
+
+    try {
+      Files.move(tempDir.toPath(), packageDir.toPath(), StandardCopyOption.ATOMIC_MOVE)
+      LOG.info("Unpacked ${index.size()} resources of ${packageFile.name} in ${System.currentTimeMillis() - start} ms")
+    }
+    catch (final IOException e) {
+      tempDir.deleteDir()
+      // unpacked by a concurrent run in the meantime, otherwise the move itself failed, e.g. it is not supported or not permitted
+      if (!new File(packageDir, INDEX_FILE).isFile()) {
+        throw e
+      }
+    }
+  }
+}
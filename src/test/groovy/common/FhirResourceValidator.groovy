@@ -2,20 +2,23 @@ package common
 
 import ca.uhn.fhir.context.FhirContext
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport
+import ca.uhn.fhir.context.support.IValidationSupport
 import ca.uhn.fhir.validation.FhirValidator
 import ca.uhn.fhir.validation.ResultSeverityEnum
 import ca.uhn.fhir.validation.ValidationResult
 import org.hl7.fhir.common.hapi.validation.support.CachingValidationSupport
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport
-import org.hl7.fhir.common.hapi.validation.support.NpmPackageValidationSupport
 import org.hl7.fhir.common.hapi.validation.support.SnapshotGeneratingValidationSupport
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain
 import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator
 import org.hl7.fhir.r4.model.Resource
 
 import javax.annotation.Nonnull
-import javax.annotation.Nullable
-import java.nio.file.Paths
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 import static org.junit.jupiter.api.Assertions.fail
 
@@ -28,17 +31,45 @@ import static org.junit.jupiter.api.Assertions.fail
  *   final def validator = new FhirResourceValidator("fhirpackages/mii")
  *}
  * </pre>
+ * The validator can be used by several threads. Each thread validates with its own {@link FhirInstanceValidator}, which share one
+ * {@link CachingValidationSupport}. {@link #validateAll} validates a batch of resources on a pool of worker threads.
+ * The results are stored in a {@link ValidationResultCache}, so unchanged resources are not validated again in the next run.
  */
 class FhirResourceValidator {
 
-  private final FhirValidator validator
+  /**
+   * The version of the settings of {@link #setUpValidationSupport} and {@link #createValidator}. Increase it with every change of the
+   * settings, so the {@link ValidationResultCache} validates the resources again.
+   */
+  static final int SETTINGS_VERSION = 1
+
+  private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+      { final Runnable runnable ->
+        final Thread thread = new Thread(runnable, "fhir-validator-worker")
+        thread.setDaemon(true)
+        return thread
+      })
+
+  private final FhirContext context
+  private final IValidationSupport validationSupport
+  private final ValidationResultCache resultCache
+  private final ThreadLocal<FhirValidator> validators = ThreadLocal.withInitial { createValidator() }
+
+  /**
+   * Errors of resources validated by {@link #validateAll}, which are reported by the next {@link #validate} of the same instance.
+   * Weak keys, because a test may skip the validation of some resources.
+   */
+  private final Map<Resource, List<String>> prevalidatedErrors = Collections.synchronizedMap(new WeakHashMap<>())
 
   FhirResourceValidator(@Nonnull final String packagePath) {
-    this.validator = setUpValidator(packagePath)
+    this.context = FhirContext.forR4()
+    final IndexedPackageValidationSupport packageValidationSupport = loadPackages(context, packagePath)
+    this.validationSupport = setUpValidationSupport(context, packageValidationSupport)
+    this.resultCache = new ValidationResultCache(packageValidationSupport.getPackageSetHash(), SETTINGS_VERSION)
   }
 
-  @Nullable
-  private static FhirValidator setUpValidator(@Nonnull final String packagePath) {
+  @Nonnull
+  private static IndexedPackageValidationSupport loadPackages(@Nonnull final FhirContext context, @Nonnull final String packagePath) {
 
     final URL resourceUrl = FhirResourceValidator.class.classLoader.getResource(packagePath)
 
@@ -53,24 +84,31 @@ class FhirResourceValidator {
       throw new IllegalStateException("The provided path for the FHIR packages is invalid. Path: ${packageDirFile.path}")
     }
 
-    final FhirContext context = FhirContext.forR4()
+    // the packages are unpacked once into the FhirPackageCache and their resources are parsed on first use
+    final IndexedPackageValidationSupport packageValidationSupport = new IndexedPackageValidationSupport(context)
 
-
-    final NpmPackageValidationSupport npmPackageValidationSupport = new NpmPackageValidationSupport(context)
-
-    packageDirFile.eachFile { final file ->
+    packageDirFile.listFiles().findAll { it.name.endsWith(".tgz") }.sort { it.name }.each { final file ->
       println("Try to resolve package file " + file.name)
-      npmPackageValidationSupport.loadPackageFromClasspath(Paths.get(packagePath).resolve(file.name).toString())
+      packageValidationSupport.loadPackage(file)
     }
+    return packageValidationSupport
+  }
 
+  @Nonnull
+  private static IValidationSupport setUpValidationSupport(@Nonnull final FhirContext context,
+                                                           @Nonnull final IndexedPackageValidationSupport packageValidationSupport) {
     final ValidationSupportChain supportChain = new ValidationSupportChain(
-        npmPackageValidationSupport,
+        packageValidationSupport,
         new DefaultProfileValidationSupport(context),
         new InMemoryTerminologyServerValidationSupport(context),
-        new SnapshotGeneratingValidationSupport(context))
+        new PersistentSnapshotValidationSupport(new SnapshotGeneratingValidationSupport(context),
+            packageValidationSupport.getPackageSetHash()))
 
-    final CachingValidationSupport validationSupport = new CachingValidationSupport(supportChain)
+    return new CachingValidationSupport(supportChain)
+  }
 
+  @Nonnull
+  private FhirValidator createValidator() {
     final FhirValidator validator = context.newValidator()
 
     final FhirInstanceValidator instanceValidator = new FhirInstanceValidator(validationSupport)
@@ -79,8 +117,61 @@ class FhirResourceValidator {
     validator
   }
 
+  /**
+   * Validates the resources on a pool of worker threads. The errors are remembered, so a following {@link #validate} of one of the
+   * resource instances reports them without validating the resource again.
+   * @return the error messages of all resources with errors, in the order of the given resources
+   */
+  @Nonnull
+  Map<Resource, List<String>> validateAll(@Nonnull final Collection<? extends Resource> resources) {
+    final List<Callable<List<String>>> tasks = resources.collect { final resource ->
+      return { findErrors(resource) } as Callable<List<String>>
+    }
+    final List<Future<List<String>>> futures = WORKERS.invokeAll(tasks)
+
+    final Map<Resource, List<String>> errorsByResource = new LinkedHashMap<>()
+    resources.eachWithIndex { final Resource resource, final int index ->
+      final List<String> errors = getResult(futures.get(index))
+      prevalidatedErrors.put(resource, errors)
+      if (!errors.isEmpty()) {
+        errorsByResource.put(resource, errors)
+      }
+    }
+    return errorsByResource
+  }
+
+  @Nonnull
+  private static List<String> getResult(@Nonnull final Future<List<String>> future) {
+    try {
+      return future.get()
+    }
+    catch (final ExecutionException e) {
+      throw e.cause
+    }
+  }
+
   void validate(@Nonnull final Resource resource) {
-    final ValidationResult result = validator.validateWithResult(resource)
+    final List<String> prevalidated = prevalidatedErrors.remove(resource)
+    final List<String> errors = prevalidated != null ? prevalidated : findErrors(resource)
+
+    if (!errors.isEmpty()) {
+      final String message = errors.join("\n")
+      fail("Resource Validation failed for entries:\n" + message)
+    }
+  }
+
+  /**
+   * Returns the stored errors of an equal resource, which has been validated before, e.g. in a previous run.
+   */
+  @Nonnull
+  private List<String> findErrors(@Nonnull final Resource resource) {
+    final String key = resultCache.key(context.newJsonParser().encodeResourceToString(resource))
+    final List<String> cachedErrors = resultCache.get(key)
+    if (cachedErrors != null) {
+      return cachedErrors
+    }
+
+    final ValidationResult result = validators.get().validateWithResult(resource)
 
     final List<String> errors = []
 
@@ -90,9 +181,7 @@ class FhirResourceValidator {
           .each { errors.add(it.toString()) }
     }
 
-    if (!errors.isEmpty()) {
-      final String message = errors.join("\n")
-      fail("Resource Validation failed for entries:\n" + message)
-    }
+    resultCache.put(key, errors)
+    return errors
   }
 }
@@ -0,0 +1,90 @@
+package common
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import java.lang.management.ManagementFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * JVM wide registry of {@link FhirResourceValidator}s. Loading the FHIR packages of a directory takes several seconds and a few hundred MB
+ * heap, so each package path is loaded once and the validator is shared by all test classes of a surefire run.
+ * <br><br>
+ * {@link #warmUp} starts loading the packages on a background thread, e.g. while the scripts of a test class are transforming.
+ * {@link #getValidator} waits for the warm up of the package path or starts loading it on the calling thread.
+ */
+final class FhirResourceValidatorRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FhirResourceValidatorRegistry.name)
+
+  private static final ConcurrentMap<String, CompletableFuture<FhirResourceValidator>> VALIDATORS = new ConcurrentHashMap<>()
+
+  private static final ExecutorService WARM_UP_EXECUTOR = Executors.newCachedThreadPool({ final Runnable runnable ->
+    final Thread thread = new Thread(runnable, "fhir-validator-warm-up")
+    thread.setDaemon(true)
+    return thread
+  })
+
+  private FhirResourceValidatorRegistry() {/* hide constructor */}
+
+  /**
+   * Starts loading the validator of the given package path in the background, if it has not been started before.
+   * @param packagePath path to the FHIR packages relative to 'src/test/resources', e.g. 'fhirpackages/mii'
+   */
+  @Nonnull
+  static CompletableFuture<FhirResourceValidator> warmUp(@Nonnull final String packagePath) {
+    return VALIDATORS.computeIfAbsent(packagePath) {
+      CompletableFuture.supplyAsync({ createValidator(packagePath) }, WARM_UP_EXECUTOR)
+    }
+  }
+
+  /**
+   * @param packagePath path to the FHIR packages relative to 'src/test/resources', e.g. 'fhirpackages/mii'
+   * @return the shared validator of the package path
+   */
+  @Nonnull
+  static FhirResourceValidator getValidator(@Nonnull final String packagePath) {
+    final CompletableFuture<FhirResourceValidator> created = new CompletableFuture<>()
+    final CompletableFuture<FhirResourceValidator> existing = VALIDATORS.putIfAbsent(packagePath, created)
+    final CompletableFuture<FhirResourceValidator> future = existing != null ? existing : created
+
+    if (existing == null) {
+      // loaded outside of the map, so loading does not block the registry
+      try {
+        created.complete(createValidator(packagePath))
+      }
+      catch (final Exception e) {
+        created.completeExceptionally(e)
+      }
+    }
+
+    try {
+      return future.join()
+    }
+    catch (final CompletionException e) {
+      // a failed warm up is not cached, so the next test class tries again and reports its own error
+      VALIDATORS.remove(packagePath, future)
+      throw e.cause
+    }
+  }
+
+  @Nonnull
+  private static FhirResourceValidator createValidator(@Nonnull final String packagePath) {
+    final long heapBefore = usedHeap()
+    final long start = System.currentTimeMillis()
+    final FhirResourceValidator validator = new FhirResourceValidator(packagePath)
+    LOG.info("Set up validator for $packagePath on ${Thread.currentThread().name} in ${System.currentTimeMillis() - start} ms, " +
+        "heap usage increased by ${(usedHeap() - heapBefore) >> 20} MB")
+    return validator
+  }
+
+  private static long usedHeap() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()
+  }
+}
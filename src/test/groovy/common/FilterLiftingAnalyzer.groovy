@@ -0,0 +1,485 @@
+package common
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.codehaus.groovy.ast.ModuleNode
+import org.codehaus.groovy.ast.expr.BinaryExpression
+import org.codehaus.groovy.ast.expr.BooleanExpression
+import org.codehaus.groovy.ast.expr.CastExpression
+import org.codehaus.groovy.ast.expr.ClassExpression
+import org.codehaus.groovy.ast.expr.ClosureExpression
+import org.codehaus.groovy.ast.expr.ConstantExpression
+import org.codehaus.groovy.ast.expr.DeclarationExpression
+import org.codehaus.groovy.ast.expr.Expression
+import org.codehaus.groovy.ast.expr.ListExpression
+import org.codehaus.groovy.ast.expr.MethodCallExpression
+import org.codehaus.groovy.ast.expr.NotExpression
+import org.codehaus.groovy.ast.expr.PropertyExpression
+import org.codehaus.groovy.ast.expr.TupleExpression
+import org.codehaus.groovy.ast.expr.VariableExpression
+import org.codehaus.groovy.ast.stmt.BlockStatement
+import org.codehaus.groovy.ast.stmt.ExpressionStatement
+import org.codehaus.groovy.ast.stmt.IfStatement
+import org.codehaus.groovy.ast.stmt.ReturnStatement
+import org.codehaus.groovy.ast.stmt.Statement
+import org.codehaus.groovy.control.CompilationFailedException
+import org.codehaus.groovy.control.CompilationUnit
+import org.codehaus.groovy.control.Phases
+import org.codehaus.groovy.syntax.Types
+
+import javax.annotation.Nonnull
+import javax.annotation.Nullable
+
+/**
+ * Finds the leading early returns of export scripts, which can be replaced by "filters" of the ExportResourceMappingConfig.json.
+ * A filter of the mapping config is part of the database query, while an early return of the script runs after the complete object
+ * graph of the record has been loaded.
+ * <br><br>
+ * The analyzer parses the script without compiling it and inspects the statements of the builder closure, e.g. {@code observation {}},
+ * up to the first statement, which is neither a declaration nor a guard. A guard is an {@code if} without else, whose body only
+ * returns, optionally after method calls like {@code metrics.filteredBy("no vital sign")}. Supported conditions are comparisons of a {@code context.source[...]} path of the root entity with a constant, an enum
+ * value or a list of them, optionally negated, cast with {@code as} or combined by {@code ||}, also if the path or the list check is
+ * assigned to a local variable first:
+ * <pre>
+ * {@code
+ *   if (context.source[laborMapping().laborFinding().laborMethod().category()] as LaborMethodCategory != LaborMethodCategory.VITALSIGN) {
+ *     return
+ *   }
+ *}
+ * </pre>
+ * results in the filter {@code {"filterName": "laborFinding.laborMethod.category", "comparator": "EQUALS", "value": "VITALSIGN"}}
+ * for the records to keep. The comparators are EQUALS, NOT_EQUALS, IN and NOT_IN. A filter is marked as known, if the same filter name
+ * and comparator is already used by a mapping config of this project for the same entity. Other filters must be checked against the
+ * AdditionalFilterDocumentation.json, which HDRP writes to the custom-mapping-dir.
+ * <br><br>
+ * NOT_EQUALS and NOT_IN filters are marked as not null-safe and left out of the config snippet: the script keeps the records without
+ * value, e.g. {@code if (category == "LABOR") return}, while the database query drops them. Guards on another root entity than the
+ * entity of the mapping config are reported as unsupported.
+ * <br><br>
+ * From the command line: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=common.FilterLiftingAnalyzer
+ * -Dexec.args="src/main/groovy/customexport/patientfinder/hull"}
+ */
+final class FilterLiftingAnalyzer {
+
+  private static final String CONFIG_FILE = "ExportResourceMappingConfig.json"
+
+  /**
+   * Filter names and comparators of all mapping configs of the project by entity, e.g. 'LABOR_MAPPING' to
+   * 'laborFinding.laborMethod.code NOT_IN'.
+   */
+  private final Map<String, Set<String>> knownFilters
+
+  FilterLiftingAnalyzer(@Nonnull final File configRoot) {
+    this.knownFilters = collectKnownFilters(configRoot)
+  }
+
+  /**
+   * @param script the Groovy export script
+   * @return the suggestion for the script with the keys 'script', 'entity', 'template', 'resource', 'filters', 'unsupported' and
+   * 'configured'.
+   * Each filter has the keys 'filterName', 'comparator', 'value', 'known' and 'nullSafe'. 'unsupported' contains the guards, which
+   * cannot be lifted, and 'configured' the filters, which the mapping config next to the script already contains for the template.
+   */
+  @Nonnull
+  Map<String, Object> analyze(@Nonnull final File script) {
+    final String template = script.name - ~/\.groovy$/
+    final Map<String, Object> mapping = findMapping(script.parentFile, template)
+    final List<Map<String, Object>> filters = []
+    final List<String> unsupported = []
+    String entity = mapping?.selectFromCxxEntity as String
+
+    final ModuleNode module = parse(script)
+    final ClosureExpression builder = findBuilder(module)
+    if (builder != null) {
+      final Map<String, Expression> constants = scriptConstants(module)
+      final Map<String, Expression> locals = [:]
+      for (final Statement statement : statements(builder.code)) {
+        if (isDeclaration(statement)) {
+          final DeclarationExpression declaration = (statement as ExpressionStatement).expression as DeclarationExpression
+          locals.put(declaration.variableExpression.name, declaration.rightExpression)
+          continue
+        }
+
+        if (!isGuard(statement)) {
+          break
+        }
+
+        final Expression condition = ((statement as IfStatement).booleanExpression as BooleanExpression).expression
+        final List<Map<String, Object>> lifted = new Guard(constants: constants, locals: locals).keepFilters(condition)
+        // without mapping config, the first lifted guard determines the entity
+        entity = entity ?: lifted?.first()?.with { toEntityType(it.rootEntity as String) }
+        if (lifted == null || lifted.any { toEntityType(it.rootEntity as String) != entity }) {
+          unsupported.add(condition.text)
+          continue
+        }
+
+        lifted.each {
+          it.remove("rootEntity")
+          filters.add(it)
+        }
+      }
+    }
+
+    filters.each {
+      it.put("known", knownFilters.getOrDefault(entity, [] as Set).contains("${it.filterName} ${it.comparator}".toString()))
+      it.put("nullSafe", it.comparator in ["EQUALS", "IN"])
+    }
+    final List<Map<String, Object>> configured = (mapping?.filters ?: []) as List<Map<String, Object>>
+
+    return [
+        script     : script.path,
+        entity     : entity,
+        template   : template,
+        resource   : mapping?.exportToFhirResource,
+        filters    : filters,
+        unsupported: unsupported,
+        configured : configured
+    ] as Map<String, Object>
+  }
+
+  /**
+   * @return the mapping config entry with the suggested null-safe filters, which are not configured yet, or null, if there is nothing
+   * to add
+   */
+  @Nullable
+  static String configSnippet(@Nonnull final Map<String, Object> suggestion) {
+    final List<Map<String, Object>> configured = suggestion.configured as List<Map<String, Object>>
+    final List<Map<String, Object>> missing = (suggestion.filters as List<Map<String, Object>>).findAll { final Map<String, Object> filter ->
+      filter.nullSafe && !configured.any { it.filterName == filter.filterName && it.comparator == filter.comparator && it.value == filter.value }
+    }
+    if (missing.isEmpty()) {
+      return null
+    }
+
+    return JsonOutput.prettyPrint(JsonOutput.toJson([
+        selectFromCxxEntity : suggestion.entity,
+        transformByTemplate : suggestion.template,
+        exportToFhirResource: suggestion.resource ?: "<resource type>",
+        filters             : configured + missing.collect { [filterName: it.filterName, comparator: it.comparator, value: it.value] }
+    ]))
+  }
+
+  /**
+   * Prints the suggestions for all scripts of the given directories or files.
+   */
+  static void main(final String[] args) {
+    final FilterLiftingAnalyzer analyzer = new FilterLiftingAnalyzer(new File("src/main/groovy/customexport"))
+    final List<File> scripts = (args.length == 0 ? ["src/main/groovy/customexport"] as String[] : args).collectMany { final String path ->
+      final File file = new File(path)
+      final List<File> files = []
+      if (file.isDirectory()) {
+        file.eachFileRecurse { if (it.name.endsWith(".groovy")) files.add(it) }
+      }
+      else {
+        files.add(file)
+      }
+      return files.sort()
+    }
+
+    scripts.each { final File script ->
+      final Map<String, Object> suggestion = analyzeOrNull(analyzer, script)
+      if (suggestion == null) {
+        return
+      }
+      final String snippet = configSnippet(suggestion)
+      final List<Map<String, Object>> filters = suggestion.filters as List<Map<String, Object>>
+      if (snippet == null && (suggestion.unsupported as List).isEmpty() && filters.every { it.nullSafe }) {
+        return
+      }
+
+      println("${script.path} (${suggestion.entity})")
+      filters.each {
+        println("  filter ${it.filterName} ${it.comparator} ${it.value}" +
+            (it.nullSafe ? "" : " - not null-safe, the script keeps records without value, the filter drops them") +
+            (it.known ? "" : " - check AdditionalFilterDocumentation.json"))
+      }
+      (suggestion.unsupported as List<String>).each { println("  not liftable: $it") }
+      if (snippet != null) {
+        println(snippet.readLines().collect { "  $it" }.join("\n"))
+      }
+    }
+  }
+
+  @Nullable
+  private static Map<String, Object> analyzeOrNull(@Nonnull final FilterLiftingAnalyzer analyzer, @Nonnull final File script) {
+    try {
+      return analyzer.analyze(script)
+    }
+    catch (final CompilationFailedException e) {
+      println("${script.path} cannot be parsed: ${e.message}")
+      return null
+    }
+  }
+
+  @Nonnull
+  private static ModuleNode parse(@Nonnull final File script) {
+    final CompilationUnit unit = new CompilationUnit()
+    unit.addSource(script)
+    // the conversion phase builds the AST without resolving the classes, so the scripts need not be on the classpath
+    unit.compile(Phases.CONVERSION)
+    return unit.getAST().getModules().first()
+  }
+
+  /**
+   * @return the closure of the first top level call with a single closure argument, e.g. 'observation { ... }'
+   */
+  @Nullable
+  private static ClosureExpression findBuilder(@Nonnull final ModuleNode module) {
+    for (final Statement statement : module.statementBlock.statements) {
+      if (statement instanceof ExpressionStatement && statement.expression instanceof MethodCallExpression) {
+        final MethodCallExpression call = statement.expression as MethodCallExpression
+        final List<Expression> arguments = (call.arguments as TupleExpression).expressions
+        if (call.implicitThis && arguments.size() == 1 && arguments[0] instanceof ClosureExpression) {
+          return arguments[0] as ClosureExpression
+        }
+      }
+    }
+    return null
+  }
+
+  /**
+   * @return the literal values of the top level declarations of the script, e.g. 'final String laborMethodName = "MP_Lab"'
+   */
+  @Nonnull
+  private static Map<String, Expression> scriptConstants(@Nonnull final ModuleNode module) {
+    return module.statementBlock.statements.findAll { isDeclaration(it) }.collectEntries {
+      final DeclarationExpression declaration = (it as ExpressionStatement).expression as DeclarationExpression
+      [(declaration.variableExpression.name): declaration.rightExpression]
+    } as Map<String, Expression>
+  }
+
+  @Nonnull
+  private static List<Statement> statements(@Nonnull final Statement statement) {
+    return statement instanceof BlockStatement ? (statement as BlockStatement).statements : [statement]
+  }
+
+  private static boolean isDeclaration(@Nonnull final Statement statement) {
+    return statement instanceof ExpressionStatement && (statement as ExpressionStatement).expression instanceof DeclarationExpression
+  }
+
+  private static boolean isGuard(@Nonnull final Statement statement) {
+    if (!(statement instanceof IfStatement) || !(statement as IfStatement).elseBlock.isEmpty()) {
+      return false
+    }
+    // calls before the return are allowed, e.g. metrics.filteredBy("no vital sign"), but no assignments
+    final List<Statement> body = statements((statement as IfStatement).ifBlock)
+    return !body.isEmpty() && body.last() instanceof ReturnStatement && (body.last() as ReturnStatement).isReturningNullOrVoid() &&
+        body.init().every { it instanceof ExpressionStatement && (it as ExpressionStatement).expression instanceof MethodCallExpression }
+  }
+
+  @Nullable
+  private Map<String, Object> findMapping(@Nonnull final File dir, @Nonnull final String template) {
+    final File config = new File(dir, CONFIG_FILE)
+    if (!config.isFile()) {
+      return null
+    }
+    final Map<String, Object> json = new JsonSlurper().parse(config) as Map<String, Object>
+    return (json.mappings as List<Map<String, Object>>)?.find { it.transformByTemplate == template }
+  }
+
+  @Nonnull
+  private static Map<String, Set<String>> collectKnownFilters(@Nonnull final File configRoot) {
+    final Map<String, Set<String>> known = [:]
+    if (!configRoot.isDirectory()) {
+      return known
+    }
+
+    configRoot.eachFileRecurse { final File file ->
+      if (file.name != CONFIG_FILE) {
+        return
+      }
+      final Map<String, Object> json = new JsonSlurper().parse(file) as Map<String, Object>
+      (json.mappings as List<Map<String, Object>>)?.each { final Map<String, Object> mapping ->
+        (mapping.filters as List<Map<String, Object>>)?.each {
+          known.computeIfAbsent(mapping.selectFromCxxEntity as String) { new TreeSet<String>() }.add("${it.filterName} ${it.comparator}".toString())
+        }
+      }
+    }
+    return known
+  }
+
+  /**
+   * @return the entity type of the mapping config for a root entity of the metamodel, e.g. 'LABOR_MAPPING' for 'laborMapping'
+   */
+  @Nonnull
+  private static String toEntityType(@Nonnull final String rootEntity) {
+    return rootEntity.replaceAll(/([a-z0-9])([A-Z])/, '$1_$2').toUpperCase()
+  }
+
+  /**
+   * Translates the condition of a guard into the filters of the records to keep.
+   */
+  private static final class Guard {
+
+    Map<String, Expression> constants
+    Map<String, Expression> locals
+
+    /**
+     * @return the filters, which keep the records not returned by the condition, or null, if the condition cannot be lifted
+     */
+    @Nullable
+    List<Map<String, Object>> keepFilters(@Nonnull final Expression condition) {
+      final Expression expression = resolve(condition)
+      if (expression instanceof BinaryExpression && (expression as BinaryExpression).operation.type == Types.LOGICAL_OR) {
+        // return if a or b, keeps not a and not b
+        final List<Map<String, Object>> left = keepFilters((expression as BinaryExpression).leftExpression)
+        final List<Map<String, Object>> right = keepFilters((expression as BinaryExpression).rightExpression)
+        return left == null || right == null ? null : left + right
+      }
+
+      final Map<String, Object> filter = returnFilter(expression)
+      return filter == null ? null : [negate(filter)]
+    }
+
+    /**
+     * @return the filter of the records, for which the expression is true, or null, if the expression is not supported
+     */
+    @Nullable
+    private Map<String, Object> returnFilter(@Nonnull final Expression condition) {
+      final Expression expression = resolve(condition)
+
+      if (expression instanceof NotExpression) {
+        final Map<String, Object> filter = returnFilter((expression as NotExpression).expression)
+        return filter == null ? null : negate(filter)
+      }
+
+      if (expression instanceof BinaryExpression) {
+        final BinaryExpression binary = expression as BinaryExpression
+        final int operation = binary.operation.type
+        if (operation == Types.COMPARE_EQUAL || operation == Types.COMPARE_NOT_EQUAL) {
+          final Map<String, Object> filter = compare(binary.leftExpression, binary.rightExpression) ?:
+              compare(binary.rightExpression, binary.leftExpression)
+          if (filter != null && operation == Types.COMPARE_NOT_EQUAL) {
+            return negate(filter)
+          }
+          return filter
+        }
+
+        if (operation == Types.KEYWORD_IN) {
+          return contains(binary.rightExpression, binary.leftExpression)
+        }
+      }
+
+      if (expression instanceof MethodCallExpression && (expression as MethodCallExpression).methodAsString == "contains") {
+        final MethodCallExpression call = expression as MethodCallExpression
+        final List<Expression> arguments = (call.arguments as TupleExpression).expressions
+        return arguments.size() == 1 ? contains(call.objectExpression, arguments[0]) : null
+      }
+
+      return null
+    }
+
+    @Nullable
+    private Map<String, Object> compare(@Nonnull final Expression pathExpression, @Nonnull final Expression valueExpression) {
+      final List<String> path = sourcePath(pathExpression)
+      final Object value = literal(valueExpression)
+      if (path == null || value == null || value instanceof List) {
+        return null
+      }
+      return filter(path, "EQUALS", value)
+    }
+
+    @Nullable
+    private Map<String, Object> contains(@Nonnull final Expression listExpression, @Nonnull final Expression pathExpression) {
+      final List<String> path = sourcePath(pathExpression)
+      final Object values = literal(listExpression)
+      if (path == null || !(values instanceof List)) {
+        return null
+      }
+      return filter(path, "IN", values)
+    }
+
+    @Nonnull
+    private static Map<String, Object> filter(@Nonnull final List<String> path, @Nonnull final String comparator, @Nonnull final Object value) {
+      return [rootEntity: path.first(), filterName: path.tail().join("."), comparator: comparator, value: value] as Map<String, Object>
+    }
+
+    @Nonnull
+    private static Map<String, Object> negate(@Nonnull final Map<String, Object> filter) {
+      final Map<String, String> negations = [EQUALS: "NOT_EQUALS", NOT_EQUALS: "EQUALS", IN: "NOT_IN", NOT_IN: "IN"]
+      return filter + [comparator: negations[filter.comparator as String]]
+    }
+
+    /**
+     * @return the root entity followed by the path segments of 'context.source[rootEntity().a().b()]', or null for other expressions
+     */
+    @Nullable
+    private List<String> sourcePath(@Nonnull final Expression expression) {
+      final Expression resolved = resolve(expression)
+      if (!(resolved instanceof BinaryExpression) || (resolved as BinaryExpression).operation.type != Types.LEFT_SQUARE_BRACKET) {
+        return null
+      }
+
+      final BinaryExpression index = resolved as BinaryExpression
+      if (!(index.leftExpression instanceof PropertyExpression) || (index.leftExpression as PropertyExpression).propertyAsString != "source" ||
+          (index.leftExpression as PropertyExpression).objectExpression.text != "context") {
+        return null
+      }
+      return methodChain(index.rightExpression)
+    }
+
+    @Nullable
+    private static List<String> methodChain(@Nonnull final Expression expression) {
+      if (!(expression instanceof MethodCallExpression)) {
+        return null
+      }
+
+      final MethodCallExpression call = expression as MethodCallExpression
+      if (!(call.arguments as TupleExpression).expressions.isEmpty()) {
+        return null
+      }
+      if (call.implicitThis) {
+        return [call.methodAsString]
+      }
+      final List<String> parent = methodChain(call.objectExpression)
+      return parent == null ? null : parent + call.methodAsString
+    }
+
+    /**
+     * @return the value of a constant, the name of an enum value, e.g. 'VITALSIGN' of 'LaborMethodCategory.VITALSIGN', or a list of
+     * them, or null for other expressions
+     */
+    @Nullable
+    private Object literal(@Nonnull final Expression expression) {
+      final Expression resolved = resolve(expression)
+      if (resolved instanceof ConstantExpression) {
+        return (resolved as ConstantExpression).value
+      }
+      if (resolved instanceof PropertyExpression && (resolved as PropertyExpression).objectExpression instanceof VariableExpression) {
+        // an enum value like LaborMethodCategory.VITALSIGN, the class is not resolved in the conversion phase
+        final String owner = ((resolved as PropertyExpression).objectExpression as VariableExpression).name
+        return Character.isUpperCase(owner.charAt(0)) ? (resolved as PropertyExpression).propertyAsString : null
+      }
+      if (resolved instanceof PropertyExpression && (resolved as PropertyExpression).objectExpression instanceof ClassExpression) {
+        return (resolved as PropertyExpression).propertyAsString
+      }
+      if (resolved instanceof MethodCallExpression && (resolved as MethodCallExpression).methodAsString in ["toString", "name"]) {
+        return literal((resolved as MethodCallExpression).objectExpression)
+      }
+      if (resolved instanceof ListExpression) {
+        final List<Object> values = (resolved as ListExpression).expressions.collect { literal(it) }
+        return values.contains(null) ? null : values
+      }
+      return null
+    }
+
+    /**
+     * Unwraps casts and boolean wrappers and replaces local variables and script constants by their declared expression.
+     */
+    @Nonnull
+    private Expression resolve(@Nonnull final Expression expression) {
+      if (expression instanceof CastExpression) {
+        return resolve((expression as CastExpression).expression)
+      }
+      if (expression instanceof BooleanExpression && !(expression instanceof NotExpression)) {
+        return resolve((expression as BooleanExpression).expression)
+      }
+      if (expression instanceof VariableExpression) {
+        final String name = (expression as VariableExpression).name
+        final Expression declared = locals[name] ?: constants[name]
+        return declared != null ? resolve(declared) : expression
+      }
+      return expression
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package common
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertFalse
+import static org.junit.jupiter.api.Assertions.assertNull
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class FilterLiftingAnalyzerTest {
+
+  private static final File CUSTOM_EXPORT = new File("src/main/groovy/customexport")
+
+  @TempDir
+  File tempDir
+
+  @Test
+  void testThatConfiguredFilterIsFound() {
+    final Map<String, Object> suggestion = new FilterLiftingAnalyzer(CUSTOM_EXPORT)
+        .analyze(new File(CUSTOM_EXPORT, "patientfinder/hull/observation.groovy"))
+
+    assertEquals("LABOR_MAPPING", suggestion.entity)
+    assertEquals([[filterName: "laborFinding.laborMethod.category", comparator: "EQUALS", value: "VITALSIGN", known: true, nullSafe: true]],
+        suggestion.filters)
+    assertNull(FilterLiftingAnalyzer.configSnippet(suggestion))
+  }
+
+  @Test
+  void testThatListCheckOfLocalVariableIsLifted() {
+    final Map<String, Object> suggestion = new FilterLiftingAnalyzer(CUSTOM_EXPORT)
+        .analyze(new File(CUSTOM_EXPORT, "hdrp/napkon/ibdw/specimen.groovy"))
+
+    assertEquals("SAMPLE", suggestion.entity)
+    assertEquals([[filterName: "sampleCategory", comparator: "IN", value: ["DERIVED", "MASTER", "ALIQUOTGROUP"], known: false, nullSafe: true]],
+        suggestion.filters)
+    assertTrue(FilterLiftingAnalyzer.configSnippet(suggestion).contains('"comparator": "IN"'))
+  }
+
+  @Test
+  void testThatGuardsUpToFirstAssignmentAreAnalyzed() {
+    final File script = new File(tempDir, "observation.groovy")
+    script.text = '''
+        final String laborMethodName = "MP_Lab"
+        observation {
+          final String code = context.source[laborMapping().laborFinding().laborMethod().code()]
+          if (code != laborMethodName || context.source[laborMapping().mappingType()] as String == "SAMPLELABORMAPPING") {
+            return
+          }
+          if (context.source[laborMapping().laborFinding().shortName()] in ["A", "B"]) {
+            return
+          }
+          if (context.source[laborMapping().laborFinding().findingDate()] && code) {
+            return
+          }
+          id = "Observation/" + context.source[laborMapping().id()]
+          if (context.source[laborMapping().laborFinding().laborMethod().category()] != "LABOR") {
+            return
+          }
+        }
+        '''
+
+    final Map<String, Object> suggestion = new FilterLiftingAnalyzer(tempDir).analyze(script)
+
+    assertEquals("LABOR_MAPPING", suggestion.entity)
+    assertEquals([
+        [filterName: "laborFinding.laborMethod.code", comparator: "EQUALS", value: "MP_Lab", known: false, nullSafe: true],
+        [filterName: "mappingType", comparator: "NOT_EQUALS", value: "SAMPLELABORMAPPING", known: false, nullSafe: false],
+        [filterName: "laborFinding.shortName", comparator: "NOT_IN", value: ["A", "B"], known: false, nullSafe: false]
+    ], suggestion.filters)
+    assertEquals(1, (suggestion.unsupported as List).size())
+
+    final String snippet = FilterLiftingAnalyzer.configSnippet(suggestion)
+    assertTrue(snippet.contains('"laborFinding.laborMethod.code"'))
+    assertFalse(snippet.contains("NOT_"))
+  }
+
+  @Test
+  void testThatGuardsOnAnotherRootEntityAreUnsupported() {
+    final File dir = new File(tempDir, "other")
+    dir.mkdirs()
+    new File(dir, "ExportResourceMappingConfig.json").text = '''
+        {"mappings": [{"selectFromCxxEntity": "SAMPLE", "transformByTemplate": "specimen", "exportToFhirResource": "Specimen"}]}
+        '''
+    final File script = new File(dir, "specimen.groovy")
+    script.text = '''
+        specimen {
+          if (context.source[patientMasterDataAnonymous().genderType()] != "MALE") {
+            return
+          }
+          if (context.source[sample().sampleCategory()] != "MASTER") {
+            return
+          }
+        }
+        '''
+
+    final Map<String, Object> suggestion = new FilterLiftingAnalyzer(tempDir).analyze(script)
+
+    assertEquals("SAMPLE", suggestion.entity)
+    assertEquals([[filterName: "sampleCategory", comparator: "EQUALS", value: "MASTER", known: false, nullSafe: true]], suggestion.filters)
+    assertEquals(1, (suggestion.unsupported as List).size())
+    assertTrue((suggestion.unsupported as List<String>).first().contains("patientMasterDataAnonymous"))
+  }
+}
@@ -0,0 +1,132 @@
+package common
+
+import ca.uhn.fhir.context.FhirContext
+import ca.uhn.fhir.context.support.IValidationSupport
+import ca.uhn.fhir.context.support.ValidationSupportContext
+import org.hl7.fhir.instance.model.api.IBaseResource
+
+import javax.annotation.Nonnull
+import javax.annotation.Nullable
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Validation support for the conformance resources of FHIR packages, which replaces the NpmPackageValidationSupport in tests.
+ * The packages are read from the index of the {@link FhirPackageCache}, and a resource is parsed, when it is fetched by its
+ * canonical URL for the first time. Most validations only need a small part of the StructureDefinitions of large packages.
+ * <br><br>
+ * If several packages contain the same canonical URL, the package loaded last wins, as in the NpmPackageValidationSupport.
+ */
+class IndexedPackageValidationSupport implements IValidationSupport {
+
+  private final FhirContext context
+  private final Map<String, Map<String, File>> filesByTypeAndUrl = new HashMap<>()
+  private final ConcurrentMap<File, IBaseResource> parsedResources = new ConcurrentHashMap<>()
+  private final SortedMap<String, String> packageHashes = new TreeMap<>()
+
+  IndexedPackageValidationSupport(@Nonnull final FhirContext context) {
+    this.context = context
+    FhirPackageCache.RESOURCE_TYPES.each { filesByTypeAndUrl.put(it, new HashMap<>()) }
+  }
+
+  /**
+   * Adds the resources of the package to the index. Must not be called after the support has been added to a validator.
+   */
+  void loadPackage(@Nonnull final File packageFile) {
+    packageHashes.put(packageFile.name, FhirPackageCache.hash(packageFile))
+    FhirPackageCache.getIndex(packageFile).each { final entry ->
+      final Map<String, File> filesByUrl = filesByTypeAndUrl.get(entry.resourceType)
+      final File file = new File(entry.file)
+      filesByUrl.put(entry.url, file)
+      if (entry.version != null) {
+        filesByUrl.put(entry.url + "|" + entry.version, file)
+      }
+    }
+  }
+
+  /**
+   * @return a SHA-256 hash over the names and hashes of all loaded packages, which changes, if a package is added, removed or updated
+   */
+  @Nonnull
+  String getPackageSetHash() {
+    final MessageDigest digest = MessageDigest.getInstance("SHA-256")
+    packageHashes.each { final name, final hash -> digest.update("$name=$hash\n".getBytes(StandardCharsets.UTF_8)) }
+    return digest.digest().encodeHex().toString()
+  }
+
+  @Override
+  FhirContext getFhirContext() {
+    return context
+  }
+
+  @Override
+  IBaseResource fetchStructureDefinition(final String url) {
+    return fetch("StructureDefinition", url)
+  }
+
+  @Override
+  IBaseResource fetchCodeSystem(final String system) {
+    return fetch("CodeSystem", system)
+  }
+
+  @Override
+  IBaseResource fetchValueSet(final String url) {
+    return fetch("ValueSet", url)
+  }
+
+  @Override
+  boolean isCodeSystemSupported(final ValidationSupportContext validationSupportContext, final String system) {
+    return findFile("CodeSystem", system) != null
+  }
+
+  @Override
+  boolean isValueSetSupported(final ValidationSupportContext validationSupportContext, final String valueSetUrl) {
+    return findFile("ValueSet", valueSetUrl) != null
+  }
+
+  @Override
+  <T extends IBaseResource> List<T> fetchAllStructureDefinitions() {
+    return parseAll(filesByTypeAndUrl.get("StructureDefinition").values()) as List<T>
+  }
+
+  @Override
+  List<IBaseResource> fetchAllConformanceResources() {
+    return parseAll(filesByTypeAndUrl.values().collectMany { it.values() })
+  }
+
+  @Nullable
+  private IBaseResource fetch(@Nonnull final String resourceType, @Nullable final String url) {
+    final File file = findFile(resourceType, url)
+    return file == null ? null : parse(file)
+  }
+
+  /**
+   * Finds the file by the canonical URL with or without version, falling back to the URL without version.
+   */
+  @Nullable
+  private File findFile(@Nonnull final String resourceType, @Nullable final String url) {
+    if (url == null) {
+      return null
+    }
+
+    final Map<String, File> filesByUrl = filesByTypeAndUrl.get(resourceType)
+    final File file = filesByUrl.get(url)
+    final int versionSeparator = url.indexOf('|')
+    return file != null || versionSeparator < 0 ? file : filesByUrl.get(url.substring(0, versionSeparator))
+  }
+
+  @Nonnull
+  private List<IBaseResource> parseAll(@Nonnull final Collection<File> files) {
+    return files.unique(false).collect { parse(it) }
+  }
+
+  @Nonnull
+  private IBaseResource parse(@Nonnull final File file) {
+    // a parser is not thread-safe, so each parse creates its own
+    return parsedResources.computeIfAbsent(file) {
+      context.newJsonParser().parseResource(new String(file.bytes, StandardCharsets.UTF_8))
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package common
+
+import ca.uhn.fhir.context.FhirContext
+import ca.uhn.fhir.context.support.IValidationSupport
+import ca.uhn.fhir.context.support.ValidationSupportContext
+import ca.uhn.fhir.util.VersionUtil
+import org.hl7.fhir.instance.model.api.IBaseResource
+import org.hl7.fhir.r4.model.StructureDefinition
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * Persists the snapshots generated by the given snapshot generator, e.g. a SnapshotGeneratingValidationSupport, so differential-only
+ * profiles of FHIR packages are generated once and not in every JVM. It replaces the generator in the validation support chain.
+ * <br><br>
+ * A snapshot is keyed by the canonical URL and version of the profile, the hash of the package set and the HAPI FHIR version.
+ * The cache directory is 'target/fhir-snapshot-cache' and can be changed by the system property {@value #CACHE_DIR_PROPERTY}.
+ */
+class PersistentSnapshotValidationSupport implements IValidationSupport {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PersistentSnapshotValidationSupport.name)
+
+  public static final String CACHE_DIR_PROPERTY = "fhir.snapshot.cache.dir"
+
+  private final IValidationSupport generator
+  private final String packageSetHash
+  private final File cacheDir
+
+  PersistentSnapshotValidationSupport(@Nonnull final IValidationSupport generator, @Nonnull final String packageSetHash) {
+    this.generator = generator
+    this.packageSetHash = packageSetHash
+    this.cacheDir = new File(System.getProperty(CACHE_DIR_PROPERTY, "target/fhir-snapshot-cache"))
+  }
+
+  @Override
+  FhirContext getFhirContext() {
+    return generator.getFhirContext()
+  }
+
+  @Override
+  IBaseResource generateSnapshot(final ValidationSupportContext validationSupportContext,
+                                 final IBaseResource input,
+                                 final String url,
+                                 final String webUrl,
+                                 final String profileName) {
+    if (!(input instanceof StructureDefinition)) {
+      return generator.generateSnapshot(validationSupportContext, input, url, webUrl, profileName)
+    }
+
+    final StructureDefinition profile = (StructureDefinition) input
+    final File snapshotFile = new File(cacheDir, key(profile) + ".json")
+
+    if (snapshotFile.exists()) {
+      return getFhirContext().newJsonParser().parseResource(new String(snapshotFile.bytes, StandardCharsets.UTF_8))
+    }
+
+    final long start = System.currentTimeMillis()
+    final IBaseResource snapshot = generator.generateSnapshot(validationSupportContext, input, url, webUrl, profileName)
+    if (snapshot != null) {
+      write(snapshotFile, getFhirContext().newJsonParser().encodeResourceToString(snapshot))
+      LOG.info("Generated snapshot of ${profile.url} in ${System.currentTimeMillis() - start} ms")
+    }
+    return snapshot
+  }
+
+  @Nonnull
+  private String key(@Nonnull final StructureDefinition profile) {
+    final String key = [profile.url, profile.version, packageSetHash, VersionUtil.getVersion()].join("|")
+    return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)).encodeHex().toString()
+  }
+
+  /**
+   * Writes into a temporary file, which is moved at the end, so concurrent validators never read a partial snapshot.
+   */
+  private void write(@Nonnull final File snapshotFile, @Nonnull final String json) {
+    cacheDir.mkdirs()
+    final File tempFile = Files.createTempFile(cacheDir.toPath(), snapshotFile.name, ".tmp").toFile()
+    tempFile.setText(json, StandardCharsets.UTF_8.name())
+    Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+  }
+}
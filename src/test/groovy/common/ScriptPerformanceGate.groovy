@@ -0,0 +1,178 @@
+package common
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import de.kairos.fhir.dsl.r4.context.Context
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Performance regression gate of the export scripts. If the system property {@value #ENABLED_PROPERTY} is set, the export script
+ * tests run each script over all its context maps for a number of warm-up iterations and afterwards for a number of measured
+ * iterations. The median time and the median allocated bytes per record of the measured iterations are compared with the baseline
+ * of the script in the baseline file. The setup of the test class fails, if a value exceeds the baseline by more than the threshold.
+ * <br><br>
+ * System properties:
+ * <ul>
+ *   <li>{@value #ENABLED_PROPERTY}: enables the gate</li>
+ *   <li>{@value #UPDATE_PROPERTY}: writes the measured values of all scripts to the baseline file at the shutdown of the JVM instead of
+ *   comparing them, e.g. after an intended change of a script or on a new build machine</li>
+ *   <li>{@value #BASELINE_PROPERTY}: the baseline file, 'src/test/resources/script-performance-baseline.json' by default</li>
+ *   <li>{@value #THRESHOLD_PROPERTY}: the allowed relative increase, 0.25 by default</li>
+ *   <li>{@value #WARMUP_PROPERTY} and {@value #ITERATIONS_PROPERTY}: the number of iterations, 5 and 10 by default</li>
+ * </ul>
+ * The setup also fails for a script without baseline, because an empty baseline file would otherwise pass every script. The timings
+ * depend on the machine, so the baseline should be written on the machine, which runs the gate. The allocated bytes depend less on
+ * the machine, so a baseline, which is shared by several machines, can omit 'nsPerRecord' and is compared by 'bytesPerRecord' only.
+ * <br><br>
+ * An empty baseline of a script, e.g. <code>"src/main/groovy/.../patient.groovy": { }</code>, is pending: the first gated run passes
+ * and writes the measured 'bytesPerRecord' of the script to the baseline file at the shutdown of the JVM, which is committed
+ * afterwards. The committed baseline file lists the scripts with context maps as pending.
+ */
+final class ScriptPerformanceGate {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScriptPerformanceGate.name)
+
+  public static final String ENABLED_PROPERTY = "script.perf.gate"
+  public static final String UPDATE_PROPERTY = "script.perf.gate.update"
+  public static final String BASELINE_PROPERTY = "script.perf.gate.baseline"
+  public static final String THRESHOLD_PROPERTY = "script.perf.gate.threshold"
+  public static final String WARMUP_PROPERTY = "script.perf.gate.warmup"
+  public static final String ITERATIONS_PROPERTY = "script.perf.gate.iterations"
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+  private static final ConcurrentMap<String, Map<String, Object>> MEASUREMENTS = new ConcurrentHashMap<>()
+  private static final ConcurrentMap<String, Map<String, Object>> PENDING = new ConcurrentHashMap<>()
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread({
+      if (isUpdate() && !MEASUREMENTS.isEmpty()) {
+        updateBaseline(baselineFile(), MEASUREMENTS)
+      }
+      else if (!PENDING.isEmpty()) {
+        updateBaseline(baselineFile(), PENDING)
+      }
+    }))
+  }
+
+  private ScriptPerformanceGate() {/* hide constructor */}
+
+  static boolean isEnabled() {
+    return Boolean.getBoolean(ENABLED_PROPERTY) || isUpdate()
+  }
+
+  private static boolean isUpdate() {
+    return Boolean.getBoolean(UPDATE_PROPERTY)
+  }
+
+  @Nonnull
+  private static File baselineFile() {
+    return new File(System.getProperty(BASELINE_PROPERTY, "src/test/resources/script-performance-baseline.json"))
+  }
+
+  /**
+   * Measures the script and compares the result with its baseline, or keeps the result for the baseline update.
+   * @param groovyPath the path of the script as given by the {@link TestResources}, which is the key in the baseline file
+   * @param runner a runner of the script, which is used by the current thread only
+   * @param contextMaps all context maps of the script
+   * @throws AssertionError if the script has no baseline, or if the time or the allocated bytes per record exceed the baseline by
+   * more than the threshold. A pending baseline passes.
+   */
+  static void check(@Nonnull final String groovyPath,
+                    @Nonnull final Fhir4ScriptRunner runner,
+                    @Nonnull final Map<String, Map<String, Object>> contextMaps) {
+    if (contextMaps.isEmpty()) {
+      return
+    }
+
+    final Map<String, Object> measured = measure(runner, contextMaps.values())
+    LOG.info("Measured $groovyPath: $measured")
+
+    if (isUpdate()) {
+      MEASUREMENTS.put(groovyPath, measured)
+      return
+    }
+
+    final Map<String, Object> baseline = readBaseline(baselineFile()).get(groovyPath) as Map<String, Object>
+    if (baseline == null) {
+      throw new AssertionError("No performance baseline for $groovyPath in ${baselineFile().absolutePath}. Write it with " +
+          "-D$UPDATE_PROPERTY=true on the machine, which runs the gate.")
+    }
+
+    if (baseline.nsPerRecord == null && baseline.bytesPerRecord == null) {
+      PENDING.put(groovyPath, [bytesPerRecord: measured.bytesPerRecord, records: measured.records] as Map<String, Object>)
+      LOG.warn("The performance baseline of $groovyPath is pending, the measured bytes per record are written to " +
+          "${baselineFile().absolutePath}. Commit the baseline file.")
+      return
+    }
+
+    final double threshold = Double.parseDouble(System.getProperty(THRESHOLD_PROPERTY, "0.25"))
+    final List<String> regressions = ["nsPerRecord", "bytesPerRecord"].findAll { final String key ->
+      baseline[key] != null && (measured[key] as double) > (baseline[key] as double) * (1d + threshold)
+    }.collect { final String key ->
+      "$key ${measured[key]} exceeds the baseline ${baseline[key]} by more than ${Math.round(threshold * 100)}%".toString()
+    }
+
+    if (!regressions.isEmpty()) {
+      throw new AssertionError("Performance regression of $groovyPath: ${regressions.join(", ")}. If the change is intended, " +
+          "update the baseline with -D$UPDATE_PROPERTY=true.")
+    }
+  }
+
+  /**
+   * Runs all context maps per iteration with the given runner on the current thread.
+   * @return the median time and allocated bytes per record of the measured iterations
+   */
+  @Nonnull
+  private static Map<String, Object> measure(@Nonnull final Fhir4ScriptRunner runner,
+                                             @Nonnull final Collection<Map<String, Object>> contextMaps) {
+    final int warmup = Integer.getInteger(WARMUP_PROPERTY, 5)
+    final int iterations = Integer.getInteger(ITERATIONS_PROPERTY, 10)
+    if (iterations < 1) {
+      throw new IllegalArgumentException("The number of iterations must be at least 1, but was $iterations.")
+    }
+
+    warmup.times { contextMaps.each { runner.run(new Context(it)) } }
+
+    final List<Double> nanos = []
+    final List<Double> bytes = []
+    iterations.times {
+      final long bytesBefore = ScriptProfiler.currentThreadAllocatedBytes()
+      final long start = System.nanoTime()
+      contextMaps.each { runner.run(new Context(it)) }
+      nanos.add((System.nanoTime() - start) / (double) contextMaps.size())
+      bytes.add((ScriptProfiler.currentThreadAllocatedBytes() - bytesBefore) / (double) contextMaps.size())
+    }
+
+    return [nsPerRecord: Math.round(median(nanos)), bytesPerRecord: Math.round(median(bytes)), records: contextMaps.size()] as
+        Map<String, Object>
+  }
+
+  private static double median(@Nonnull final List<Double> values) {
+    final List<Double> sorted = values.sort(false)
+    final int middle = sorted.size().intdiv(2)
+    return sorted.size() % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2d
+  }
+
+  @Nonnull
+  private static Map<String, Object> readBaseline(@Nonnull final File file) {
+    return file.isFile() ? MAPPER.readValue(file, Map) as Map<String, Object> : [:]
+  }
+
+  /**
+   * Merges the measurements into the baseline file, so the baselines of scripts, which did not run, are kept.
+   */
+  private static void updateBaseline(@Nonnull final File file, @Nonnull final Map<String, Map<String, Object>> measurements) {
+    final Map<String, Object> baseline = new TreeMap<>(readBaseline(file))
+    baseline.putAll(measurements)
+    if (file.parentFile != null) {
+      file.parentFile.mkdirs()
+    }
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, baseline)
+    LOG.info("Updated the performance baseline of ${measurements.size()} scripts in ${file.absolutePath}")
+  }
+}
@@ -0,0 +1,239 @@
+package common
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import de.kairos.centraxx.fhir.r4.utils.ScriptExecutionEvent
+import de.kairos.fhir.dsl.r4.context.Context
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner
+import org.HdrHistogram.ConcurrentHistogram
+import org.HdrHistogram.Histogram
+import org.hl7.fhir.r4.model.Resource
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import javax.annotation.Nullable
+import java.lang.management.ManagementFactory
+import java.lang.management.ThreadMXBean
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Records wall time, CPU time and allocated bytes of every {@link Fhir4ScriptRunner#run} call of a script, and whether the script
+ * emitted a resource or returned early, because the context map was filtered out. The values are recorded in HdrHistograms, so the
+ * percentiles are exact within three significant digits, and the slowest context maps of each script are kept.
+ * <br><br>
+ * The export script tests profile all scripts, if the system property {@value #ENABLED_PROPERTY} is set. At the shutdown of the JVM,
+ * a JSON and an HTML report are written for each script and an index of all scripts, ordered by the total wall time, to the directory
+ * of the system property {@value #DIR_PROPERTY}, which is 'target/script-profiles' by default.
+ */
+final class ScriptProfiler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScriptProfiler.name)
+
+  public static final String ENABLED_PROPERTY = "script.profile"
+  public static final String DIR_PROPERTY = "script.profile.dir"
+
+  private static final int SLOWEST = 20
+  private static final ConcurrentMap<String, ScriptProfiler> PROFILERS = new ConcurrentHashMap<>()
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean()
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread({
+      if (!PROFILERS.isEmpty()) {
+        writeReports(new File(System.getProperty(DIR_PROPERTY, "target/script-profiles")))
+      }
+    }))
+  }
+
+  private final String script
+  private final Histogram wallNanos = new ConcurrentHistogram(3)
+  private final Histogram cpuNanos = new ConcurrentHistogram(3)
+  private final Histogram allocatedBytes = new ConcurrentHistogram(3)
+  private final LongAdder emitted = new LongAdder()
+  private final LongAdder filtered = new LongAdder()
+  private final PriorityQueue<Map<String, Object>> slowest = new PriorityQueue<>(SLOWEST + 1, { a, b -> a.wallNanos <=> b.wallNanos })
+
+  private ScriptProfiler(@Nonnull final String script) {
+    this.script = script
+  }
+
+  static boolean isEnabled() {
+    return Boolean.getBoolean(ENABLED_PROPERTY)
+  }
+
+  /**
+   * @param script the path of the script, e.g. 'src/main/groovy/customexport/mii/bielefeld/observation.groovy'
+   * @return the profiler of the script, which is shared by all test classes of the script
+   */
+  @Nonnull
+  static ScriptProfiler forScript(@Nonnull final String script) {
+    return PROFILERS.computeIfAbsent(script) { new ScriptProfiler(it) }
+  }
+
+  /**
+   * Runs the script and records the measurements of the call. Thread-safe, if the runner may be called by the current thread.
+   * @param name the name of the context map, e.g. the file name, to identify the slowest context maps
+   */
+  @Nullable
+  Resource run(@Nonnull final Fhir4ScriptRunner runner, @Nonnull final String name, @Nonnull final Context context) {
+    final long bytesBefore = currentThreadAllocatedBytes()
+    final long cpuBefore = THREADS.getCurrentThreadCpuTime()
+    final long wallBefore = System.nanoTime()
+
+    final Resource resource = runner.run(context)
+
+    final long wall = System.nanoTime() - wallBefore
+    final long cpu = THREADS.getCurrentThreadCpuTime() - cpuBefore
+    final long bytes = currentThreadAllocatedBytes() - bytesBefore
+    final boolean isEmitted = ScriptExecutionEvent.isEmitted(resource)
+
+    wallNanos.recordValue(wall)
+    cpuNanos.recordValue(Math.max(cpu, 0L))
+    allocatedBytes.recordValue(Math.max(bytes, 0L))
+    (isEmitted ? emitted : filtered).increment()
+    record([name: name, wallNanos: wall, cpuNanos: cpu, allocatedBytes: bytes, emitted: isEmitted])
+    return resource
+  }
+
+  private void record(@Nonnull final Map<String, Object> call) {
+    synchronized (slowest) {
+      slowest.add(call)
+      if (slowest.size() > SLOWEST) {
+        slowest.poll()
+      }
+    }
+  }
+
+  /**
+   * @return the bytes allocated by the current thread so far or 0, if the JVM does not measure allocations
+   */
+  static long currentThreadAllocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled()) {
+      return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId())
+    }
+    return 0L
+  }
+
+  /**
+   * @return the summary of the script with the percentiles in milliseconds and bytes and the slowest context maps, slowest first
+   */
+  @Nonnull
+  Map<String, Object> report() {
+    final List<Map<String, Object>> slowestCalls
+    synchronized (slowest) {
+      slowestCalls = new ArrayList<>(slowest)
+    }
+    slowestCalls.sort { a, b -> b.wallNanos <=> a.wallNanos }
+
+    return [
+        script        : script,
+        runs          : wallNanos.getTotalCount(),
+        emitted       : emitted.sum(),
+        filtered      : filtered.sum(),
+        totalWallMs   : round(wallNanos.getMean() * wallNanos.getTotalCount() / 1_000_000d),
+        wallMs        : percentiles(wallNanos, 1_000_000d),
+        cpuMs         : percentiles(cpuNanos, 1_000_000d),
+        allocatedBytes: percentiles(allocatedBytes, 1d),
+        slowest       : slowestCalls.collect {
+          [name          : it.name,
+           wallMs        : round((it.wallNanos as long) / 1_000_000d),
+           cpuMs         : round((it.cpuNanos as long) / 1_000_000d),
+           allocatedBytes: it.allocatedBytes,
+           emitted       : it.emitted]
+        }
+    ] as Map<String, Object>
+  }
+
+  @Nonnull
+  private static Map<String, Object> percentiles(@Nonnull final Histogram histogram, final double scale) {
+    return [
+        mean : round(histogram.getMean() / scale),
+        p50  : round(histogram.getValueAtPercentile(50d) / scale),
+        p90  : round(histogram.getValueAtPercentile(90d) / scale),
+        p99  : round(histogram.getValueAtPercentile(99d) / scale),
+        p99_9: round(histogram.getValueAtPercentile(99.9d) / scale),
+        max  : round(histogram.getMaxValue() / scale)
+    ] as Map<String, Object>
+  }
+
+  private static double round(final double value) {
+    return Math.round(value * 1000d) / 1000d
+  }
+
+  /**
+   * Writes the JSON and HTML reports of all profiled scripts and the index of the scripts to the given directory.
+   */
+  static void writeReports(@Nonnull final File dir) {
+    dir.mkdirs()
+    final List<Map<String, Object>> reports = PROFILERS.values()*.report().sort { a, b -> b.totalWallMs <=> a.totalWallMs }
+
+    reports.each { final Map<String, Object> report ->
+      final String baseName = fileName(report.script as String)
+      MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(dir, baseName + ".json"), report)
+      new File(dir, baseName + ".html").setText(scriptHtml(report), "UTF-8")
+    }
+
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(dir, "index.json"), reports.collect { it.findAll { it.key != "slowest" } })
+    new File(dir, "index.html").setText(indexHtml(reports), "UTF-8")
+    LOG.info("Wrote the profiles of ${reports.size()} scripts to ${dir.absolutePath}")
+  }
+
+  @Nonnull
+  private static String fileName(@Nonnull final String script) {
+    return script.replaceAll(/[^A-Za-z0-9._-]/, "_")
+  }
+
+  @Nonnull
+  private static String indexHtml(@Nonnull final List<Map<String, Object>> reports) {
+    final StringBuilder html = new StringBuilder(page("Script profiles"))
+    html.append("<table>\n<tr><th>Script</th><th>Runs</th><th>Emitted</th><th>Filtered</th><th>Total wall ms</th>")
+        .append("<th>Wall p50 ms</th><th>Wall p99 ms</th><th>CPU p99 ms</th><th>Allocated p99 bytes</th></tr>\n")
+    reports.each {
+      html.append("<tr><td><a href=\"${escape(fileName(it.script as String))}.html\">${escape(it.script as String)}</a></td>")
+          .append(cells(it.runs, it.emitted, it.filtered, it.totalWallMs, it.wallMs["p50"], it.wallMs["p99"], it.cpuMs["p99"],
+                        it.allocatedBytes["p99"]))
+          .append("</tr>\n")
+    }
+    return html.append("</table>\n</body></html>\n").toString()
+  }
+
+  @Nonnull
+  private static String scriptHtml(@Nonnull final Map<String, Object> report) {
+    final StringBuilder html = new StringBuilder(page(report.script as String))
+    html.append("<p>${report.runs} runs, ${report.emitted} emitted, ${report.filtered} filtered, ${report.totalWallMs} ms total</p>\n")
+        .append("<table>\n<tr><th></th><th>Mean</th><th>p50</th><th>p90</th><th>p99</th><th>p99.9</th><th>Max</th></tr>\n")
+    [["Wall ms", report.wallMs], ["CPU ms", report.cpuMs], ["Allocated bytes", report.allocatedBytes]].each { final List row ->
+      final Map<String, Object> values = row[1] as Map<String, Object>
+      html.append("<tr><th>${row[0]}</th>")
+          .append(cells(values.mean, values.p50, values.p90, values.p99, values.p99_9, values.max))
+          .append("</tr>\n")
+    }
+    html.append("</table>\n<h2>Slowest context maps</h2>\n<table>\n")
+        .append("<tr><th>Context map</th><th>Wall ms</th><th>CPU ms</th><th>Allocated bytes</th><th>Emitted</th></tr>\n")
+    (report.slowest as List<Map<String, Object>>).each {
+      html.append("<tr><td>${escape(it.name as String)}</td>")
+          .append(cells(it.wallMs, it.cpuMs, it.allocatedBytes, it.emitted))
+          .append("</tr>\n")
+    }
+    return html.append("</table>\n</body></html>\n").toString()
+  }
+
+  @Nonnull
+  private static String page(@Nonnull final String title) {
+    return "<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>${escape(title)}</title>\n" +
+        "<style>body{font-family:sans-serif} table{border-collapse:collapse} th,td{border:1px solid #ccc;padding:2px 8px}" +
+        " td{text-align:right} td:first-child{text-align:left}</style></head>\n<body>\n<h1>${escape(title)}</h1>\n"
+  }
+
+  @Nonnull
+  private static String cells(final Object... values) {
+    return values.collect { "<td>${escape(String.valueOf(it))}</td>" }.join("")
+  }
+
+  @Nonnull
+  private static String escape(@Nonnull final String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")
+  }
+}
@@ -0,0 +1,139 @@
+package common
+
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptEngine
+import de.kairos.fhir.dsl.r4.execution.Fhir4ScriptRunner
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * JVM wide cache of compiled Groovy scripts, which is shared by all test classes of a surefire run.
+ * The runners are keyed by the script path, or the class name for scripts given as stream, and the SHA-256 hash of the script content,
+ * so a changed script is compiled again. A script is compiled once by the first thread, which misses it, the other threads wait for
+ * this compilation. The statistics are logged with every lookup and at the shutdown of the JVM. The hit rate only counts the lookups,
+ * the uncached compilations of {@link #compile} and of the disabled cache are counted on their own.
+ * <br><br>
+ * A cached runner is returned to every caller. Scripts, which keep state between runs, can disable the cache with the
+ * system property {@value #DISABLED_PROPERTY}.
+ */
+final class ScriptRunnerCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScriptRunnerCache.name)
+
+  public static final String DISABLED_PROPERTY = "script.cache.disabled"
+
+  private static final ConcurrentMap<String, CompletableFuture<Fhir4ScriptRunner>> RUNNERS = new ConcurrentHashMap<>()
+  private static final LongAdder HITS = new LongAdder()
+  private static final LongAdder MISSES = new LongAdder()
+  private static final LongAdder UNCACHED = new LongAdder()
+  private static final LongAdder COMPILE_NANOS = new LongAdder()
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread({ LOG.info("Script cache: ${statistics()}") }))
+  }
+
+  private ScriptRunnerCache() {/* hide constructor */}
+
+  /**
+   * @param groovyPath path to the Groovy script
+   * @return the cached runner of the script or a newly compiled runner, if the script has not been compiled in this JVM
+   */
+  @Nonnull
+  static Fhir4ScriptRunner getOrCompile(@Nonnull final String groovyPath) {
+    final File file = new File(groovyPath)
+    return lookup(file.canonicalPath, file.bytes, "test")
+  }
+
+  /**
+   * @param is stream of the Groovy script, which is read completely
+   * @param className the name of the compiled script class
+   * @return the cached runner of the script or a newly compiled runner, if the script has not been compiled in this JVM
+   */
+  @Nonnull
+  static Fhir4ScriptRunner getOrCompile(@Nonnull final InputStream is, @Nonnull final String className) {
+    return lookup(className, is.bytes, className)
+  }
+
+  /**
+   * Compiles the script without using the cache, e.g. for a runner per thread.
+   */
+  @Nonnull
+  static Fhir4ScriptRunner compile(@Nonnull final String groovyPath) {
+    UNCACHED.increment()
+    return compileScript(groovyPath, new File(groovyPath).bytes, "test")
+  }
+
+  @Nonnull
+  private static Fhir4ScriptRunner lookup(@Nonnull final String name, @Nonnull final byte[] script, @Nonnull final String className) {
+    if (Boolean.getBoolean(DISABLED_PROPERTY)) {
+      UNCACHED.increment()
+      return compileScript(name, script, className)
+    }
+
+    final String key = name + "@" + MessageDigest.getInstance("SHA-256").digest(script).encodeHex()
+    final CompletableFuture<Fhir4ScriptRunner> created = new CompletableFuture<>()
+    final CompletableFuture<Fhir4ScriptRunner> cached = RUNNERS.putIfAbsent(key, created)
+    if (cached != null) {
+      HITS.increment()
+      LOG.info("Reusing compiled script $name (${statistics()})")
+      return await(cached)
+    }
+
+    // compiled outside of the map, so the lookups of other scripts do not wait for this compilation
+    MISSES.increment()
+    try {
+      final Fhir4ScriptRunner runner = compileScript(name, script, className)
+      created.complete(runner)
+      return runner
+    }
+    catch (final Throwable e) {
+      // not cached, so the next lookup compiles the script again
+      RUNNERS.remove(key, created)
+      created.completeExceptionally(e)
+      throw e
+    }
+  }
+
+  @Nonnull
+  private static Fhir4ScriptRunner await(@Nonnull final CompletableFuture<Fhir4ScriptRunner> future) {
+    try {
+      return future.join()
+    }
+    catch (final CompletionException e) {
+      throw e.cause ?: e
+    }
+  }
+
+  @Nonnull
+  private static Fhir4ScriptRunner compileScript(@Nonnull final String name,
+                                                 @Nonnull final byte[] script,
+                                                 @Nonnull final String className) {
+    final long start = System.nanoTime()
+    final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(script), StandardCharsets.UTF_8)
+    final Fhir4ScriptRunner runner = new Fhir4ScriptEngine().create(reader, className)
+    final long nanos = System.nanoTime() - start
+
+    COMPILE_NANOS.add(nanos)
+    LOG.info("Compiled script $name in ${TimeUnit.NANOSECONDS.toMillis(nanos)} ms (${statistics()})")
+    return runner
+  }
+
+  @Nonnull
+  private static String statistics() {
+    final long hits = HITS.sum()
+    final long misses = MISSES.sum()
+    final long lookups = hits + misses
+    final long hitRate = lookups == 0 ? 0 : Math.round(100d * hits / lookups)
+    return "$hits hits, $misses misses, hit rate $hitRate %, ${UNCACHED.sum()} uncached compilations, " +
+        "total compile time ${TimeUnit.NANOSECONDS.toMillis(COMPILE_NANOS.sum())} ms"
+  }
+}
@@ -10,7 +10,19 @@ import java.lang.annotation.Target
  * Use on an implementation of {@link AbstractExportScriptTest}.
  * @param String groovyScriptPath Path to the Groovy script used to transform the given source map.
  * @param String contextMapsPath Path to the directory containing JSON files of entity maps used as test input
- * for the parametrized tests.
+ * for the parametrized tests. A JSON file contains one entity map or an array of entity maps, an NDJSON file one entity map per line.
+ * @param int parallelism Number of worker threads transforming the entity maps. Each worker uses its own script runner.
+ * The default 1 transforms the entity maps sequentially.
+ * @param boolean checkThreadSafety If true, the entity maps are additionally transformed concurrently by one shared script runner,
+ * and the setup fails, if the results differ. Only works for scripts that produce the same resource for the same entity map.
+ * @param String fhirPackagePath Optional path to the FHIR packages relative to 'src/test/resources', which are used for validation.
+ * The shared validator of the packages is loaded in the background while the entity maps are transformed.
+ * @param boolean prevalidate If true, all resulting resources, or the entries of resulting bundles, are validated against the
+ * FHIR packages of fhirPackagePath in parallel during the setup. The validation of a resource in a test then reports the result
+ * of the pre-validation.
+ * @param boolean streaming If true, the entity maps are read and transformed lazily for each test method instead of once in the
+ * setup, so large files of entity maps are never kept in memory completely. Cannot be combined with parallelism, checkThreadSafety
+ * and prevalidate.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
@@ -18,4 +30,14 @@ import java.lang.annotation.Target
   String groovyScriptPath()
 
   String contextMapsPath()
+
+  int parallelism() default 1
+
+  boolean checkThreadSafety() default false
+
+  String fhirPackagePath() default ""
+
+  boolean prevalidate() default false
+
+  boolean streaming() default false
 }
@@ -0,0 +1,87 @@
+package common
+
+import ca.uhn.fhir.util.VersionUtil
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.annotation.Nonnull
+import javax.annotation.Nullable
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Persistent cache of the validation errors of resources. A result is keyed by the SHA-256 hash of the JSON encoding of the resource,
+ * the hash of the validated package set, the version of the validator settings and the HAPI FHIR version, so unchanged resources of
+ * unchanged scripts are not validated again in the next run. The JSON encoding of HAPI has a fixed element order, so equal resources have the same hash.
+ * <br><br>
+ * The results are stored in 'target/fhir-validation-cache', which can be changed by the system property {@value #CACHE_DIR_PROPERTY}.
+ * The system property {@value #FORCE_VALIDATION_PROPERTY} ignores
+ * the stored results and validates all resources again, which updates the stored results.
+ */
+class ValidationResultCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ValidationResultCache.name)
+
+  public static final String FORCE_VALIDATION_PROPERTY = "fhir.validation.force"
+  public static final String CACHE_DIR_PROPERTY = "fhir.validation.cache.dir"
+
+  private static final File CACHE_DIR = new File(System.getProperty(CACHE_DIR_PROPERTY, "target/fhir-validation-cache"))
+  private static final LongAdder HITS = new LongAdder()
+  private static final LongAdder MISSES = new LongAdder()
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread({
+      LOG.info("Validation result cache: ${HITS.sum()} hits, ${MISSES.sum()} validated resources")
+    }))
+  }
+
+  private final String packageSetHash
+  private final int settingsVersion
+
+  /**
+   * @param settingsVersion the version of the validator settings, which must be increased with every change of the settings, so the
+   * results of the previous settings are not used anymore
+   */
+  ValidationResultCache(@Nonnull final String packageSetHash, final int settingsVersion) {
+    this.packageSetHash = packageSetHash
+    this.settingsVersion = settingsVersion
+  }
+
+  @Nonnull
+  String key(@Nonnull final String resourceJson) {
+    final MessageDigest digest = MessageDigest.getInstance("SHA-256")
+    digest.update("$packageSetHash|$settingsVersion|${VersionUtil.getVersion()}|".getBytes(StandardCharsets.UTF_8))
+    return digest.digest(resourceJson.getBytes(StandardCharsets.UTF_8)).encodeHex().toString()
+  }
+
+  /**
+   * @return the stored errors or null, if the resource has not been validated before or the validation is forced
+   */
+  @Nullable
+  List<String> get(@Nonnull final String key) {
+    final File resultFile = new File(CACHE_DIR, key + ".json")
+    if (Boolean.getBoolean(FORCE_VALIDATION_PROPERTY) || !resultFile.exists()) {
+      MISSES.increment()
+      return null
+    }
+
+    HITS.increment()
+    return new JsonSlurper().parse(resultFile) as List<String>
+  }
+
+  /**
+   * Writes into a temporary file, which is moved at the end, so concurrent validations never read a partial result.
+   */
+  void put(@Nonnull final String key, @Nonnull final List<String> errors) {
+    CACHE_DIR.mkdirs()
+    final File tempFile = Files.createTempFile(CACHE_DIR.toPath(), key, ".tmp").toFile()
+    tempFile.setText(JsonOutput.toJson(errors), StandardCharsets.UTF_8.name())
+    Files.move(tempFile.toPath(), new File(CACHE_DIR, key + ".json").toPath(),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+  }
+}
@@ -16,7 +16,9 @@ import static org.junit.jupiter.api.Assumptions.assumeTrue
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/condition.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/condition"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/condition",
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class ConditionExportScriptTest extends AbstractExportScriptTest<Condition> {
 
@@ -18,7 +18,9 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
         groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/consent.groovy",
-        contextMapsPath = "src/test/resources/customexport/mii/bielefeld/consent"
+        contextMapsPath = "src/test/resources/customexport/mii/bielefeld/consent",
+        fhirPackagePath = "fhirpackages/mii",
+        prevalidate = true
 )
 class ConsentExportScriptTest extends AbstractExportScriptTest<Consent> {
 
@@ -26,7 +26,9 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/diagnosticReport.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/diagnosticReport"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/diagnosticReport",
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class DiagnosticReportExportScriptTest extends AbstractExportScriptTest<DiagnosticReport> {
 
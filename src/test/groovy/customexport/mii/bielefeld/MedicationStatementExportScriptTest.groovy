@@ -22,7 +22,10 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/medicationBundle.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/medication"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/medication",
+    parallelism = 4,
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class MedicationStatementExportScriptTest extends AbstractExportScriptTest<Bundle> {
 
@@ -38,7 +38,10 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/observation.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/observation"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/observation",
+    parallelism = 4,
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class ObservationExportScriptTest extends AbstractExportScriptTest<Observation> {
 
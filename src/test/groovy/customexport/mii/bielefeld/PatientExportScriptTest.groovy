@@ -32,7 +32,9 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/patient.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/patient"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/patient",
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class PatientExportScriptTest extends AbstractExportScriptTest<Patient> {
 
@@ -19,7 +19,8 @@ import static org.junit.jupiter.api.Assumptions.assumingThat
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/researchSubject.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/researchSubject"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/researchSubject",
+    fhirPackagePath = "fhirpackages/mii"
 )
 
 class PatientStudyExportScriptTest extends AbstractExportScriptTest<ResearchSubject> {
@@ -28,7 +28,9 @@ import static org.junit.jupiter.api.Assumptions.assumeTrue
 
 @TestResources(
     groovyScriptPath = "src/main/groovy/customexport/mii/bielefeld/procedure.groovy",
-    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/procedure"
+    contextMapsPath = "src/test/resources/customexport/mii/bielefeld/procedure",
+    fhirPackagePath = "fhirpackages/mii",
+    prevalidate = true
 )
 class ProcedureExportScriptTest extends AbstractExportScriptTest<Procedure> {
 
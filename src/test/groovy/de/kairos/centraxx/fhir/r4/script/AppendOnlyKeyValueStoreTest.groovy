@@ -0,0 +1,201 @@
+package de.kairos.centraxx.fhir.r4.script
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertNotSame
+import static org.junit.jupiter.api.Assertions.assertNull
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class AppendOnlyKeyValueStoreTest {
+
+  @TempDir
+  Path tempDir
+
+  @Test
+  void testThatEntriesSurviveReopening() {
+    final Path file = tempDir.resolve("sub/mpiToFhirId.log")
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(file)
+    store.put("MPI1", "a")
+    store.put("MPI2", "b")
+    store.put("MPI1", "c")
+    store.remove("MPI2")
+    assertEquals("id-MPI3", store.computeIfAbsent("MPI3") { "id-$it".toString() })
+    assertNull(store.computeIfAbsent("MPI4") { null })
+    store.close()
+
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file)
+
+    assertNotSame(store, reopened)
+    assertEquals(2, reopened.size())
+    assertEquals("c", reopened.get("MPI1"))
+    assertNull(reopened.get("MPI2"))
+    assertEquals("id-MPI3", reopened.get("MPI3"))
+    reopened.close()
+  }
+
+  @Test
+  void testThatLegacyJsonIsImportedIntoNewLogOnly() {
+    final Path json = tempDir.resolve("mpiToFhirId.json")
+    json.toFile().write('{\n  "MPI1": "a",\n  "MPI2": "b",\n  "MPI3": null\n}', "UTF-8")
+    final Path file = tempDir.resolve("imported.log")
+
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(file, json)
+    assertEquals(2, store.size())
+    assertEquals(["a", "b"], [store.get("MPI1"), store.get("MPI2")])
+    store.put("MPI1", "c")
+    store.close()
+
+    // the log exists, so a changed JSON file is not imported again
+    json.toFile().write('{"MPI1": "x", "MPI4": "d"}', "UTF-8")
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file, json)
+    assertEquals(2, reopened.size())
+    assertEquals("c", reopened.get("MPI1"))
+    assertNull(reopened.get("MPI4"))
+    reopened.close()
+    assertTrue(Files.exists(json))
+  }
+
+  @Test
+  void testThatIncompleteTailIsTruncatedOnOpen() {
+    final Path file = tempDir.resolve("torn.log")
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(file)
+    store.put("MPI1", "a")
+    store.put("MPI2", "b")
+    final long validSize = store.fileSize()
+    store.close()
+
+    // a crash during the append of a third record
+    file.toFile().append([0, 0, 0, 4, 0, 0, 0, 1, 7] as byte[])
+
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file)
+    assertEquals(validSize, Files.size(file))
+    assertEquals(["a", "b"], [reopened.get("MPI1"), reopened.get("MPI2")])
+
+    reopened.put("MPI3", "c")
+    reopened.close()
+    assertEquals("c", AppendOnlyKeyValueStore.of(file).get("MPI3"))
+    AppendOnlyKeyValueStore.of(file).close()
+  }
+
+  @Test
+  void testThatCorruptRecordIsDroppedOnOpen() {
+    final Path file = tempDir.resolve("corrupt.log")
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(file)
+    store.put("MPI1", "a")
+    store.put("MPI2", "b")
+    store.close()
+
+    final byte[] bytes = Files.readAllBytes(file)
+    bytes[bytes.length - 1] = (byte) 'x'
+    Files.write(file, bytes)
+
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file)
+    assertEquals("a", reopened.get("MPI1"))
+    assertNull(reopened.get("MPI2"))
+    reopened.close()
+  }
+
+  @Test
+  void testThatObsoleteRecordsAreCompacted() {
+    final Path file = tempDir.resolve("compact.log")
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(file)
+    (0..<10).each { store.put("MPI$it".toString(), "initial") }
+    final long initialSize = store.fileSize()
+
+    (0..<5000).each { store.put("MPI${it % 10}".toString(), "value${it % 10}".toString()) }
+
+    assertTrue(store.fileSize() < initialSize + 1000 * 30, "file size ${store.fileSize()}")
+    store.compact()
+    assertTrue(store.fileSize() < initialSize + 10 * 2, "file size ${store.fileSize()}")
+    assertTrue(Files.notExists(file.resolveSibling("compact.log.compact")))
+    store.close()
+
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file)
+    assertEquals((0..<10).collect { "value$it".toString() }, (0..<10).collect { reopened.get("MPI$it".toString()) })
+    reopened.close()
+  }
+
+  @Test
+  void testThatInterruptedCopyOfCompactionIsRepeatedOnOpen() {
+    final Path compacted = tempDir.resolve("compacted.log")
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(compacted)
+    store.put("MPI1", "old")
+    store.put("MPI1", "a")
+    store.put("MPI2", "b")
+    store.compact()
+    store.close()
+
+    // a crash while copying the complete side file: the header is in the copying state and the records are copied partially
+    final Path file = tempDir.resolve("copying.log")
+    final Path compactFile = tempDir.resolve("copying.log.compact")
+    Files.copy(compacted, compactFile)
+    final byte[] bytes = Arrays.copyOf(Files.readAllBytes(compacted), 16 + 5)
+    ByteBuffer.wrap(bytes).putInt(4, 1).putLong(8, 0)
+    Files.write(file, bytes)
+
+    final AppendOnlyKeyValueStore reopened = AppendOnlyKeyValueStore.of(file)
+    assertEquals(["a", "b"], [reopened.get("MPI1"), reopened.get("MPI2")])
+    assertTrue(Files.notExists(compactFile))
+    assertEquals(Files.readAllBytes(compacted) as List, Files.readAllBytes(file) as List)
+    reopened.close()
+  }
+
+  @Test
+  void testThatStoresOnIndependentChannelsSeeTheirUpdates() {
+    final Path file = tempDir.resolve("shared.log")
+    final AppendOnlyKeyValueStore first = AppendOnlyKeyValueStore.openUnshared(file)
+    final AppendOnlyKeyValueStore second = AppendOnlyKeyValueStore.openUnshared(file)
+    try {
+      first.put("MPI1", "a")
+      assertEquals("a", second.get("MPI1"))
+
+      assertEquals("a", second.computeIfAbsent("MPI1") { throw new IllegalStateException("must not be loaded") })
+      assertEquals("b", second.computeIfAbsent("MPI2") { "b" })
+      assertEquals("b", first.get("MPI2"))
+
+      // the compaction of one store starts a new generation, which the other store reads completely
+      second.remove("MPI1")
+      second.compact()
+      first.put("MPI3", "c")
+      assertEquals(2, first.size())
+      assertNull(first.get("MPI1"))
+      assertEquals(["b", "c"], [second.get("MPI2"), second.get("MPI3")])
+      assertEquals(first.fileSize(), second.fileSize())
+    }
+    finally {
+      first.close()
+      second.close()
+    }
+  }
+
+  @Test
+  void testThatConcurrentLoadsAgreeOnTheStoredValue() {
+    final AppendOnlyKeyValueStore store = AppendOnlyKeyValueStore.of(tempDir.resolve("concurrent.log"))
+    final AtomicInteger loads = new AtomicInteger()
+    final List<Map<String, String>> seen = Collections.synchronizedList([])
+    final List<Thread> threads = (0..<4).collect { final int thread ->
+      Thread.start {
+        final Map<String, String> values = [:]
+        (0..<500).each {
+          final String key = "MPI$it".toString()
+          values.put(key, store.computeIfAbsent(key) { loads.incrementAndGet(); "$thread-$it".toString() })
+        }
+        seen.add(values)
+      }
+    }
+    threads*.join()
+
+    assertEquals(500, store.size())
+    assertTrue(loads.get() >= 500)
+    seen.each { assertEquals(seen[0], it) }
+    store.close()
+  }
+}
@@ -0,0 +1,123 @@
+package de.kairos.centraxx.fhir.r4.script
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertNull
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+class CoalescingLoaderTest {
+
+  @Test
+  void testThatConcurrentMissesWaitForOneLoad() {
+    final CountDownLatch release = new CountDownLatch(1)
+    final AtomicInteger calls = new AtomicInteger()
+    final CoalescingLoader<String, String> diz = CoalescingLoader.of("test/coalesce", Duration.ofHours(1), Duration.ZERO) {
+      final String mpi ->
+        calls.incrementAndGet()
+        release.await()
+        "fhir-$mpi".toString()
+    }
+
+    final List<String> results = Collections.synchronizedList([])
+    final List<Thread> threads = (0..<8).collect { Thread.start { results.add(diz.get("MPI1")) } }
+    while (diz.getCoalesced() < 7) {
+      Thread.sleep(1)
+    }
+    release.countDown()
+    threads*.join()
+
+    assertEquals(1, calls.get())
+    assertEquals(["fhir-MPI1"] * 8, results)
+    assertEquals(1, diz.getMisses())
+    assertEquals(7, diz.getCoalesced())
+    assertEquals("fhir-MPI1", diz.get("MPI1"))
+    assertEquals(1, diz.getHits())
+  }
+
+  @Test
+  void testThatNullValuesAreCachedForNegativeTtl() {
+    final AtomicInteger calls = new AtomicInteger()
+    final CoalescingLoader<String, String> cached = CoalescingLoader.of("test/negative", Duration.ofHours(1), Duration.ofHours(1)) {
+      calls.incrementAndGet()
+      null
+    }
+    final CoalescingLoader<String, String> uncached = CoalescingLoader.of("test/no-negative", Duration.ofHours(1), Duration.ZERO) {
+      calls.incrementAndGet()
+      null
+    }
+
+    assertNull(cached.get("unknown"))
+    assertNull(cached.get("unknown"))
+    assertEquals(1, calls.get())
+    assertEquals(1, cached.getNegativeHits())
+
+    assertNull(uncached.get("unknown"))
+    assertNull(uncached.get("unknown"))
+    assertEquals(3, calls.get())
+    assertEquals(0, uncached.size())
+  }
+
+  @Test
+  void testThatZeroTtlOnlyCoalescesConcurrentRequests() {
+    final CountDownLatch release = new CountDownLatch(1)
+    final AtomicInteger calls = new AtomicInteger()
+    final CoalescingLoader<String, String> diz = CoalescingLoader.of("test/zero-ttl", Duration.ZERO, Duration.ofHours(1)) {
+      final String mpi ->
+        calls.incrementAndGet()
+        release.await()
+        mpi == "unknown" ? null : "fhir-$mpi".toString()
+    }
+
+    final List<Thread> threads = (0..<4).collect { Thread.start { diz.get("MPI1") } }
+    while (diz.getCoalesced() < 3) {
+      Thread.sleep(1)
+    }
+    release.countDown()
+    threads*.join()
+    assertEquals(1, calls.get())
+    assertEquals(0, diz.size())
+
+    assertEquals("fhir-MPI1", diz.get("MPI1"))
+    assertEquals(2, calls.get())
+
+    // null values are still cached for the negative TTL
+    assertNull(diz.get("unknown"))
+    assertNull(diz.get("unknown"))
+    assertEquals(3, calls.get())
+    assertEquals(1, diz.getNegativeHits())
+  }
+
+  @Test
+  void testThatExpiredValuesAreLoadedAgain() {
+    final AtomicInteger calls = new AtomicInteger()
+    final CoalescingLoader<String, Integer> loader = CoalescingLoader.of("test/ttl", Duration.ofMillis(50), Duration.ZERO) {
+      calls.incrementAndGet()
+    }
+
+    assertEquals(1, loader.get("MPI1"))
+    assertEquals(1, loader.get("MPI1"))
+    Thread.sleep(100)
+
+    assertEquals(2, loader.get("MPI1"))
+    assertEquals(2, loader.getMisses())
+  }
+
+  @Test
+  void testThatFailuresAreNotCached() {
+    final AtomicInteger calls = new AtomicInteger()
+    final CoalescingLoader<String, String> loader = CoalescingLoader.of("test/failure", Duration.ofHours(1), Duration.ZERO) {
+      if (calls.incrementAndGet() == 1) {
+        throw new IllegalStateException("DIZ not available")
+      }
+      "fhir"
+    }
+
+    assertEquals("DIZ not available", assertThrows(IllegalStateException) { loader.get("MPI1") }.message)
+    assertEquals("fhir", loader.get("MPI1"))
+  }
+}
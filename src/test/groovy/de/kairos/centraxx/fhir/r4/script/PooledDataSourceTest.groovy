@@ -0,0 +1,181 @@
+package de.kairos.centraxx.fhir.r4.script
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+import java.sql.CallableStatement
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.SQLTransientConnectionException
+import java.sql.Statement
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertFalse
+import static org.junit.jupiter.api.Assertions.assertSame
+import static org.junit.jupiter.api.Assertions.assertThrows
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+/**
+ * Tests the pool with an embedded H2 database in place of the MSSQL database of 'hdrp/custom/dbconnection/patient.groovy'.
+ */
+class PooledDataSourceTest {
+
+  @TempDir
+  Path tempDir
+
+  @Test
+  void testThatConnectionsAndStatementsAreReused() {
+    final PooledDataSource dataSource = createDataSource("reuse", 4)
+    try {
+      execute(dataSource, "create table CENTRAXX_PATIENTMASTERDATA_ANO (PATIENTCONTAINER bigint, GENDER_TYPE varchar(16))")
+      execute(dataSource, "insert into CENTRAXX_PATIENTMASTERDATA_ANO values (1, 'MALE'), (2, 'FEMALE')")
+
+      final List<String> genders = (1..100).collect { final int record ->
+        final Connection connection = dataSource.getConnection()
+        try {
+          final PreparedStatement statement = connection.prepareStatement(
+              "select GENDER_TYPE from CENTRAXX_PATIENTMASTERDATA_ANO where PATIENTCONTAINER = ?")
+          statement.setLong(1, record % 2 + 1)
+          final ResultSet rs = statement.executeQuery()
+          return rs.next() ? rs.getString(1) : null
+        }
+        finally {
+          connection.close()
+        }
+      }
+
+      assertEquals(["FEMALE", "MALE"] * 50, genders)
+      assertEquals(1, dataSource.getConnects())
+      assertEquals(102, dataSource.getBorrows())
+      assertEquals(3, dataSource.getStatementMisses())
+      assertEquals(99, dataSource.getStatementHits())
+      assertEquals(1, dataSource.getIdle())
+    }
+    finally {
+      dataSource.close()
+    }
+  }
+
+  @Test
+  void testThatBorrowingWaitsForTheMaximumPoolSize() {
+    final PooledDataSource dataSource = createDataSource("bounded", 2)
+    try {
+      final Connection first = dataSource.getConnection()
+      final Connection second = dataSource.getConnection()
+      assertThrows(SQLTransientConnectionException) { dataSource.getConnection() }
+
+      first.close()
+      dataSource.getConnection().close()
+      second.close()
+
+      assertEquals(2, dataSource.getConnects())
+      assertEquals(2, dataSource.getIdle())
+    }
+    finally {
+      dataSource.close()
+    }
+  }
+
+  @Test
+  void testThatClosingTheConnectionClosesItsStatementsAndRollsBack() {
+    final PooledDataSource dataSource = createDataSource("close", 1)
+    try {
+      execute(dataSource, "create table VALUES_TABLE (ID bigint)")
+
+      final Connection connection = dataSource.getConnection()
+      connection.setAutoCommit(false)
+      connection.prepareStatement("insert into VALUES_TABLE values (1)").executeUpdate()
+      final PreparedStatement statement = connection.prepareStatement("select count(*) from VALUES_TABLE")
+      final ResultSet rs = statement.executeQuery()
+      connection.close()
+
+      assertTrue(connection.isClosed())
+      assertTrue(statement.isClosed())
+      assertTrue(rs.isClosed())
+      assertThrows(SQLException) { connection.createStatement() }
+
+      final Connection reused = dataSource.getConnection()
+      assertTrue(reused.getAutoCommit())
+      final ResultSet count = reused.prepareStatement("select count(*) from VALUES_TABLE").executeQuery()
+      count.next()
+      assertEquals(0, count.getInt(1))
+      assertFalse(reused.isClosed())
+      reused.close()
+      assertEquals(1, dataSource.getConnects())
+    }
+    finally {
+      dataSource.close()
+    }
+  }
+
+  @Test
+  void testThatUncachedStatementsAreClosedWithTheConnection() {
+    final PooledDataSource dataSource = createDataSource("uncached", 1)
+    try {
+      execute(dataSource, "create table KEYS_TABLE (ID bigint auto_increment primary key, NAME varchar(16))")
+
+      final Connection connection = dataSource.getConnection()
+      final Statement statement = connection.createStatement()
+      final ResultSet rs = statement.executeQuery("select count(*) from KEYS_TABLE")
+      final CallableStatement call = connection.prepareCall("call 1 + 1")
+      final PreparedStatement insert = connection.prepareStatement("insert into KEYS_TABLE (NAME) values ('a')", Statement.RETURN_GENERATED_KEYS)
+      insert.executeUpdate()
+      final ResultSet keys = insert.getGeneratedKeys()
+
+      assertSame(connection, statement.getConnection())
+      assertSame(connection, call.getConnection())
+      assertSame(connection, insert.getConnection())
+      assertSame(statement, rs.getStatement())
+      assertSame(insert, keys.getStatement())
+      final List<Statement> driverStatements = [statement, call, insert].collect { it.unwrap(Statement) }
+
+      connection.close()
+
+      [statement, call, insert, rs, keys].each { assertTrue(it.isClosed()) }
+      driverStatements.each { assertTrue(it.isClosed()) }
+      assertEquals(1, dataSource.getIdle())
+      // only the statement of the create table went through the cache
+      assertEquals(1, dataSource.getStatementMisses())
+    }
+    finally {
+      dataSource.close()
+    }
+  }
+
+  @Test
+  void testThatMissingDataSourceIsReported() {
+    final PooledDataSource dataSource = PooledDataSource.of(writeConfig("unknown", 1), "other")
+    assertTrue(assertThrows(SQLException) { dataSource.getConnection() }.message.contains("The data source other is not configured"))
+    dataSource.close()
+  }
+
+  private PooledDataSource createDataSource(final String name, final int maxPoolSize) {
+    return PooledDataSource.of(writeConfig(name, maxPoolSize), name)
+  }
+
+  private Path writeConfig(final String name, final int maxPoolSize) {
+    final Path config = tempDir.resolve(PooledDataSource.CONFIG_FILE_NAME)
+    config.toFile().text = """{
+      "$name": {
+        "dataSourceClass": "org.h2.jdbcx.JdbcDataSource",
+        "properties": {"URL": "jdbc:h2:mem:$name;DB_CLOSE_DELAY=-1", "user": "sa", "password": ""},
+        "maxPoolSize": $maxPoolSize,
+        "borrowTimeoutSeconds": 0
+      }
+    }"""
+    return config
+  }
+
+  private static void execute(final PooledDataSource dataSource, final String sql) {
+    final Connection connection = dataSource.getConnection()
+    try {
+      connection.prepareStatement(sql).execute()
+    }
+    finally {
+      connection.close()
+    }
+  }
+}
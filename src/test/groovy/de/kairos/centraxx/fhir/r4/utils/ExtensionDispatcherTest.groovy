@@ -0,0 +1,55 @@
+package de.kairos.centraxx.fhir.r4.utils
+
+import org.hl7.fhir.r4.model.Extension
+import org.hl7.fhir.r4.model.Observation
+import org.hl7.fhir.r4.model.Reference
+import org.hl7.fhir.r4.model.StringType
+import org.junit.jupiter.api.Test
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertSame
+
+class ExtensionDispatcherTest {
+
+  @Test
+  void testThatNestedExtensionsAreRoutedByUrl() {
+    final Observation observation = createObservation()
+    final Map<String, Extension> parents = [:]
+    final List<String> visited = []
+
+    new ExtensionDispatcher()
+        .on(FhirUrls.Extension.LaborMapping.getAllDomains(), { final ext, final parent ->
+          visited.add(ext.getUrl())
+          parents.put(ext.getUrl(), parent)
+        })
+        .otherwise({ final ext, final parent -> visited.add("other:" + ext.getUrl()) })
+        .dispatch(observation)
+
+    final Extension laborMapping = observation.getExtensionByUrl(FhirUrls.Extension.LABOR_MAPPING)
+    assertEquals(["other:" + FhirUrls.Extension.LABOR_MAPPING,
+                  FhirUrls.Extension.LaborMapping.LABOR_MAPPING_TYPE,
+                  FhirUrls.Extension.LaborMapping.PATIENT], visited)
+    assertSame(laborMapping, parents[FhirUrls.Extension.LaborMapping.PATIENT])
+  }
+
+  @Test
+  void testThatLaterRegistrationReplacesHandler() {
+    final List<String> visited = []
+
+    new ExtensionDispatcher()
+        .on(FhirUrls.Extension.LABOR_MAPPING, { final ext, final parent -> visited.add("first") })
+        .on(FhirUrls.Extension.LABOR_MAPPING, { final ext, final parent -> visited.add("second") })
+        .dispatch(createObservation())
+
+    assertEquals(["second"], visited)
+  }
+
+  private static Observation createObservation() {
+    final Observation observation = new Observation()
+    final Extension laborMapping = observation.addExtension()
+        .setUrl(FhirUrls.Extension.LABOR_MAPPING)
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.LABOR_MAPPING_TYPE, new StringType("PATIENT"))
+    laborMapping.addExtension(FhirUrls.Extension.LaborMapping.PATIENT, new Reference("Patient/1"))
+    return observation
+  }
+}
@@ -0,0 +1,60 @@
+package de.kairos.centraxx.fhir.r4.utils
+
+import org.junit.jupiter.api.Test
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertFalse
+import static org.junit.jupiter.api.Assertions.assertNull
+import static org.junit.jupiter.api.Assertions.assertSame
+import static org.junit.jupiter.api.Assertions.assertThrows
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class FhirUrlsTest {
+
+  @Test
+  void testThatAllDomainsAreSharedAndUnmodifiable() {
+    final List<String> domains = FhirUrls.Extension.getAllDomains()
+
+    assertSame(domains, FhirUrls.Extension.getAllDomains())
+    assertEquals(domains.size(), new HashSet<>(domains).size())
+    assertThrows(UnsupportedOperationException) { domains.add("https://fhir.centraxx.de/extension/test") }
+    assertTrue(domains.containsAll(FhirUrls.Extension.Patient.getAllDomains()))
+  }
+
+  @Test
+  void testThatDomainSetMatchesDomainList() {
+    assertEquals(new HashSet<>(FhirUrls.Extension.getAllDomains()), FhirUrls.Extension.getAllDomainSet())
+    assertTrue(FhirUrls.Extension.isKnownDomain(FhirUrls.Extension.LaborMapping.PATIENT))
+    assertFalse(FhirUrls.Extension.isKnownDomain("https://fhir.centraxx.de/extension/unknown"))
+    assertFalse(FhirUrls.Extension.isKnownDomain(null))
+  }
+
+  @Test
+  void testThatUrlIsClassifiedByDeclaringDomain() {
+    final FhirUrlClassification classification = FhirUrls.classify(new StringBuilder(FhirUrls.Extension.LaborMapping.PATIENT))
+
+    assertEquals(FhirUrls.Extension.LaborMapping, classification.getDomain())
+    assertEquals("PATIENT", classification.getName())
+    assertEquals(FhirUrls.Extension.LABOR_MAPPING, classification.getBaseUrl())
+    assertSame(classification, FhirUrls.classify(FhirUrls.Extension.LaborMapping.PATIENT))
+  }
+
+  @Test
+  void testThatUnknownUrlIsNotClassified() {
+    assertNull(FhirUrls.classify("https://fhir.centraxx.de/extension/unknown"))
+    assertNull(FhirUrls.classify(null))
+  }
+
+  @Test
+  void testThatSubExtensionsAreResolvedBySuffix() {
+    final SubExtensionMap subExtensions = FhirUrls.Extension.Patient.Ethnicities.getSubExtensions()
+
+    assertSame(subExtensions, FhirUrls.Extension.Patient.Ethnicities.getSubExtensions())
+    assertEquals(FhirUrls.Extension.Patient.Ethnicities.ETHNICITY_OVERRIDE, subExtensions.get("override"))
+    assertEquals(FhirUrls.Extension.Patient.Ethnicities.ETHNICITY, subExtensions.resolve("[ethnicity]", 1, 10))
+    assertEquals(FhirUrls.Extension.Patient.Ethnicities.ETHNICITY_OVERRIDE,
+        subExtensions.resolveLastSegment(new StringBuilder("https://example.org/extension/override")))
+    assertNull(subExtensions.resolve("unknown"))
+    assertThrows(UnsupportedOperationException) { subExtensions.put("test", "https://fhir.centraxx.de/extension/test") }
+  }
+}
@@ -0,0 +1,140 @@
+package de.kairos.centraxx.fhir.r4.utils
+
+import de.kairos.fhir.dsl.r4.context.Context
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertNull
+
+/**
+ * Tests the loader with an embedded H2 database, which has the gender table of 'hdrp/custom/dbconnection/patient.groovy'.
+ */
+class PageBatchLoaderTest {
+
+  private static final String URL = "jdbc:h2:mem:pagebatch;DB_CLOSE_DELAY=-1"
+
+  private static Connection connection
+
+  @BeforeAll
+  static void createDatabase() {
+    connection = DriverManager.getConnection(URL)
+    connection.createStatement().execute("create table CENTRAXX_PATIENTMASTERDATA_ANO (PATIENTCONTAINER bigint, GENDER_TYPE varchar(16))")
+    final PreparedStatement insert = connection.prepareStatement("insert into CENTRAXX_PATIENTMASTERDATA_ANO values (?, ?)")
+    (1..2500).each {
+      insert.setLong(1, it)
+      insert.setString(2, it % 2 == 0 ? "FEMALE" : "MALE")
+      insert.addBatch()
+    }
+    insert.executeBatch()
+  }
+
+  @AfterAll
+  static void dropDatabase() {
+    connection.createStatement().execute("drop all objects")
+    connection.close()
+  }
+
+  @Test
+  void testThatEachPageIsLoadedWithOneQuery() {
+    final AtomicInteger queries = new AtomicInteger()
+    final PageBatchLoader<String, String> genders = PageBatchLoader.of("test/page", { final Context record -> record.source["oid"] as String }) {
+      final Set<String> oids -> queryGenders(oids, queries)
+    }
+
+    final List<Context> records = ((1..249).collect { it as String } + ["999999"]).collect { new Context([oid: it]) }
+    final List<String> results = records.collate(100).collectMany { final List<Context> page ->
+      final PageBatchLoader.Page opened = PageBatchLoader.openPage(page)
+      try {
+        return page.collect { genders.load(it.source["oid"] as String) }
+      }
+      finally {
+        opened.close()
+      }
+    }
+
+    assertEquals(3, queries.get())
+    assertEquals(3, genders.getBatches())
+    assertEquals(250, genders.getBatchedKeys())
+    assertEquals((1..249).collect { it % 2 == 0 ? "FEMALE" : "MALE" } + [null], results)
+  }
+
+  @Test
+  void testThatBigPagesAreSplitAndKeysOutsideOfPagesAreLoadedSingly() {
+    final AtomicInteger queries = new AtomicInteger()
+    final PageBatchLoader<String, String> genders = PageBatchLoader.of("test/split", { final Context record -> record.source["oid"] as String }) {
+      final Set<String> oids -> queryGenders(oids, queries)
+    }
+
+    final List<Context> records = (1..2500).collect { new Context([oid: it as String]) }
+    final PageBatchLoader.Page page = PageBatchLoader.openPage(records)
+    try {
+      assertEquals("FEMALE", genders.load("2500"))
+      assertEquals("MALE", genders.load("1"))
+    }
+    finally {
+      page.close()
+    }
+    assertEquals(3, queries.get())
+
+    assertEquals("MALE", genders.load("1"))
+    assertEquals(4, queries.get())
+    assertEquals(1, genders.getBatchedKeys() - 2500)
+  }
+
+  @Test
+  void testThatConcurrentRecordsOfAPageWaitForOneBatch() {
+    final CountDownLatch release = new CountDownLatch(1)
+    final AtomicInteger queries = new AtomicInteger()
+    final PageBatchLoader<String, String> genders = PageBatchLoader.of("test/concurrent", { final Context record -> record.source["oid"] as String }) {
+      final Set<String> oids ->
+        release.await()
+        queryGenders(oids, queries)
+    }
+
+    final List<Context> records = (1..8).collect { new Context([oid: it as String]) }
+    final PageBatchLoader.Page page = PageBatchLoader.openPage(records)
+    final Map<String, String> results = Collections.synchronizedMap([:])
+    final List<Thread> threads = records.collect { final Context record ->
+      Thread.start {
+        final String oid = record.source["oid"] as String
+        results.put(oid, genders.load(oid))
+      }
+    }
+    Thread.sleep(100)
+    release.countDown()
+    threads*.join()
+    page.close()
+
+    assertEquals(1, queries.get())
+    assertEquals((1..8).collectEntries { [(it as String): it % 2 == 0 ? "FEMALE" : "MALE"] }, results)
+  }
+
+  private static Map<String, String> queryGenders(final Set<String> oids, final AtomicInteger queries) {
+    queries.incrementAndGet()
+    final String sql = "select PATIENTCONTAINER, GENDER_TYPE from CENTRAXX_PATIENTMASTERDATA_ANO where PATIENTCONTAINER in (" +
+        oids.collect { "?" }.join(", ") + ")"
+    final Connection connection = DriverManager.getConnection(URL)
+    try {
+      final PreparedStatement statement = connection.prepareStatement(sql)
+      oids.eachWithIndex { final String oid, final int i -> statement.setLong(i + 1, Long.parseLong(oid)) }
+      final ResultSet rs = statement.executeQuery()
+      final Map<String, String> gendersByOid = [:]
+      while (rs.next()) {
+        gendersByOid.put(rs.getString("PATIENTCONTAINER"), rs.getString("GENDER_TYPE"))
+      }
+      return gendersByOid
+    }
+    finally {
+      connection.close()
+    }
+  }
+}
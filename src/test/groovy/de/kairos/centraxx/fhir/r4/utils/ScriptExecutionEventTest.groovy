@@ -0,0 +1,54 @@
+package de.kairos.centraxx.fhir.r4.utils
+
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingFile
+import org.hl7.fhir.r4.model.Observation
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertFalse
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+class ScriptExecutionEventTest {
+
+  @TempDir
+  Path tempDir
+
+  @Test
+  void testThatRecordedExecutionsHaveTheirOutcome() {
+    final Path file = tempDir.resolve("executions.jfr")
+    final Recording recording = new Recording()
+    try {
+      recording.enable(ScriptExecutionEvent).withoutThreshold()
+      recording.start()
+
+      ScriptExecutionEvent.record("observation", 1L) { new Observation().setId("Observation/1") as Observation }
+      ScriptExecutionEvent.record("observation", 2L) { new Observation() }
+      assertThrows(IllegalStateException) {
+        ScriptExecutionEvent.record("observation", 3L) { throw new IllegalStateException("DIZ not available") }
+      }
+
+      recording.stop()
+      recording.dump(file)
+    }
+    finally {
+      recording.close()
+    }
+
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(file)
+        .findAll { it.eventType.name == "de.kairos.centraxx.fhir.ScriptExecution" }
+        .sort { it.startTime }
+
+    assertEquals(["observation"] * 3, events.collect { it.getString("template") })
+    assertEquals(["1", "2", "3"], events.collect { it.getString("entityOid") })
+    assertEquals([ScriptExecutionEvent.EMITTED, ScriptExecutionEvent.FILTERED, ScriptExecutionEvent.FAILED],
+        events.collect { it.getString("outcome") })
+    assertEquals(["Observation", null, null], events.collect { it.getString("resourceType") })
+    assertEquals([null, null, IllegalStateException.name], events.collect { it.getString("failure") })
+    events.each { assertFalse(it.duration.isNegative()) }
+  }
+}
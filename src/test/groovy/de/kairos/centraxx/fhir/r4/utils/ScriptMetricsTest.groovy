@@ -0,0 +1,75 @@
+package de.kairos.centraxx.fhir.r4.utils
+
+import groovy.json.JsonSlurper
+import org.hl7.fhir.r4.model.Bundle
+import org.hl7.fhir.r4.model.Observation
+import org.junit.jupiter.api.Test
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class ScriptMetricsTest {
+
+  @Test
+  void testThatFunnelCountsOutcomesAndFilterReasons() {
+    final ScriptMetrics metrics = ScriptMetrics.of("test/funnel")
+
+    metrics.record(new Observation().setId("Observation/1") as Observation)
+    metrics.filteredBy("no vital sign")
+    metrics.record(new Observation())
+    metrics.record(new Observation())
+    metrics.record(new Bundle())
+    metrics.recordFailure(new IllegalStateException())
+
+    assertEquals(5, metrics.getIn())
+    assertEquals(1, metrics.getEmitted())
+    assertEquals(3, metrics.getFiltered())
+    assertEquals(1, metrics.getFailed())
+    assertEquals(["no vital sign": 1L], metrics.getFilterReasons())
+    assertEquals("in 5, emitted 1, filtered 3 (no vital sign 1, unattributed 2), failed 1", metrics.funnel())
+  }
+
+  @Test
+  void testThatCountersAreSharedAcrossThreads() {
+    final List<Thread> threads = (1..4).collect {
+      Thread.start {
+        1000.times { ScriptMetrics.of("test/concurrent").counter("lookups").increment() }
+      }
+    }
+    threads*.join()
+
+    assertEquals(4000, ScriptMetrics.of("test/concurrent").counter("lookups").sum())
+  }
+
+  @Test
+  void testThatTimerRecordsFailedSections() {
+    final ScriptMetrics.Timer timer = ScriptMetrics.of("test/timer").timer("query")
+
+    assertEquals("M", timer.time { "M" })
+    try {
+      timer.time { throw new IllegalStateException("connection lost") }
+    }
+    catch (final IllegalStateException ignored) {
+      // expected
+    }
+
+    assertEquals(2, timer.getCount())
+    assertTrue(timer.getMaxNanos() > 0)
+  }
+
+  @Test
+  void testThatExportsContainAllScripts() {
+    ScriptMetrics.of("test/export/a").filteredBy("say \"no\"")
+    ScriptMetrics.of("test/export/b").record(new Observation().setId("Observation/1") as Observation)
+    ScriptMetrics.of("test/export/b").timer("query").record(1_500_000_000L)
+
+    final String prometheus = ScriptMetrics.toPrometheus()
+    assertTrue(prometheus.contains('script_filtered_total{script="test/export/a",reason="say \\"no\\""} 1\n'), prometheus)
+    assertTrue(prometheus.contains('script_records_total{script="test/export/b",outcome="emitted"} 1\n'), prometheus)
+    assertTrue(prometheus.contains('script_timer_seconds_sum{script="test/export/b",name="query"} 1.5\n'), prometheus)
+
+    final Map json = new JsonSlurper().parseText(ScriptMetrics.toJson()) as Map
+    assertEquals(1, json["test/export/a"].filterReasons['say "no"'])
+    assertEquals(1_500_000_000L, json["test/export/b"].timers.query.totalNanos)
+  }
+}